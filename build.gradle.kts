@@ -4,6 +4,7 @@ plugins {
   id("org.openstreetmap.josm") version "0.6.4"
   id("com.github.ben-manes.versions") version "0.25.0"
   id("com.github.spotbugs") version "2.0.0"
+  id("me.champeau.gradle.jmh") version "0.5.0"
   checkstyle
   eclipse
   java
@@ -46,6 +47,18 @@ tasks.withType(ProcessResources::class).getByName("processResources") {
   }
 }
 
+// Benchmarks in src/jmh, run with `./gradlew jmh`
+sourceSets.named("jmh") {
+  compileClasspath += sourceSets.main.get().compileClasspath
+  runtimeClasspath += sourceSets.main.get().runtimeClasspath
+}
+jmh {
+  jmhVersion = "1.23"
+  profilers = listOf("gc")
+  resultFormat = "JSON"
+  isIncludeTests = false
+}
+
 base.archivesBaseName = "geojson"
 
 josm {
@@ -0,0 +1,274 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic GeoJSON FeatureCollections for benchmarks. The output only depends on the settings, so
+ * benchmark runs on different machines read the same corpus.
+ * <p>
+ * The features are laid out on a grid of cells of {@link #CELL_SIZE} degrees, one feature per cell. Polygons with a
+ * shared border cover their whole cell, and their vertices on each side of the cell only depend on the side, so
+ * adjacent polygons have the same vertices along their common border. All other geometries are placed randomly inside
+ * their cell and share no vertices.
+ * <p>
+ * The output is written while it is generated, so corpora larger than the heap can be created.
+ */
+public final class GeoJsonCorpusGenerator {
+
+    /** Size of the cell of a feature in degrees */
+    static final double CELL_SIZE = 0.001;
+
+    private static final String[] VALUES = {"residential", "forest", "meadow", "water", "farmland", "industrial", "retail",
+        "grass", "scrub", "wetland"};
+
+    private long seed = 42;
+    private int featureCount = 10_000;
+    private int verticesPerGeometry = 16;
+    private double pointRatio = 0.3;
+    private double lineRatio = 0.2;
+    private double multiPolygonRatio = 0.1;
+    private int propertyCount = 5;
+    private double sharedBorderRatio = 0.5;
+
+    /**
+     * Set the seed of the random numbers.
+     *
+     * @param seed the seed
+     * @return this generator
+     */
+    public GeoJsonCorpusGenerator seed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Set the number of features.
+     *
+     * @param featureCount the number of features
+     * @return this generator
+     */
+    public GeoJsonCorpusGenerator featureCount(final int featureCount) {
+        this.featureCount = featureCount;
+        return this;
+    }
+
+    /**
+     * Set the number of vertices of each line and polygon ring (at least 4).
+     *
+     * @param verticesPerGeometry the number of vertices
+     * @return this generator
+     */
+    public GeoJsonCorpusGenerator verticesPerGeometry(final int verticesPerGeometry) {
+        this.verticesPerGeometry = Math.max(4, verticesPerGeometry);
+        return this;
+    }
+
+    /**
+     * Set the share of each geometry type. The remaining features are Polygons.
+     *
+     * @param points        the share of Points
+     * @param lines         the share of LineStrings
+     * @param multiPolygons the share of MultiPolygons (two polygons, one of them with a hole)
+     * @return this generator
+     */
+    public GeoJsonCorpusGenerator geometryMix(final double points, final double lines, final double multiPolygons) {
+        if (points < 0 || lines < 0 || multiPolygons < 0 || points + lines + multiPolygons > 1) {
+            throw new IllegalArgumentException("Invalid geometry mix: " + points + ", " + lines + ", " + multiPolygons);
+        }
+        this.pointRatio = points;
+        this.lineRatio = lines;
+        this.multiPolygonRatio = multiPolygons;
+        return this;
+    }
+
+    /**
+     * Set the number of properties of each feature. The first property is unique, the others have few distinct values.
+     *
+     * @param propertyCount the number of properties
+     * @return this generator
+     */
+    public GeoJsonCorpusGenerator propertyCount(final int propertyCount) {
+        this.propertyCount = propertyCount;
+        return this;
+    }
+
+    /**
+     * Set the share of Polygons which cover their whole cell and share their borders with adjacent Polygons.
+     *
+     * @param sharedBorderRatio the share, between 0 and 1
+     * @return this generator
+     */
+    public GeoJsonCorpusGenerator sharedBorderRatio(final double sharedBorderRatio) {
+        this.sharedBorderRatio = sharedBorderRatio;
+        return this;
+    }
+
+    /**
+     * @return the number of features
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Write the FeatureCollection.
+     *
+     * @param out the stream, encoded in UTF-8; it is flushed, not closed
+     * @throws IOException if the stream cannot be written
+     */
+    public void write(final OutputStream out) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        final Random random = new Random(seed);
+        final int columns = (int) Math.ceil(Math.sqrt(featureCount));
+        writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < featureCount; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"type\":\"Feature\",\"properties\":{");
+            writeProperties(writer, random, i);
+            writer.write("},\"geometry\":");
+            final double x = i % columns * CELL_SIZE;
+            final double y = i / columns * CELL_SIZE;
+            final double type = random.nextDouble();
+            if (type < pointRatio) {
+                writer.write("{\"type\":\"Point\",\"coordinates\":");
+                writePosition(writer, x + random.nextDouble() * CELL_SIZE, y + random.nextDouble() * CELL_SIZE);
+            } else if (type < pointRatio + lineRatio) {
+                writer.write("{\"type\":\"LineString\",\"coordinates\":[");
+                for (int v = 0; v < verticesPerGeometry; v++) {
+                    if (v > 0) {
+                        writer.write(',');
+                    }
+                    writePosition(writer, x + random.nextDouble() * CELL_SIZE, y + (v + random.nextDouble()) * CELL_SIZE / verticesPerGeometry);
+                }
+                writer.write(']');
+            } else if (type < pointRatio + lineRatio + multiPolygonRatio) {
+                final double half = CELL_SIZE / 2;
+                writer.write("{\"type\":\"MultiPolygon\",\"coordinates\":[[");
+                writeRing(writer, random, x + half / 2, y + half / 2, half * 0.45);
+                writer.write(",");
+                writeRing(writer, random, x + half / 2, y + half / 2, half * 0.2);
+                writer.write("],[");
+                writeRing(writer, random, x + 1.5 * half, y + 1.5 * half, half * 0.45);
+                writer.write("]]");
+            } else if (random.nextDouble() < sharedBorderRatio) {
+                writer.write("{\"type\":\"Polygon\",\"coordinates\":[");
+                writeCell(writer, x, y);
+                writer.write(']');
+            } else {
+                writer.write("{\"type\":\"Polygon\",\"coordinates\":[");
+                writeRing(writer, random, x + CELL_SIZE / 2, y + CELL_SIZE / 2, CELL_SIZE * 0.45);
+                writer.write(']');
+            }
+            writer.write("}}");
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    private void writeProperties(final Writer writer, final Random random, final int feature) throws IOException {
+        for (int p = 0; p < propertyCount; p++) {
+            if (p > 0) {
+                writer.write(',');
+            }
+            writer.write("\"key");
+            writer.write(Integer.toString(p));
+            writer.write("\":");
+            if (p == 0) {
+                writer.write("\"feature ");
+                writer.write(Integer.toString(feature));
+                writer.write('"');
+            } else if (p % 3 == 2) {
+                writer.write(Integer.toString(random.nextInt(100)));
+            } else {
+                writer.write('"');
+                writer.write(VALUES[random.nextInt(p % 3 == 1 ? VALUES.length : 3)]);
+                writer.write('"');
+            }
+        }
+    }
+
+    /**
+     * Write a closed ring around a center, with random radii.
+     */
+    private void writeRing(final Writer writer, final Random random, final double x, final double y, final double radius)
+            throws IOException {
+        writer.write('[');
+        final int vertices = verticesPerGeometry - 1;
+        double firstX = 0;
+        double firstY = 0;
+        for (int v = 0; v < vertices; v++) {
+            final double angle = 2 * Math.PI * v / vertices;
+            final double r = radius * (0.6 + 0.4 * random.nextDouble());
+            final double vx = x + r * Math.cos(angle);
+            final double vy = y + r * Math.sin(angle);
+            if (v == 0) {
+                firstX = vx;
+                firstY = vy;
+            }
+            writePosition(writer, vx, vy);
+            writer.write(',');
+        }
+        writePosition(writer, firstX, firstY);
+        writer.write(']');
+    }
+
+    /**
+     * Write a closed ring along the border of a cell. The vertices of a side only depend on the side.
+     */
+    private void writeCell(final Writer writer, final double x, final double y) throws IOException {
+        final int perSide = Math.max(1, (verticesPerGeometry - 1) / 4);
+        final double[][] corners = {{x, y}, {x + CELL_SIZE, y}, {x + CELL_SIZE, y + CELL_SIZE}, {x, y + CELL_SIZE}};
+        writer.write('[');
+        for (int side = 0; side < 4; side++) {
+            final double[] from = corners[side];
+            final double[] to = corners[(side + 1) % 4];
+            for (int v = 0; v < perSide; v++) {
+                // the same fractions in both directions, so that both cells of a side have the same vertices
+                final double fraction = (double) v / perSide;
+                if (side < 2) {
+                    writePosition(writer, from[0] + (to[0] - from[0]) * fraction, from[1] + (to[1] - from[1]) * fraction);
+                } else {
+                    writePosition(writer, to[0] + (from[0] - to[0]) * (1 - fraction), to[1] + (from[1] - to[1]) * (1 - fraction));
+                }
+                writer.write(',');
+            }
+        }
+        writePosition(writer, x, y);
+        writer.write(']');
+    }
+
+    /**
+     * Write a position with 7 decimals, offset to a place in Europe.
+     */
+    private static void writePosition(final Writer writer, final double x, final double y) throws IOException {
+        writer.write('[');
+        writeFixed(writer, 5 + x);
+        writer.write(',');
+        writeFixed(writer, 45 + y);
+        writer.write(']');
+    }
+
+    private static void writeFixed(final Writer writer, final double value) throws IOException {
+        long fixed = Math.round(value * 1e7);
+        if (fixed < 0) {
+            writer.write('-');
+            fixed = -fixed;
+        }
+        writer.write(Long.toString(fixed / 10_000_000));
+        writer.write('.');
+        final String decimals = Long.toString(fixed % 10_000_000);
+        for (int i = decimals.length(); i < 7; i++) {
+            writer.write('0');
+        }
+        writer.write(decimals);
+    }
+}
@@ -0,0 +1,141 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.stream.JsonParser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the input paths of an uncompressed file: a {@link FileInputStream}, as for compressed files, and a
+ * {@link MappedFileInputStream}. The file is read in blocks without parsing, which measures the input paths alone, and
+ * tokenized by {@link Utf8JsonParser} without building a dataset, so the input is a large part of the time and files
+ * larger than the heap can be read.
+ * <p>
+ * The corpus of about 2.5 GB is generated once into the directory of the {@code geojson.benchmark.dir} system
+ * property (default: the temporary directory). Unless the machine has less memory than that, the file is in the page
+ * cache after the warmup, so the benchmark measures the copies of the input paths and not the storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx1g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class GeoJsonInputBenchmark {
+
+    /** Number of features of the corpus, about 2.5 GB */
+    private static final int FEATURES = 5_000_000;
+
+    /** The input path: {@code stream} or {@code mapped} */
+    @Param({"stream", "mapped"})
+    public String input;
+
+    private Path file;
+    private long size;
+
+    /**
+     * Counter of the read or tokenized megabytes, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        /** Read or tokenized megabytes */
+        public double megabytes;
+
+        /**
+         * Reset the counter for each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    /**
+     * Create the corpus.
+     *
+     * @throws IOException if the corpus cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Paths.get(System.getProperty("geojson.benchmark.dir", System.getProperty("java.io.tmpdir")));
+        file = directory.resolve("geojson-benchmark-" + FEATURES + ".geojson");
+        if (!Files.exists(file)) {
+            // write to a temporary file, so an interrupted run does not leave a truncated corpus
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                new GeoJsonCorpusGenerator().featureCount(FEATURES).write(out);
+            }
+            Files.move(temporary, file);
+        }
+        size = Files.size(file);
+    }
+
+    /**
+     * Read the corpus in blocks of 64 KiB, the buffer size of {@link Utf8JsonParser}, without parsing it.
+     *
+     * @param throughput the counter
+     * @return the number of bytes read
+     * @throws IOException if the corpus cannot be read
+     */
+    @Benchmark
+    public long read(final Throughput throughput) throws IOException {
+        final byte[] buffer = new byte[1 << 16];
+        long bytes = 0;
+        try (InputStream in = open()) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                bytes += n;
+            }
+        }
+        throughput.megabytes += size / 1e6;
+        return bytes;
+    }
+
+    /**
+     * Tokenize the corpus.
+     *
+     * @param throughput the counter
+     * @return the sum of all numbers
+     * @throws IOException if the corpus cannot be read
+     */
+    @Benchmark
+    public double tokenize(final Throughput throughput) throws IOException {
+        double sum = 0;
+        try (InputStream in = open();
+             JsonParser parser = Utf8JsonParser.FACTORY.createParser(in)) {
+            while (parser.hasNext()) {
+                if (parser.next() == JsonParser.Event.VALUE_NUMBER) {
+                    sum += ((Utf8JsonParser) parser).getDouble();
+                }
+            }
+        }
+        throughput.megabytes += size / 1e6;
+        return sum;
+    }
+
+    private InputStream open() throws IOException {
+        return "mapped".equals(input) ? new MappedFileInputStream(file) : new FileInputStream(file.toFile());
+    }
+}
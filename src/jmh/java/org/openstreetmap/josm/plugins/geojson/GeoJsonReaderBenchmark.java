@@ -0,0 +1,169 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.MemoryPreferences;
+
+/**
+ * Throughput of {@link GeoJsonReader#parseDataSet} on corpora of {@link GeoJsonCorpusGenerator}.
+ * <p>
+ * Besides the parses per second, the {@link Throughput} counters report features and megabytes (of uncompressed
+ * GeoJSON) per second. Run with {@code ./gradlew jmh}, which also enables the GC profiler for the allocation rate.
+ * <p>
+ * The small corpus is kept in memory. The large corpus of about 1 GB is generated once into the directory of the
+ * {@code geojson.benchmark.dir} system property (default: the temporary directory) and read from there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class GeoJsonReaderBenchmark {
+
+    /** Number of features of the small corpus, about 10 MB */
+    private static final int SMALL_FEATURES = 20_000;
+    /** Number of features of the large corpus, about 1 GB */
+    private static final int LARGE_FEATURES = 2_000_000;
+
+    /** The corpus: {@code small} (in memory) or {@code large} (on disk) */
+    @Param({"small", "large"})
+    public String corpus;
+
+    /** The compression of the input: {@code none} or {@code gzip} */
+    @Param({"none", "gzip"})
+    public String compression;
+
+    private byte[] data;
+    private Path file;
+    private long uncompressedSize;
+    private int featureCount;
+
+    /**
+     * Counters of the parsed features and megabytes, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        /** Parsed features */
+        public long features;
+        /** Parsed megabytes of uncompressed GeoJSON */
+        public double megabytes;
+
+        /**
+         * Reset the counters for each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            features = 0;
+            megabytes = 0;
+        }
+    }
+
+    /**
+     * Create the corpus.
+     *
+     * @throws IOException if the large corpus cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Config.setPreferencesInstance(new MemoryPreferences());
+        final boolean gzip = "gzip".equals(compression);
+        final GeoJsonCorpusGenerator generator = new GeoJsonCorpusGenerator()
+            .featureCount("large".equals(corpus) ? LARGE_FEATURES : SMALL_FEATURES);
+        featureCount = generator.getFeatureCount();
+
+        if ("small".equals(corpus)) {
+            final ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+            generator.write(uncompressed);
+            uncompressedSize = uncompressed.size();
+            if (gzip) {
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream out = new GZIPOutputStream(compressed)) {
+                    uncompressed.writeTo(out);
+                }
+                data = compressed.toByteArray();
+            } else {
+                data = uncompressed.toByteArray();
+            }
+            return;
+        }
+
+        final Path directory = Paths.get(System.getProperty("geojson.benchmark.dir", System.getProperty("java.io.tmpdir")));
+        final Path plain = directory.resolve("geojson-benchmark-" + LARGE_FEATURES + ".geojson");
+        if (!Files.exists(plain)) {
+            write(generator, plain, false);
+        }
+        uncompressedSize = Files.size(plain);
+        file = plain;
+        if (gzip) {
+            file = directory.resolve("geojson-benchmark-" + LARGE_FEATURES + ".geojson.gz");
+            if (!Files.exists(file)) {
+                write(generator, file, true);
+            }
+        }
+    }
+
+    private static void write(final GeoJsonCorpusGenerator generator, final Path target, final boolean gzip) throws IOException {
+        // write to a temporary file, so an interrupted run does not leave a truncated corpus
+        final Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = gzip ? new GZIPOutputStream(Files.newOutputStream(temporary), 1 << 16)
+            : new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+            generator.write(out);
+        }
+        Files.move(temporary, target);
+    }
+
+    private InputStream open() throws IOException {
+        final InputStream in = data != null ? new ByteArrayInputStream(data)
+            : new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        return "gzip".equals(compression) ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    /**
+     * Parse the corpus into a dataset.
+     *
+     * @param throughput the counters
+     * @return the dataset
+     * @throws IOException          if the corpus cannot be read
+     * @throws IllegalDataException if the corpus cannot be parsed
+     */
+    @Benchmark
+    public DataSet parse(final Throughput throughput) throws IOException, IllegalDataException {
+        try (InputStream in = open()) {
+            final DataSet dataSet = GeoJsonReader.parseDataSet(in, null);
+            throughput.features += featureCount;
+            throughput.megabytes += uncompressedSize / 1e6;
+            return dataSet;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which counts the bytes read from the underlying stream. Wrapped around the raw file (before
+ * decompression), the count can be compared with the file size to report the progress of an import.
+ */
+final class ByteCountingInputStream extends FilterInputStream {
+
+    private volatile long count;
+
+    ByteCountingInputStream(final InputStream in) {
+        super(in);
+    }
+
+    /**
+     * @return the number of bytes read or skipped so far
+     */
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,324 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import org.openstreetmap.josm.data.Bounds;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import java.util.Arrays;
+
+/**
+ * Reusable storage for the positions of one GeoJSON geometry.
+ * <p>
+ * Positions are kept as flat lat/lon pairs in a primitive array and the nesting of the {@code coordinates} member is
+ * kept as end offsets, so decoding a geometry does not create an object per position. The nesting depth is given by
+ * the geometry type: 1 for a Point, 2 for a MultiPoint or LineString, 3 for a MultiLineString or Polygon and 4 for a
+ * MultiPolygon. Depth 2 arrays are recorded as lines, depth 3 arrays as polygons (made of lines).
+ * <p>
+ * Positions that do not start with two numbers are skipped, additional dimensions (e.g. altitude) are ignored.
+ * <p>
+ * The positions are stored in chunks, so a geometry with millions of positions neither needs one contiguous array nor
+ * copies its positions when the buffer grows. Only the first chunk grows, up to {@link #CHUNK_SIZE} positions, further
+ * chunks are allocated at full size. {@link #clear()} keeps the first {@link #RETAINED_CHUNKS} chunks for the next
+ * geometry and releases the others, so a huge geometry does not keep its memory for the rest of the import.
+ */
+final class CoordinateBuffer {
+
+    private static final int CHUNK_SHIFT = 14;
+    /** Number of positions of a full chunk */
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /** Number of chunks kept by {@link #clear()} */
+    static final int RETAINED_CHUNKS = 4;
+    /** Number of digits of an integer which always fits into a long */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /** lat/lon pairs, {@link #CHUNK_SIZE} positions per chunk, allocated when needed */
+    private double[][] chunks = new double[RETAINED_CHUNKS][];
+    private int size;
+    /** position index after the last position of each line */
+    private int[] lineEnds = new int[16];
+    private int lines;
+    /** line index after the last line of each polygon */
+    private int[] polygonEnds = new int[4];
+    private int polygons;
+
+    /**
+     * Remove all positions, keeping the allocated arrays for the next geometry.
+     */
+    void clear() {
+        size = 0;
+        lines = 0;
+        polygons = 0;
+        for (int chunk = RETAINED_CHUNKS; chunk < chunks.length && chunks[chunk] != null; chunk++) {
+            chunks[chunk] = null;
+        }
+    }
+
+    /**
+     * @return the number of positions which fit into the allocated chunks
+     */
+    int capacity() {
+        int capacity = 0;
+        for (double[] chunk : chunks) {
+            capacity += chunk == null ? 0 : chunk.length / 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Replace the content of this buffer by the coordinates read from the parser.
+     *
+     * @param parser the parser, whose current event is the {@code START_ARRAY} of the coordinates
+     * @param depth  the nesting depth of the coordinates
+     */
+    void read(final JsonParser parser, final int depth) {
+        clear();
+        readArray(parser, depth);
+    }
+
+    /**
+     * Replace the content of this buffer by the given coordinates.
+     *
+     * @param coordinates the coordinates, may be null
+     * @param depth       the nesting depth of the coordinates
+     */
+    void read(final JsonArray coordinates, final int depth) {
+        clear();
+        if (coordinates != null) {
+            readArray(coordinates, depth);
+        }
+    }
+
+    private void readArray(final JsonParser parser, final int depth) {
+        if (depth == 1) {
+            readPosition(parser);
+            return;
+        }
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (event == Event.START_ARRAY) {
+                readArray(parser, depth - 1);
+            } else {
+                GeoJsonReader.skipValue(parser, event);
+            }
+        }
+        endArray(depth);
+    }
+
+    private void readPosition(final JsonParser parser) {
+        double lon = 0;
+        double lat = 0;
+        boolean valid = true;
+        int index = 0;
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (index < 2) {
+                if (event == Event.VALUE_NUMBER) {
+                    if (index == 0) {
+                        lon = getDouble(parser);
+                    } else {
+                        lat = getDouble(parser);
+                    }
+                } else {
+                    valid = false;
+                }
+            }
+            GeoJsonReader.skipValue(parser, event);
+            index++;
+        }
+        if (valid && index >= 2) {
+            addPosition(lat, lon);
+        }
+    }
+
+    private void readArray(final JsonArray array, final int depth) {
+        if (depth == 1) {
+            if (array.size() >= 2 && array.get(0) instanceof JsonNumber && array.get(1) instanceof JsonNumber) {
+                addPosition(array.getJsonNumber(1).doubleValue(), array.getJsonNumber(0).doubleValue());
+            }
+            return;
+        }
+        for (JsonValue value : array) {
+            if (value instanceof JsonArray) {
+                readArray((JsonArray) value, depth - 1);
+            }
+        }
+        endArray(depth);
+    }
+
+    /**
+     * Get the value of the current {@code VALUE_NUMBER} event. Integral values of at most 18 digits are read without
+     * creating a {@code BigDecimal}, longer ones would not fit into a long; the result is the same as
+     * {@code JsonNumber.doubleValue()}.
+     */
+    private static double getDouble(final JsonParser parser) {
+        if (parser instanceof Utf8JsonParser) {
+            return ((Utf8JsonParser) parser).getDouble();
+        }
+        if (parser.isIntegralNumber()) {
+            final String number = parser.getString();
+            if (number.length() - (number.charAt(0) == '-' ? 1 : 0) <= MAX_LONG_DIGITS) {
+                return parser.getLong();
+            }
+        }
+        return parser.getBigDecimal().doubleValue();
+    }
+
+    private void addPosition(final double lat, final double lon) {
+        final int chunk = size >>> CHUNK_SHIFT;
+        final int offset = 2 * (size & CHUNK_MASK);
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+        }
+        double[] positions = chunks[chunk];
+        if (positions == null) {
+            // the first chunk starts small, since most geometries have few positions
+            positions = new double[chunk == 0 ? 512 : 2 * CHUNK_SIZE];
+            chunks[chunk] = positions;
+        } else if (offset == positions.length) {
+            positions = Arrays.copyOf(positions, 2 * positions.length);
+            chunks[chunk] = positions;
+        }
+        positions[offset] = lat;
+        positions[offset + 1] = lon;
+        size++;
+    }
+
+    private void endArray(final int depth) {
+        if (depth == 2) {
+            if (lines == lineEnds.length) {
+                lineEnds = Arrays.copyOf(lineEnds, 2 * lineEnds.length);
+            }
+            lineEnds[lines++] = size;
+        } else if (depth == 3) {
+            if (polygons == polygonEnds.length) {
+                polygonEnds = Arrays.copyOf(polygonEnds, 2 * polygonEnds.length);
+            }
+            polygonEnds[polygons++] = lines;
+        }
+    }
+
+    /**
+     * Decode quantized positions, e.g. the arcs of a TopoJSON topology: the positions are scaled and translated, and
+     * with delta encoding, each position of a line after the first is relative to the previous one.
+     *
+     * @param scaleLat     the scale of the latitudes
+     * @param scaleLon     the scale of the longitudes
+     * @param translateLat the latitude of the quantized position 0
+     * @param translateLon the longitude of the quantized position 0
+     * @param delta        if the positions are delta-encoded
+     */
+    void dequantize(final double scaleLat, final double scaleLon, final double translateLat, final double translateLon,
+            final boolean delta) {
+        for (int line = 0; line < lines; line++) {
+            double lat = 0;
+            double lon = 0;
+            for (int i = lineStart(line); i < lineEnd(line); i++) {
+                final double[] positions = chunks[i >>> CHUNK_SHIFT];
+                final int offset = 2 * (i & CHUNK_MASK);
+                lat = delta ? lat + positions[offset] : positions[offset];
+                lon = delta ? lon + positions[offset + 1] : positions[offset + 1];
+                positions[offset] = lat * scaleLat + translateLat;
+                positions[offset + 1] = lon * scaleLon + translateLon;
+            }
+        }
+    }
+
+    /**
+     * @return the number of positions
+     */
+    int size() {
+        return size;
+    }
+
+    double lat(final int index) {
+        return chunks[index >>> CHUNK_SHIFT][2 * (index & CHUNK_MASK)];
+    }
+
+    double lon(final int index) {
+        return chunks[index >>> CHUNK_SHIFT][2 * (index & CHUNK_MASK) + 1];
+    }
+
+    /**
+     * Check if two positions are equal, with the semantics of {@code LatLon.equals}.
+     */
+    boolean isSamePosition(final int index1, final int index2) {
+        return Double.compare(lat(index1), lat(index2)) == 0 && Double.compare(lon(index1), lon(index2)) == 0;
+    }
+
+    /**
+     * Check if the envelope of the positions intersects an area.
+     *
+     * @param area the area, which may cross the 180th meridian
+     * @return true if the envelope intersects the area, false if it does not or if there are no positions
+     */
+    boolean intersects(final Bounds area) {
+        if (size == 0) {
+            return false;
+        }
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            final double lat = lat(i);
+            final double lon = lon(i);
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+        }
+        return intersects(area, minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * Check if an envelope intersects an area.
+     *
+     * @param area the area, which may cross the 180th meridian
+     * @return true if the envelope intersects the area
+     */
+    static boolean intersects(final Bounds area, final double minLat, final double minLon, final double maxLat,
+            final double maxLon) {
+        if (maxLat < area.getMinLat() || minLat > area.getMaxLat()) {
+            return false;
+        }
+        if (area.crosses180thMeridian()) {
+            return maxLon >= area.getMinLon() || minLon <= area.getMaxLon();
+        }
+        return maxLon >= area.getMinLon() && minLon <= area.getMaxLon();
+    }
+
+    /**
+     * @return the number of lines (arrays of positions)
+     */
+    int lineCount() {
+        return lines;
+    }
+
+    int lineStart(final int line) {
+        return line == 0 ? 0 : lineEnds[line - 1];
+    }
+
+    int lineEnd(final int line) {
+        return lineEnds[line];
+    }
+
+    /**
+     * @return the number of polygons (arrays of lines)
+     */
+    int polygonCount() {
+        return polygons;
+    }
+
+    int polygonStart(final int polygon) {
+        return polygon == 0 ? 0 : polygonEnds[polygon - 1];
+    }
+
+    int polygonEnd(final int polygon) {
+        return polygonEnds[polygon];
+    }
+}
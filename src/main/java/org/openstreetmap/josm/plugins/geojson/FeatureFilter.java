@@ -0,0 +1,454 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Filter of the features of an import, and projection of their properties, which {@link GeoJsonReader} applies while
+ * the features are read, so that rejected features and dropped properties are skipped by the parser.
+ * <p>
+ * The filter expression is a conjunction of clauses {@code key op value}, joined by {@code &&}, e.g.
+ * {@code status == "active" && lanes >= 2 && $geometry != Point}:
+ * <ul>
+ * <li>The key is a property, or {@code $geometry} for the geometry type of the feature ({@code null} for features
+ * without geometry). It is a bare word or a quoted string.</li>
+ * <li>The operator is one of {@code == != < <= > >=}. The range operators compare numbers only, so they never match
+ * a value which is not a number (or a string of a number). {@code ==} compares numbers numerically and everything else
+ * as the text of the tag the value would become. {@code !=} is the opposite of {@code ==}, so it also matches a
+ * feature without the property.</li>
+ * <li>The value is a quoted string (with {@code \"} and {@code \\} escapes), or a bare word or number.</li>
+ * </ul>
+ * Properties without a tag ({@code null}, arrays and objects) count as missing.
+ * <p>
+ * The projection keeps the properties of the include list (all if it is empty), except for those of the exclude list.
+ * The filter sees all properties, also the dropped ones.
+ */
+final class FeatureFilter {
+
+    /** The key of a clause on the geometry type */
+    static final String GEOMETRY_KEY = "$geometry";
+
+    private enum Operator {
+        EQ("=="), NE("!="), LE("<="), GE(">="), LT("<"), GT(">");
+
+        final String symbol;
+
+        Operator(final String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean isRange() {
+            return this != EQ && this != NE;
+        }
+    }
+
+    /**
+     * A clause {@code key op value} of the expression.
+     */
+    private static final class Clause {
+        final String key;
+        final Operator operator;
+        final String text;
+        /** The value as a number, or NaN if it is not a number */
+        final double number;
+
+        Clause(final String key, final Operator operator, final String text, final boolean quoted) {
+            this.key = key;
+            this.operator = operator;
+            this.text = text;
+            this.number = quoted ? Double.NaN : toNumber(text);
+        }
+
+        /**
+         * Test a value of the key.
+         *
+         * @param value the text of the tag of the value, or null if the feature has no value
+         * @param numeric the value as a number, or NaN if it is not a number
+         * @return if the value matches
+         */
+        boolean test(final String value, final double numeric) {
+            if (value == null) {
+                return operator == Operator.NE;
+            }
+            if (operator.isRange()) {
+                if (Double.isNaN(numeric)) {
+                    return false;
+                }
+                final int comparison = Double.compare(numeric, number);
+                switch (operator) {
+                    case LT:
+                        return comparison < 0;
+                    case LE:
+                        return comparison <= 0;
+                    case GT:
+                        return comparison > 0;
+                    default:
+                        return comparison >= 0;
+                }
+            }
+            final boolean equal = !Double.isNaN(number) && !Double.isNaN(numeric) ? numeric == number : value.equals(text);
+            return equal == (operator == Operator.EQ);
+        }
+
+        @Override
+        public String toString() {
+            return quote(key) + ' ' + operator.symbol + ' ' + (Double.isNaN(number) ? quote(text) : text);
+        }
+    }
+
+    private final List<Clause> propertyClauses;
+    private final List<Clause> geometryClauses;
+    /** Keys of the {@link #propertyClauses} */
+    private final Set<String> testedProperties = new HashSet<>();
+    /** The kept properties, or null to keep all */
+    private final Set<String> includedProperties;
+    private final Set<String> excludedProperties;
+
+    private FeatureFilter(final List<Clause> clauses, final Collection<String> included, final Collection<String> excluded) {
+        this.propertyClauses = new ArrayList<>();
+        this.geometryClauses = new ArrayList<>();
+        for (Clause clause : clauses) {
+            if (GEOMETRY_KEY.equals(clause.key)) {
+                geometryClauses.add(clause);
+            } else {
+                propertyClauses.add(clause);
+                testedProperties.add(clause.key);
+            }
+        }
+        this.includedProperties = included.isEmpty() ? null : new TreeSet<>(included);
+        this.excludedProperties = new TreeSet<>(excluded);
+    }
+
+    /**
+     * Create a filter.
+     *
+     * @param expression the filter expression, empty to accept all features
+     * @param included   the kept properties, empty to keep all
+     * @param excluded   the dropped properties
+     * @return the filter, or null if it accepts all features and keeps all properties
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    static FeatureFilter create(final String expression, final Collection<String> included, final Collection<String> excluded) {
+        final List<Clause> clauses = new Parser(expression == null ? "" : expression).parse();
+        if (clauses.isEmpty() && included.isEmpty() && excluded.isEmpty()) {
+            return null;
+        }
+        return new FeatureFilter(clauses, included, excluded);
+    }
+
+    /**
+     * Create a filter without projection.
+     *
+     * @param expression the filter expression
+     * @return the filter, or null if the expression is empty
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    static FeatureFilter parse(final String expression) {
+        return create(expression, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @return if the filter depends on the properties of a feature
+     */
+    boolean hasPropertyClauses() {
+        return !propertyClauses.isEmpty();
+    }
+
+    /**
+     * @param key a property
+     * @return if the property is kept by the projection
+     */
+    boolean keepsProperty(final String key) {
+        return (includedProperties == null || includedProperties.contains(key)) && !excludedProperties.contains(key);
+    }
+
+    /**
+     * @param key a property
+     * @return if the filter tests the property, so its value is needed even if it is dropped
+     */
+    boolean testsProperty(final String key) {
+        return testedProperties.contains(key);
+    }
+
+    /**
+     * Test a feature which is already read.
+     *
+     * @param properties   the properties of the feature
+     * @param geometryType the geometry type, or null if it has no geometry
+     * @return if the feature is accepted
+     */
+    boolean accepts(final JsonObject properties, final String geometryType) {
+        final Match match = new Match();
+        if (!match.acceptsGeometryType(geometryType)) {
+            return false;
+        }
+        for (Map.Entry<String, JsonValue> property : properties.entrySet()) {
+            if (testsProperty(property.getKey()) && !match.acceptsProperty(property.getKey(), property.getValue())) {
+                return false;
+            }
+        }
+        return match.finishProperties();
+    }
+
+    /**
+     * The state of the filter for a feature which is being read. A match is reused for the features read by one
+     * reader, see {@link #reset()}.
+     */
+    final class Match {
+        /** Flags of the {@link #propertyClauses} which got a value */
+        private final boolean[] tested = new boolean[propertyClauses.size()];
+        private boolean propertiesFinished;
+        private boolean rejected;
+
+        /**
+         * Start the next feature.
+         */
+        void reset() {
+            Arrays.fill(tested, false);
+            propertiesFinished = false;
+            rejected = false;
+        }
+
+        /**
+         * Test a property of the feature.
+         *
+         * @param key   the property
+         * @param value the value
+         * @return if the feature is still accepted
+         */
+        boolean acceptsProperty(final String key, final JsonValue value) {
+            final String text = getText(value);
+            final double number = text == null ? Double.NaN : toNumber(value);
+            for (int i = 0; i < tested.length; i++) {
+                final Clause clause = propertyClauses.get(i);
+                if (clause.key.equals(key)) {
+                    tested[i] = true;
+                    rejected |= !clause.test(text, number);
+                }
+            }
+            return !rejected;
+        }
+
+        /**
+         * Test the properties which the feature does not have, after all others were passed to
+         * {@link #acceptsProperty(String, JsonValue)}.
+         *
+         * @return if the feature is still accepted
+         */
+        boolean finishProperties() {
+            if (!propertiesFinished) {
+                propertiesFinished = true;
+                for (int i = 0; i < tested.length; i++) {
+                    rejected |= !tested[i] && !propertyClauses.get(i).test(null, Double.NaN);
+                }
+            }
+            return !rejected;
+        }
+
+        /**
+         * Test the geometry type of the feature.
+         *
+         * @param type the geometry type, or null if the feature has no geometry
+         * @return if the feature is still accepted
+         */
+        boolean acceptsGeometryType(final String type) {
+            for (Clause clause : geometryClauses) {
+                rejected |= !clause.test(type, Double.NaN);
+            }
+            return !rejected;
+        }
+
+        /**
+         * @return if the properties no longer affect the result, because they were all tested or the filter has no
+         * clauses on properties
+         */
+        boolean isPropertiesDecided() {
+            return propertiesFinished || tested.length == 0;
+        }
+
+        /**
+         * @return if the feature is rejected
+         */
+        boolean isRejected() {
+            return rejected;
+        }
+    }
+
+    /**
+     * Get the text of the tag of a property value.
+     *
+     * @return the text, or null if the value does not become a tag
+     */
+    private static String getText(final JsonValue value) {
+        if (value instanceof JsonString) {
+            return ((JsonString) value).getString();
+        }
+        switch (value.getValueType()) {
+            case NUMBER:
+            case TRUE:
+            case FALSE:
+                return value.toString();
+            default:
+                return null;
+        }
+    }
+
+    private static double toNumber(final JsonValue value) {
+        if (value instanceof JsonNumber) {
+            return ((JsonNumber) value).doubleValue();
+        }
+        return value instanceof JsonString ? toNumber(((JsonString) value).getString()) : Double.NaN;
+    }
+
+    /**
+     * @return the number of a text in JSON number syntax (with an optional {@code +}), or NaN
+     */
+    private static double toNumber(final String text) {
+        if (!text.matches("[-+.0-9eE]+")) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String quote(final String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        final List<Clause> clauses = new ArrayList<>(geometryClauses);
+        clauses.addAll(propertyClauses);
+        for (Clause clause : clauses) {
+            result.append(result.length() == 0 ? "" : " && ").append(clause);
+        }
+        if (includedProperties != null) {
+            result.append(" include=").append(includedProperties);
+        }
+        if (!excludedProperties.isEmpty()) {
+            result.append(" exclude=").append(excludedProperties);
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * Parser of a filter expression.
+     */
+    private static final class Parser {
+        private final String expression;
+        private int position;
+
+        Parser(final String expression) {
+            this.expression = expression;
+        }
+
+        List<Clause> parse() {
+            final List<Clause> clauses = new ArrayList<>();
+            skipWhitespace();
+            while (position < expression.length()) {
+                if (!clauses.isEmpty()) {
+                    if (!expression.startsWith("&&", position)) {
+                        throw error("expected &&");
+                    }
+                    position += 2;
+                    skipWhitespace();
+                }
+                clauses.add(parseClause());
+                skipWhitespace();
+            }
+            return clauses;
+        }
+
+        private Clause parseClause() {
+            final String key = parseValue();
+            skipWhitespace();
+            Operator operator = null;
+            for (Operator candidate : Operator.values()) {
+                if (expression.startsWith(candidate.symbol, position)) {
+                    operator = candidate;
+                    position += candidate.symbol.length();
+                    break;
+                }
+            }
+            if (operator == null) {
+                throw error("expected an operator");
+            }
+            skipWhitespace();
+            final boolean quoted = isQuote();
+            final Clause clause = new Clause(key, operator, parseValue(), quoted);
+            if (operator.isRange() && Double.isNaN(clause.number)) {
+                throw error("expected a number");
+            }
+            if (GEOMETRY_KEY.equals(key) && operator.isRange()) {
+                throw error(GEOMETRY_KEY + " can only be compared with == and !=");
+            }
+            return clause;
+        }
+
+        private boolean isQuote() {
+            return position < expression.length() && expression.charAt(position) == '"';
+        }
+
+        private String parseValue() {
+            return isQuote() ? parseQuoted() : parseWord();
+        }
+
+        private String parseQuoted() {
+            final StringBuilder result = new StringBuilder();
+            position++;
+            while (position < expression.length()) {
+                final char c = expression.charAt(position++);
+                if (c == '"') {
+                    return result.toString();
+                } else if (c == '\\' && position < expression.length()) {
+                    result.append(expression.charAt(position++));
+                } else {
+                    result.append(c);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private String parseWord() {
+            final int start = position;
+            while (position < expression.length() && isWordCharacter(expression.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a key or value");
+            }
+            return expression.substring(start, position);
+        }
+
+        private static boolean isWordCharacter(final char c) {
+            return !Character.isWhitespace(c) && "\"&=!<>".indexOf(c) < 0;
+        }
+
+        private void skipWhitespace() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException("Invalid filter \"" + expression + "\" at " + position + ": " + message);
+        }
+    }
+}
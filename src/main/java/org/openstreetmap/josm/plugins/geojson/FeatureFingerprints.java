@@ -0,0 +1,282 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The fingerprints of the features of an import, with the primitives created for each feature, so that a later import
+ * of the same file only has to convert the features which changed, see {@link GeoJsonReader#setFingerprints}.
+ * <p>
+ * A feature is identified by its {@code id} member, or by its content if it has none, and its fingerprint is a 64-bit
+ * hash of its content. The primitives are kept as ids, so a table does not keep its dataset from being collected.
+ * A feature whose fingerprint is in the table of the previous import is not converted again; {@link #update} then
+ * removes the primitives of the changed and removed features from the dataset of the previous import and moves the
+ * primitives of the new and changed features into it.
+ */
+final class FeatureFingerprints {
+
+    /** Types of the primitives, by the two low bits of their {@link #encode encoded} id */
+    private static final OsmPrimitiveType[] TYPES = {OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION};
+    private static final long ID_SEED = 0x2545F4914F6CDD1DL;
+
+    /** A feature of an import */
+    private static final class Feature {
+        final long hash;
+        /** The {@link #encode encoded} ids of its primitives */
+        final long[] primitives;
+
+        Feature(final long hash, final long[] primitives) {
+            this.hash = hash;
+            this.primitives = primitives;
+        }
+    }
+
+    private final String variant;
+    /** The table of the previous import, only until {@link #update} */
+    private FeatureFingerprints previous;
+    private final LongObjectMap<Feature> features = new LongObjectMap<>();
+    /* The feature being converted, whose primitives are recorded while it is */
+    private boolean recording;
+    private long featureKey;
+    private long featureHash;
+    private long[] featurePrimitives = new long[16];
+    private int featurePrimitiveCount;
+    /* Number of features of this import compared to the previous one */
+    private long addedFeatures;
+    private long changedFeatures;
+    private long unchangedFeatures;
+    private long removedFeatures;
+
+    /**
+     * Create the table for an import.
+     *
+     * @param variant  the configuration of the import, e.g. {@link GeoJsonParseCache#getVariant}, since the table can
+     *                 only be reused by an import which converts the features the same way
+     * @param previous the table of the previous import, or null to convert all features
+     */
+    FeatureFingerprints(final String variant, final FeatureFingerprints previous) {
+        this.variant = variant;
+        this.previous = previous;
+    }
+
+    /**
+     * @return the configuration of the import
+     */
+    String getVariant() {
+        return variant;
+    }
+
+    /**
+     * Start a feature. If the feature did not change since the previous import, its entry is taken over and the
+     * feature must not be converted; otherwise its primitives are recorded until {@link #finishFeature()}.
+     *
+     * @param feature the feature
+     * @return if the feature must be converted
+     */
+    boolean startFeature(final JsonObject feature) {
+        final long hash = hash(feature);
+        final JsonValue id = feature.get("id");
+        long key = id instanceof JsonString || id instanceof JsonNumber ? mix(hash(id) ^ ID_SEED) : hash;
+        while (features.get(key) != null) {
+            // a repeated id or an equal feature without id, which gets the same key in the next import
+            key = mix(key + 1);
+        }
+        final Feature previousFeature = previous == null ? null : previous.features.get(key);
+        if (previousFeature != null && previousFeature.hash == hash) {
+            features.put(key, previousFeature);
+            unchangedFeatures++;
+            recording = false;
+            return false;
+        }
+        if (previousFeature != null) {
+            changedFeatures++;
+        } else {
+            addedFeatures++;
+        }
+        recording = true;
+        featureKey = key;
+        featureHash = hash;
+        featurePrimitiveCount = 0;
+        return true;
+    }
+
+    /**
+     * Record a primitive created for the current feature.
+     *
+     * @param primitive the primitive
+     */
+    void addPrimitive(final OsmPrimitive primitive) {
+        if (!recording) {
+            return;
+        }
+        if (featurePrimitiveCount == featurePrimitives.length) {
+            featurePrimitives = Arrays.copyOf(featurePrimitives, 2 * featurePrimitives.length);
+        }
+        featurePrimitives[featurePrimitiveCount++] = encode(primitive);
+    }
+
+    /**
+     * Complete the entry of the current feature once its primitives are created.
+     */
+    void finishFeature() {
+        if (recording) {
+            features.put(featureKey, new Feature(featureHash, Arrays.copyOf(featurePrimitives, featurePrimitiveCount)));
+            recording = false;
+        }
+    }
+
+    /**
+     * @return the number of features which did not change since the previous import
+     */
+    long getUnchangedFeatureCount() {
+        return unchangedFeatures;
+    }
+
+    /**
+     * Update the dataset of the previous import to the result of this import. The primitives of the features which
+     * changed or were removed are removed from it, unless other primitives still refer to them, and so are the
+     * vertices of their ways which are no longer used. The primitives converted by this import are moved into it.
+     *
+     * @param target    the dataset of the previous import
+     * @param converted the dataset of this import, with the primitives of the new and changed features, which is
+     *                  empty afterwards
+     */
+    void update(final DataSet target, final DataSet converted) {
+        final List<Relation> relations = new ArrayList<>();
+        final List<Way> ways = new ArrayList<>();
+        final Set<Node> nodes = new LinkedHashSet<>();
+        if (previous != null) {
+            previous.features.forEach((feature, key) -> {
+                final Feature current = features.get(key);
+                if (current == feature) {
+                    return;
+                } else if (current == null) {
+                    removedFeatures++;
+                }
+                for (long id : feature.primitives) {
+                    final OsmPrimitive primitive = target.getPrimitiveById(new SimplePrimitiveId(id >> 2, TYPES[(int) (id & 3)]));
+                    if (primitive instanceof Relation) {
+                        relations.add((Relation) primitive);
+                    } else if (primitive instanceof Way) {
+                        ways.add((Way) primitive);
+                    } else if (primitive instanceof Node) {
+                        nodes.add((Node) primitive);
+                    }
+                }
+            });
+            previous = null;
+        }
+        // members before the primitives referring to them
+        final List<OsmPrimitive> added = new ArrayList<>(converted.getNodes());
+        added.addAll(converted.getWays());
+        added.addAll(converted.getRelations());
+        converted.clear();
+        target.beginUpdate();
+        try {
+            for (Relation relation : relations) {
+                if (relation.getReferrers().isEmpty()) {
+                    relation.setMembers(Collections.emptyList());
+                    target.removePrimitive(relation.getPrimitiveId());
+                }
+            }
+            for (Way way : ways) {
+                if (way.getReferrers().isEmpty()) {
+                    // shared vertices are only recorded for the feature which created them
+                    nodes.addAll(way.getNodes());
+                    way.setNodes(Collections.emptyList());
+                    target.removePrimitive(way.getPrimitiveId());
+                }
+            }
+            for (Node node : nodes) {
+                if (node.getReferrers().isEmpty() && node.getDataSet() == target) {
+                    target.removePrimitive(node.getPrimitiveId());
+                }
+            }
+            added.forEach(target::addPrimitive);
+        } finally {
+            target.endUpdate();
+        }
+    }
+
+    /**
+     * Encode the type and id of a primitive in one number.
+     */
+    private static long encode(final OsmPrimitive primitive) {
+        return primitive.getUniqueId() << 2 | primitive.getType().ordinal();
+    }
+
+    /**
+     * Compute the hash of a JSON value. The order of the members of an object does not matter, the order of the
+     * elements of an array does.
+     *
+     * @param value the value
+     * @return the hash
+     */
+    static long hash(final JsonValue value) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                long object = 0x9E3779B97F4A7C15L;
+                for (Map.Entry<String, JsonValue> member : value.asJsonObject().entrySet()) {
+                    object += mix(hash(member.getKey()) * 31 + hash(member.getValue()));
+                }
+                return mix(object);
+            case ARRAY:
+                long array = 0xC2B2AE3D27D4EB4FL;
+                for (JsonValue element : value.asJsonArray()) {
+                    array = array * 0x100000001B3L + hash(element);
+                }
+                return mix(array);
+            case STRING:
+                return hash(((JsonString) value).getString());
+            case NUMBER:
+                final JsonNumber number = (JsonNumber) value;
+                return mix(number.isIntegral() ? number.longValue() : Double.doubleToLongBits(number.doubleValue()));
+            default:
+                return mix(value.getValueType().ordinal() + 1L);
+        }
+    }
+
+    private static long hash(final String string) {
+        // FNV-1a
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spread the bits of a hash, the finalizer of SplitMix64.
+     */
+    private static long mix(final long hash) {
+        long z = hash;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return addedFeatures + " added, " + changedFeatures + " changed, " + removedFeatures + " removed and "
+            + unchangedFeatures + " unchanged features";
+    }
+}
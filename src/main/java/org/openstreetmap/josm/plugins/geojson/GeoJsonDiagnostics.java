@@ -0,0 +1,251 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+
+/**
+ * Issues found while importing GeoJSON, aggregated by their kind. Only the first {@link #MAX_EXAMPLES} issues of each
+ * kind are kept as examples, with a detail of at most {@link #MAX_DETAIL_LENGTH} characters, so a file with many
+ * broken features neither floods the log nor spends its time describing them. Issues may be added by several threads
+ * with {@link GeoJsonReader.Options#PARALLEL}.
+ */
+public final class GeoJsonDiagnostics {
+
+    /**
+     * Kinds of issues.
+     */
+    public enum Kind {
+        /** A geometry with an unknown type, which is skipped */
+        UNKNOWN_GEOMETRY(marktr("Unknown geometry type")),
+        /** A null member of a GeometryCollection */
+        NULL_GEOMETRY(marktr("Geometry collection with a null geometry")),
+        /** A feature without geometry and properties, which is skipped */
+        FEATURE_WITHOUT_PROPERTIES(marktr("Relation/non-geometry feature without properties")),
+        /** A feature without geometry, whose properties have no type, which is skipped */
+        FEATURE_WITHOUT_TYPE(marktr("Relation/non-geometry feature without type")),
+        /** A property whose value is an object or array, which is not converted to a tag */
+        UNSUPPORTED_PROPERTY(marktr("Property with an unsupported value type, ignored")),
+        /** A record of a GeoJSON sequence which cannot be read, see {@link GeoJsonReader.Options#SEQUENCE} */
+        MALFORMED_RECORD(marktr("Malformed GeoJSON record, skipped")),
+        /** A TopoJSON geometry which refers to an arc that does not exist, see {@link TopoJsonReader} */
+        INVALID_ARC(marktr("TopoJSON geometry with an invalid arc index, skipped"));
+
+        private final String description;
+
+        Kind(final String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return the translated description of the kind
+         */
+        public String getDescription() {
+            return tr(description);
+        }
+    }
+
+    /**
+     * One example of an issue.
+     */
+    public static final class Issue {
+        private final Kind kind;
+        private final long featureIndex;
+        private final String detail;
+
+        Issue(final Kind kind, final long featureIndex, final String detail) {
+            this.kind = kind;
+            this.featureIndex = featureIndex;
+            this.detail = detail;
+        }
+
+        /**
+         * @return the kind of the issue
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the index of the feature in the input, counted from 0, or -1 if the issue is not in a feature
+         */
+        public long getFeatureIndex() {
+            return featureIndex;
+        }
+
+        /**
+         * @return the detail, e.g. the abbreviated JSON of the feature, or null
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            final String location = featureIndex >= 0 ? tr("{0} (feature {1})", kind.getDescription(), featureIndex)
+                : kind.getDescription();
+            return detail == null ? location : location + ": " + detail;
+        }
+    }
+
+    /** Number of issues of a kind kept as examples */
+    public static final int MAX_EXAMPLES = 5;
+    /** Maximal length of the detail of an issue */
+    public static final int MAX_DETAIL_LENGTH = 200;
+
+    private final Map<Kind, AtomicLong> counts = new EnumMap<>(Kind.class);
+    private final List<Issue> examples = Collections.synchronizedList(new ArrayList<>());
+
+    GeoJsonDiagnostics() {
+        for (Kind kind : Kind.values()) {
+            counts.put(kind, new AtomicLong());
+        }
+    }
+
+    /**
+     * Add an issue.
+     *
+     * @param kind         the kind
+     * @param featureIndex the index of the feature, or -1
+     * @param detail       the detail, only called if the issue is kept as example; may return null
+     * @return the issue if it is kept as example, otherwise null
+     */
+    Issue add(final Kind kind, final long featureIndex, final Supplier<String> detail) {
+        if (counts.get(kind).getAndIncrement() >= MAX_EXAMPLES) {
+            return null;
+        }
+        final String text = detail.get();
+        final Issue issue = new Issue(kind, featureIndex, text == null || text.length() <= MAX_DETAIL_LENGTH ? text
+            : text.substring(0, MAX_DETAIL_LENGTH - 1) + '…');
+        examples.add(issue);
+        return issue;
+    }
+
+    /**
+     * @return if no issue was found
+     */
+    public boolean isEmpty() {
+        return getTotalCount() == 0;
+    }
+
+    /**
+     * @param kind the kind
+     * @return the number of issues of the kind
+     */
+    public long getCount(final Kind kind) {
+        return counts.get(kind).get();
+    }
+
+    /**
+     * @return the number of issues of all kinds
+     */
+    public long getTotalCount() {
+        return counts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    /**
+     * @return the examples, ordered by their kind and feature
+     */
+    public List<Issue> getExamples() {
+        final List<Issue> sorted;
+        synchronized (examples) {
+            sorted = new ArrayList<>(examples);
+        }
+        sorted.sort(Comparator.comparing(Issue::getKind).thenComparingLong(Issue::getFeatureIndex));
+        return sorted;
+    }
+
+    /**
+     * @return a report with the number of issues of each kind and their examples, in several lines
+     */
+    public String getReport() {
+        final StringBuilder report = new StringBuilder();
+        final List<Issue> sorted = getExamples();
+        for (Kind kind : Kind.values()) {
+            final long count = getCount(kind);
+            if (count > 0) {
+                report.append(count).append(" × ").append(kind.getDescription()).append('\n');
+                sorted.stream().filter(issue -> issue.getKind() == kind).forEach(issue -> report.append("    ")
+                    .append(issue.getFeatureIndex() >= 0 ? tr("feature {0}", issue.getFeatureIndex()) : "")
+                    .append(issue.getDetail() == null ? "" : ": " + issue.getDetail()).append('\n'));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return the number of issues of each kind in one line
+     */
+    @Override
+    public String toString() {
+        final StringBuilder summary = new StringBuilder("GeoJSON import issues:");
+        for (Kind kind : Kind.values()) {
+            final long count = getCount(kind);
+            if (count > 0) {
+                summary.append(summary.charAt(summary.length() - 1) == ':' ? " " : ", ").append(count).append(" × ")
+                    .append(kind.getDescription());
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Serialize a JSON value for the detail of an issue. The serialization stops after {@link #MAX_DETAIL_LENGTH}
+     * characters, so even a feature with a huge geometry is abbreviated quickly.
+     *
+     * @param value the value
+     * @return the abbreviated JSON
+     */
+    static String abbreviate(final JsonValue value) {
+        final LimitedWriter writer = new LimitedWriter();
+        try (JsonWriter json = Json.createWriter(writer)) {
+            json.write(value);
+        } catch (JsonException | IllegalStateException e) {
+            // the limit was reached
+            return writer.text.append('…').toString();
+        }
+        return writer.text.toString();
+    }
+
+    /**
+     * Writer which fails after {@link #MAX_DETAIL_LENGTH} characters.
+     */
+    private static final class LimitedWriter extends Writer {
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) throws IOException {
+            final int n = Math.min(length, MAX_DETAIL_LENGTH - text.length());
+            text.append(buffer, offset, n);
+            if (n < length) {
+                throw new IOException("limit reached");
+            }
+        }
+
+        @Override
+        public void flush() {
+            // nothing to flush
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -5,9 +5,11 @@ import org.openstreetmap.josm.actions.downloadtasks.DownloadOsmTask;
 import org.openstreetmap.josm.actions.downloadtasks.DownloadParams;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.preferences.StringProperty;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
 import java.util.Optional;
@@ -21,7 +23,14 @@ import static org.openstreetmap.josm.tools.I18n.tr;
  */
 public class GeoJsonDownloadTask extends DownloadOsmTask {
 
-    private static final String PATTERN_COMPRESS = "https?://.*/(.*\\.(json|geojson)(\\.(gz|xz|bz2?|zip))?)";
+    /**
+     * URL of the GeoJSON or TopoJSON file used by {@link #download(DownloadParams, Bounds, ProgressMonitor)}. This is a
+     * global advanced preference without a dialog of its own: it applies to all area downloads and is set in the
+     * advanced preferences.
+     */
+    public static final StringProperty DOWNLOAD_URL = new StringProperty("geojson.download.url", "");
+
+    private static final String PATTERN_COMPRESS = "https?://.*/(.*\\.(json|geojson|geojsonl|geojsons|ndjson|topojson)(\\.(gz|xz|bz2?|zip))?)";
 
     @Override
     public String[] getPatterns() {
@@ -33,9 +42,21 @@ public class GeoJsonDownloadTask extends DownloadOsmTask {
         return tr("Download GeoJSON");
     }
 
+    /**
+     * Download the features of the GeoJSON file at {@link #DOWNLOAD_URL} in an area. The file is streamed and only
+     * the geometries in the area are converted; the geometries of a TopoJSON file are converted after all its arcs
+     * have been read.
+     *
+     * @return the future of the download, or null if no URL is set
+     */
     @Override
     public Future<?> download(DownloadParams settings, Bounds downloadArea, ProgressMonitor progressMonitor) {
-        return null;
+        final String source = DOWNLOAD_URL.get();
+        if (Utils.isStripEmpty(source)) {
+            Logging.warn("No GeoJSON URL set for the area download, see preference {0}", DOWNLOAD_URL.getKey());
+            return null;
+        }
+        return download(new GeoJsonServerReader(source, downloadArea), settings, downloadArea, progressMonitor);
     }
 
     @Override
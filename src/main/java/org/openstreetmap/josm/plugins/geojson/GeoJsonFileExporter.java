@@ -0,0 +1,57 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.gui.io.importexport.FileExporter;
+import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Exports an {@link OsmDataLayer} as GeoJSON, see {@link GeoJsonWriter}. The file is compressed according to its
+ * extension, e.g. {@code .geojson.gz}.
+ */
+public class GeoJsonFileExporter extends FileExporter {
+
+    private static final ExtensionFileFilter FILE_FILTER = ExtensionFileFilter.newFilterWithArchiveExtensions(
+        "geojson", "geojson", tr("GeoJSON file") + " (*.geojson, *.geojson.gz, *.geojson.bz2, *.geojson.xz, *.geojson.zip)",
+        ExtensionFileFilter.AddArchiveExtension.NONE, Arrays.asList("gz", "bz", "bz2", "xz", "zip"));
+
+    /**
+     * Constructs a new GeoJSON file exporter with an extension filter for .geojson
+     */
+    public GeoJsonFileExporter() {
+        super(FILE_FILTER);
+    }
+
+    @Override
+    public boolean acceptFile(final File pathname, final Layer layer) {
+        return layer instanceof OsmDataLayer && super.acceptFile(pathname, layer);
+    }
+
+    @Override
+    public void exportData(final File file, final Layer layer) throws IOException {
+        exportData(file, layer, NullProgressMonitor.INSTANCE);
+    }
+
+    @Override
+    public void exportData(final File file, final Layer layer, final ProgressMonitor progressMonitor) throws IOException {
+        if (!(layer instanceof OsmDataLayer)) {
+            throw new IllegalArgumentException("Expected instance of OsmDataLayer, got " + layer.getClass().getName());
+        }
+        Logging.info("Writing GeoJSON: {0}", file.getAbsolutePath());
+        try (OutputStream out = Compression.getCompressedFileOutputStream(file)) {
+            new GeoJsonWriter(((OsmDataLayer) layer).getDataSet()).write(out, progressMonitor);
+        }
+    }
+}
@@ -4,14 +4,36 @@ package org.openstreetmap.josm.plugins.geojson;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.UndoRedoHandler;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.DoubleProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.data.preferences.ListProperty;
+import org.openstreetmap.josm.data.preferences.StringProperty;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.io.importexport.FileImporter;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
@@ -22,6 +44,7 @@ import org.openstreetmap.josm.io.CachedFile;
 import org.openstreetmap.josm.io.Compression;
 import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * @author Ian Dees &lt;ian.dees@gmail.com&gt;
@@ -30,14 +53,96 @@ import org.openstreetmap.josm.tools.Logging;
 public class GeoJsonFileImporter extends FileImporter {
 
     private static final ExtensionFileFilter FILE_FILTER = ExtensionFileFilter.newFilterWithArchiveExtensions(
-        "geojson,json", "geojson", tr("GeoJSON file") + " (*.geojson, *.geojson.gz, *.geojson.bz2, *.geojson.xz, *.geojson.zip, *.json)",
+        "geojson,json,geojsonl,geojsons,ndjson,topojson", "geojson",
+        tr("GeoJSON file") + " (*.geojson, *.geojson.gz, *.geojson.bz2, *.geojson.xz, *.geojson.zip, *.json,"
+            + " *.geojsonl, *.geojsons, *.ndjson, *.topojson)",
         ExtensionFileFilter.AddArchiveExtension.NONE, Arrays.asList("gz", "bz", "bz2", "xz", "zip"));
 
+    /** Names of files with a sequence of GeoJSON texts, see {@link GeoJsonReader.Options#SEQUENCE} */
+    private static final Pattern SEQUENCE_PATTERN = Pattern.compile(".*\\.(geojsonl|geojsons|ndjson)(\\.(gz|xz|bz2?|zip))?",
+        Pattern.CASE_INSENSITIVE);
+    /** Names of TopoJSON files, which have no features to index, see {@link TopoJsonReader} */
+    private static final Pattern TOPOJSON_PATTERN = Pattern.compile(".*\\.topojson(\\.(gz|xz|bz2?|zip))?",
+        Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Use a {@link GeoJsonIndex} stored next to the file to read only the features in the area of an area download.
+     * The index is built by the first area download of a file, and rebuilt when the file changes.
+     */
+    public static final BooleanProperty SPATIAL_INDEX = new BooleanProperty("geojson.import.spatial-index", false);
+    /** Share the nodes of way vertices at the same position, see {@link GeoJsonReader.Options#DEDUPLICATE_NODES} */
+    public static final BooleanProperty DEDUPLICATE_NODES = new BooleanProperty("geojson.import.deduplicate-nodes", false);
+    /** Convert features on several threads, see {@link GeoJsonReader.Options#PARALLEL} */
+    public static final BooleanProperty PARALLEL = new BooleanProperty("geojson.import.parallel", false);
+    /** Share equal tag strings, see {@link GeoJsonReader.Options#INTERN_TAGS} */
+    public static final BooleanProperty INTERN_TAGS = new BooleanProperty("geojson.import.intern-tags", true);
+    /**
+     * Tokenize UTF-8 files with the byte-level parser, see {@link GeoJsonReader.Options#UTF8_PARSER}. Otherwise, the
+     * javax.json parser is used, which stays the reference.
+     */
+    public static final BooleanProperty UTF8_PARSER = new BooleanProperty("geojson.import.utf8-parser", false);
+    /** Convert each MultiPolygon to one relation, see {@link GeoJsonReader.Options#MULTIPOLYGON_RELATIONS} */
+    public static final BooleanProperty MULTIPOLYGON_RELATIONS = new BooleanProperty("geojson.import.multipolygon-relations", false);
+    /** Simplify lines and rings with this tolerance in metres, see {@link LineSimplifier}; 0 keeps all vertices */
+    public static final DoubleProperty SIMPLIFY_TOLERANCE = new DoubleProperty("geojson.import.simplify-tolerance", 0);
+    /**
+     * Add the layer of a file before it is read, and fill it in batches of {@link #BATCH_SIZE} primitives while the
+     * file is read. If the import is canceled, the layer keeps the features read so far.
+     */
+    public static final BooleanProperty INCREMENTAL = new BooleanProperty("geojson.import.incremental", false);
+    /** Number of primitives added to the layer at once with {@link #INCREMENTAL} */
+    public static final IntegerProperty BATCH_SIZE = new IntegerProperty("geojson.import.batch-size", 50_000);
+    /**
+     * Combine the files of a multi-file import into one layer, whose ways share their vertices across the files, e.g.
+     * along the edges of tiles. Otherwise, each file gets a layer of its own.
+     */
+    public static final BooleanProperty MERGE_FILES = new BooleanProperty("geojson.import.merge-files", false);
+    /**
+     * Read uncompressed files through a memory mapping, see {@link MappedFileInputStream}. Off by default: the tokenizer
+     * dominates an import, and on Windows a mapped file stays locked until the garbage collector unmaps it, so it
+     * cannot be replaced while its layer is {@link #RELOAD}ed.
+     */
+    public static final BooleanProperty MEMORY_MAPPED = new BooleanProperty("geojson.import.memory-mapped", false);
+    /** Import only the features matching this expression, see {@link FeatureFilter}; empty to import all features */
+    public static final StringProperty FILTER = new StringProperty("geojson.import.filter", "");
+    /** Import only these properties as tags, all if empty */
+    public static final ListProperty INCLUDED_PROPERTIES = new ListProperty("geojson.import.properties.include",
+        Collections.emptyList());
+    /** Do not import these properties as tags */
+    public static final ListProperty EXCLUDED_PROPERTIES = new ListProperty("geojson.import.properties.exclude",
+        Collections.emptyList());
+    /** Keep the parsed data of opened files in a {@link GeoJsonParseCache}, so unchanged files are reopened faster */
+    public static final BooleanProperty PARSE_CACHE = new BooleanProperty("geojson.import.cache", false);
+    /** Maximal size of the {@link #PARSE_CACHE} in megabytes */
+    public static final IntegerProperty PARSE_CACHE_SIZE = new IntegerProperty("geojson.import.cache.max-size", 2048);
+    /**
+     * Open a file which is already shown in a layer into that layer, and only replace the features which changed since
+     * it was loaded, see {@link FeatureFingerprints}. The fingerprints are kept for the layers of files opened with
+     * this option, which are therefore not loaded from the {@link #PARSE_CACHE}. A layer with unsaved changes is only
+     * reloaded if the user confirms it, since the changes to the replaced features and the undo history are lost.
+     */
+    public static final BooleanProperty RELOAD = new BooleanProperty("geojson.import.reload", false);
+
+    /** The fingerprints of the features of layers opened with {@link #RELOAD}, by the dataset of the layer */
+    private static final Map<DataSet, FeatureFingerprints> FINGERPRINTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final File cacheDirectory;
+
     /**
      * Constructs a new GeoJSON File importer with an extension filter for .json and .geojson
      */
     public GeoJsonFileImporter() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new GeoJSON File importer with an extension filter for .json and .geojson
+     *
+     * @param cacheDirectory the directory of the {@link #PARSE_CACHE}, or null to disable the cache
+     */
+    public GeoJsonFileImporter(final File cacheDirectory) {
         super(FILE_FILTER);
+        this.cacheDirectory = cacheDirectory;
     }
 
     @Override
@@ -45,10 +150,61 @@ public class GeoJsonFileImporter extends FileImporter {
         progressMonitor.beginTask(tr("Loading json file…"));
         progressMonitor.setTicksCount(2);
         Logging.info("Parsing GeoJSON: {0}", file.getAbsolutePath());
-        try (InputStream fileInputStream = Compression.getUncompressedFileInputStream(file)) {
-            DataSet data = new GeoJsonReader().doParseDataSet(fileInputStream, progressMonitor);
+        final String variant = getCacheVariant(file.getName());
+        final GeoJsonParseCache cache = getParseCache();
+        try {
+            final long size = file.length();
+            final long lastModified = Files.getLastModifiedTime(file.toPath()).toMillis();
+            DataSet data = null;
+            GeoJsonDiagnostics diagnostics = null;
+            OsmDataLayer layer = RELOAD.get() ? getReloadLayer(file, variant) : null;
+            if (layer != null) {
+                if (!layer.requiresSaveToFile() || confirmReload(layer, file)) {
+                    reload(layer, file, progressMonitor);
+                } else {
+                    Logging.info("Reloading of GeoJSON refused for the modified layer: {0}", file.getAbsolutePath());
+                }
+                return;
+            }
+            if (cache != null && !RELOAD.get()) {
+                progressMonitor.indeterminateSubTask(tr("Reading cached GeoJSON…"));
+                data = cache.load(file.toPath(), variant);
+            }
+            if (data != null) {
+                Logging.info("Loaded GeoJSON from cache: {0}", file.getAbsolutePath());
+            } else {
+                final GeoJsonReader reader = createReader(file.getName());
+                if (RELOAD.get()) {
+                    reader.setFingerprints(new FeatureFingerprints(variant, null));
+                }
+                if (INCREMENTAL.get()) {
+                    reader.setBatchSize(Math.max(1, BATCH_SIZE.get()));
+                    layer = new OsmDataLayer(reader.getDataSet(), file.getName(), file);
+                    MainApplication.getLayerManager().addLayer(layer);
+                }
+                data = parse(reader, file, progressMonitor.createSubTaskMonitor(1, false));
+                diagnostics = reader.getDiagnostics();
+                if (data == null) {
+                    Logging.info("Loading of GeoJSON canceled: {0}", file.getAbsolutePath());
+                    return;
+                }
+                if (cache != null) {
+                    cache.store(file.toPath(), size, lastModified, variant, data);
+                }
+                if (reader.getFingerprints() != null) {
+                    FINGERPRINTS.put(data, reader.getFingerprints());
+                }
+            }
             progressMonitor.worked(1);
-            MainApplication.getLayerManager().addLayer(new OsmDataLayer(data, file.getName(), file));
+            if (layer == null) {
+                MainApplication.getLayerManager().addLayer(new OsmDataLayer(data, file.getName(), file));
+            } else {
+                // the batches added while reading are no changes of the user
+                layer.onPostLoadFromFile();
+            }
+            if (diagnostics != null && !diagnostics.isEmpty()) {
+                showDiagnostics(file, diagnostics);
+            }
         } catch (final Exception e) {
             Logging.error("Error while reading json file!");
             Logging.error(e);
@@ -59,10 +215,373 @@ public class GeoJsonFileImporter extends FileImporter {
         }
     }
 
+    /**
+     * Get the layer into which a file is reloaded with {@link #RELOAD}.
+     *
+     * @return the layer of the file, or null if there is none with fingerprints of the same configuration
+     */
+    private static OsmDataLayer getReloadLayer(final File file, final String variant) {
+        for (OsmDataLayer layer : MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class)) {
+            final FeatureFingerprints fingerprints = FINGERPRINTS.get(layer.getDataSet());
+            if (file.equals(layer.getAssociatedFile()) && fingerprints != null && fingerprints.getVariant().equals(variant)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ask the user whether a layer with unsaved changes is reloaded.
+     *
+     * @param layer the layer
+     * @param file  the file of the layer
+     * @return if the layer is reloaded
+     */
+    boolean confirmReload(final OsmDataLayer layer, final File file) {
+        return GuiHelper.runInEDTAndWaitAndReturn(() -> JOptionPane.showConfirmDialog(null,
+            tr("The layer {0} has unsaved changes. Reloading {1} replaces the features which changed in the file,"
+                + " so your changes to them and the undo history of the layer are lost.\nReload anyway?",
+                layer.getName(), file.getName()),
+            tr("Reload GeoJSON"), JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION);
+    }
+
+    /**
+     * Reload a file into its layer, converting only the features which changed since it was loaded.
+     */
+    private static void reload(final OsmDataLayer layer, final File file, final ProgressMonitor progressMonitor)
+            throws IOException, IllegalDataException {
+        final FeatureFingerprints previous = FINGERPRINTS.get(layer.getDataSet());
+        final GeoJsonReader reader = createReader(file.getName());
+        reader.setFingerprints(new FeatureFingerprints(previous.getVariant(), previous));
+        final DataSet changes = parse(reader, file, progressMonitor.createSubTaskMonitor(1, false));
+        if (changes == null) {
+            Logging.info("Reloading of GeoJSON canceled: {0}", file.getAbsolutePath());
+            return;
+        }
+        final FeatureFingerprints fingerprints = reader.getFingerprints();
+        if (fingerprints == null) {
+            // the file is no longer made of features, all of them were converted
+            FINGERPRINTS.remove(layer.getDataSet());
+            MainApplication.getLayerManager().addLayer(new OsmDataLayer(changes, file.getName(), file));
+        } else {
+            fingerprints.update(layer.getDataSet(), changes);
+            FINGERPRINTS.put(layer.getDataSet(), fingerprints);
+            // the commands may refer to removed primitives; the undo/redo listeners update Swing actions
+            GuiHelper.runInEDTAndWait(() -> {
+                UndoRedoHandler.getInstance().clean(layer.getDataSet());
+                layer.onPostLoadFromFile();
+                layer.invalidate();
+            });
+            Logging.info("Reloaded GeoJSON {0}: {1}", file.getAbsolutePath(), fingerprints);
+        }
+        progressMonitor.worked(1);
+        if (!reader.getDiagnostics().isEmpty()) {
+            showDiagnostics(file, reader.getDiagnostics());
+        }
+    }
+
+    @Override
+    public boolean isBatchImporter() {
+        return true;
+    }
+
+    /**
+     * Import several files, which are read concurrently on the {@link FileImport#POOL}. The layers are added in the
+     * order of the files, or the files are combined into one layer with {@link #MERGE_FILES}. A file which cannot be
+     * read is reported after the others have been imported. If the import is canceled, the files which are still being
+     * read are canceled too. Files are never imported {@link #INCREMENTAL}ly here, and {@link #RELOAD} does not apply:
+     * each file is opened in a new layer, which is not reloaded by later imports.
+     */
+    @Override
+    public void importData(final List<File> files, final ProgressMonitor progressMonitor) {
+        if (files.size() == 1) {
+            importData(files.get(0), progressMonitor);
+            return;
+        }
+        progressMonitor.beginTask(tr("Loading {0} GeoJSON files…", files.size()), files.size());
+        Logging.info("Parsing {0} GeoJSON files", files.size());
+        final GeoJsonParseCache cache = getParseCache();
+        final List<GeoJsonReader> readers = new ArrayList<>(files.size());
+        final List<Future<FileImport>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+            final GeoJsonReader reader = createReader(file.getName());
+            readers.add(reader);
+            tasks.add(FileImport.POOL.submit(() -> FileImport.read(file, reader, cache)));
+        }
+        final GeoJsonReader merged = MERGE_FILES.get() ? new GeoJsonReader(GeoJsonReader.Options.DEDUPLICATE_NODES) : null;
+        final StringBuilder report = new StringBuilder();
+        int failedFiles = 0;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                progressMonitor.subTask(tr("Loading {0}…", file.getName()));
+                try {
+                    final FileImport imported = join(tasks.get(i), progressMonitor);
+                    if (imported == null) {
+                        Logging.info("Loading of GeoJSON files canceled");
+                        return;
+                    }
+                    if (merged != null) {
+                        merged.mergeDataSet(imported.data);
+                    } else {
+                        MainApplication.getLayerManager().addLayer(new OsmDataLayer(imported.data, file.getName(), file));
+                    }
+                    if (imported.diagnostics != null && !imported.diagnostics.isEmpty()) {
+                        report.append(file.getName()).append(": ").append(imported.diagnostics.getReport());
+                    }
+                } catch (ExecutionException e) {
+                    Logging.error("Error while reading json file {0}", file.getAbsolutePath());
+                    Logging.error(e.getCause());
+                    report.append(file.getName()).append(": ").append(tr("Error: {0}", e.getCause().getMessage())).append('\n');
+                    failedFiles++;
+                }
+                progressMonitor.worked(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            // stop the files which are still being read after a cancellation or an interruption
+            readers.forEach(GeoJsonReader::cancel);
+            tasks.forEach(task -> task.cancel(false));
+            progressMonitor.finishTask();
+        }
+        if (merged != null && failedFiles < files.size()) {
+            MainApplication.getLayerManager().addLayer(new OsmDataLayer(merged.getDataSet(),
+                tr("{0} GeoJSON files", files.size() - failedFiles), null));
+        }
+        if (report.length() > 0) {
+            showReport(failedFiles > 0 ? tr("{0} of {1} GeoJSON files could not be loaded:", failedFiles, files.size())
+                : tr("Issues found while loading {0} GeoJSON files, the affected data was skipped:", files.size()),
+                report.toString());
+        }
+    }
+
+    /**
+     * Wait for a file of a multi-file import.
+     *
+     * @return the imported file, or null if the import was canceled
+     */
+    private static FileImport join(final Future<FileImport> task, final ProgressMonitor progressMonitor)
+            throws ExecutionException, InterruptedException {
+        while (!progressMonitor.isCanceled()) {
+            try {
+                return task.get(100, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check for cancellation
+                Logging.trace(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A file read by a multi-file import, and the thread pool on which the files are read, which is only created
+     * when needed.
+     */
+    private static final class FileImport {
+        static final ForkJoinPool POOL = Utils.newForkJoinPool("geojson.import.file-threads", "geojson-file-%d", Thread.NORM_PRIORITY);
+
+        final DataSet data;
+        /** The issues of the import, or null if the file was loaded from the {@link GeoJsonParseCache} */
+        final GeoJsonDiagnostics diagnostics;
+
+        private FileImport(final DataSet data, final GeoJsonDiagnostics diagnostics) {
+            this.data = data;
+            this.diagnostics = diagnostics;
+        }
+
+        /**
+         * Read a file, from the parse cache if possible.
+         *
+         * @return the imported file, or null if the reader was canceled
+         */
+        static FileImport read(final File file, final GeoJsonReader reader, final GeoJsonParseCache cache)
+                throws IOException, IllegalDataException {
+            final String variant = getCacheVariant(file.getName());
+            final long size = file.length();
+            final long lastModified = Files.getLastModifiedTime(file.toPath()).toMillis();
+            if (cache != null) {
+                final DataSet data = cache.load(file.toPath(), variant);
+                if (data != null) {
+                    Logging.info("Loaded GeoJSON from cache: {0}", file.getAbsolutePath());
+                    return new FileImport(data, null);
+                }
+            }
+            final DataSet data = parse(reader, file, NullProgressMonitor.INSTANCE);
+            if (data == null) {
+                return null;
+            }
+            if (cache != null) {
+                cache.store(file.toPath(), size, lastModified, variant, data);
+            }
+            return new FileImport(data, reader.getDiagnostics());
+        }
+    }
+
+    /**
+     * Show the issues found while importing a file in one dialog.
+     */
+    private static void showDiagnostics(final File file, final GeoJsonDiagnostics diagnostics) {
+        showReport(tr("{0} issues found while loading {1}, the affected data was skipped:", diagnostics.getTotalCount(), file.getName()),
+            diagnostics.getReport());
+    }
+
+    private static void showReport(final String message, final String report) {
+        GuiHelper.runInEDT(() -> {
+            final JTextArea text = new JTextArea(report, 12, 80);
+            text.setEditable(false);
+            JOptionPane.showMessageDialog(null, new Object[] {message, new JScrollPane(text)}, tr("Warning"),
+                JOptionPane.WARNING_MESSAGE);
+        });
+    }
+
+    /**
+     * @return the dataset, or null if the import was canceled
+     */
+    private static DataSet parse(final GeoJsonReader reader, final File file, final ProgressMonitor progressMonitor)
+            throws IOException, IllegalDataException {
+        if (isMapped(file)) {
+            try (MappedFileInputStream mappedInputStream = new MappedFileInputStream(file.toPath())) {
+                reader.setInputProgress(mappedInputStream::getPosition, mappedInputStream.getSize());
+                return reader.doParseDataSet(mappedInputStream, progressMonitor);
+            }
+        }
+        // count the bytes of the file itself, so the progress also works for compressed files
+        try (ByteCountingInputStream fileInputStream = new ByteCountingInputStream(new FileInputStream(file));
+             InputStream uncompressedInputStream = Compression.byExtension(file.getName()).getUncompressedInputStream(fileInputStream)) {
+            reader.setInputProgress(fileInputStream::getCount, file.length());
+            return reader.doParseDataSet(uncompressedInputStream, progressMonitor);
+        }
+    }
+
+    /**
+     * @return if a file is read through a memory mapping
+     */
+    private static boolean isMapped(final File file) {
+        return MEMORY_MAPPED.get() && Compression.byExtension(file.getName()) == Compression.NONE;
+    }
+
+    /**
+     * @return the parse cache, or null if it is disabled
+     */
+    GeoJsonParseCache getParseCache() {
+        if (cacheDirectory == null || !PARSE_CACHE.get()) {
+            return null;
+        }
+        return new GeoJsonParseCache(cacheDirectory.toPath(), PARSE_CACHE_SIZE.get() * 1024L * 1024L);
+    }
+
     public DataSet parseDataSet(final String source) throws IOException, IllegalDataException {
+        return parseDataSet(source, null);
+    }
+
+    /**
+     * Parse the GeoJSON file at a URL, keeping only the geometries in an area.
+     *
+     * @param source the URL of the file
+     * @param area   the area, or null for all geometries
+     * @return the dataset
+     * @throws IOException          if the file cannot be downloaded
+     * @throws IllegalDataException if the file cannot be parsed
+     */
+    public DataSet parseDataSet(final String source, final Bounds area) throws IOException, IllegalDataException {
         try (CachedFile cf = new CachedFile(source)) {
-            InputStream fileInputStream = Compression.getUncompressedFileInputStream(cf.getFile());
-            return GeoJsonReader.parseDataSet(fileInputStream, NullProgressMonitor.INSTANCE);
+            final File file = cf.getFile();
+            final GeoJsonReader reader = createReader(source);
+            reader.setArea(area);
+            InputStream indexed = null;
+            if (area != null && SPATIAL_INDEX.get() && !SEQUENCE_PATTERN.matcher(source).matches()
+                && !TOPOJSON_PATTERN.matcher(source).matches()
+                && Compression.byExtension(file.getName()) == Compression.NONE) {
+                indexed = openIndexed(file, area);
+            }
+            try (InputStream fileInputStream = indexed != null ? indexed : isMapped(file) ? new MappedFileInputStream(file.toPath())
+                : Compression.getUncompressedFileInputStream(file)) {
+                return reader.doParseDataSet(fileInputStream, NullProgressMonitor.INSTANCE);
+            }
+        }
+    }
+
+    /**
+     * Open the features of a file in an area through its {@link GeoJsonIndex}, which is built if needed.
+     *
+     * @return the features as FeatureCollection, or null if the file cannot be indexed
+     */
+    private static InputStream openIndexed(final File file, final Bounds area) {
+        try (GeoJsonIndex index = GeoJsonIndex.open(file.toPath())) {
+            return index.openFeatures(area);
+        } catch (IOException | RuntimeException e) {
+            Logging.warn("Cannot use a spatial index for {0}, reading the whole file: {1}", file, e.getMessage());
+            Logging.debug(e);
+            return null;
+        }
+    }
+
+    /**
+     * Create a reader for a file, with the options and simplification selected in the preferences.
+     *
+     * @param name the name or URL of the file
+     * @return the reader
+     */
+    static GeoJsonReader createReader(final String name) {
+        final GeoJsonReader reader = new GeoJsonReader(getReaderOptions(name));
+        reader.setSimplification(SIMPLIFY_TOLERANCE.get());
+        reader.setFilter(getFeatureFilter());
+        return reader;
+    }
+
+    /**
+     * Get the variant of the {@link GeoJsonParseCache} entries of a file for the reader selected in the preferences.
+     *
+     * @param name the name or URL of the file
+     * @return the variant
+     */
+    static String getCacheVariant(final String name) {
+        return GeoJsonParseCache.getVariant(getReaderOptions(name), SIMPLIFY_TOLERANCE.get(), getFeatureFilter());
+    }
+
+    /**
+     * Get the feature filter selected in the preferences.
+     *
+     * @return the filter, or null to import all features with all properties
+     */
+    static FeatureFilter getFeatureFilter() {
+        try {
+            return FeatureFilter.create(FILTER.get(), INCLUDED_PROPERTIES.get(), EXCLUDED_PROPERTIES.get());
+        } catch (IllegalArgumentException e) {
+            Logging.warn("Cannot use the GeoJSON import filter, importing all features: {0}", e.getMessage());
+            Logging.debug(e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the reader options for a file, as selected in the preferences.
+     *
+     * @param name the name or URL of the file, used to detect a GeoJSON sequence
+     * @return the reader options
+     */
+    static GeoJsonReader.Options[] getReaderOptions(final String name) {
+        final List<GeoJsonReader.Options> options = new ArrayList<>();
+        if (SEQUENCE_PATTERN.matcher(name).matches()) {
+            options.add(GeoJsonReader.Options.SEQUENCE);
+        }
+        if (DEDUPLICATE_NODES.get()) {
+            options.add(GeoJsonReader.Options.DEDUPLICATE_NODES);
+        }
+        if (PARALLEL.get()) {
+            options.add(GeoJsonReader.Options.PARALLEL);
+        }
+        if (INTERN_TAGS.get()) {
+            options.add(GeoJsonReader.Options.INTERN_TAGS);
+        }
+        if (UTF8_PARSER.get()) {
+            options.add(GeoJsonReader.Options.UTF8_PARSER);
+        }
+        if (MULTIPOLYGON_RELATIONS.get()) {
+            options.add(GeoJsonReader.Options.MULTIPOLYGON_RELATIONS);
         }
+        return options.toArray(new GeoJsonReader.Options[0]);
     }
 }
@@ -0,0 +1,20 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+/**
+ * Listener for the metrics of a GeoJSON import. Metrics are only collected if a listener is attached to the reader
+ * (or debug logging is enabled), so an import without listener has no measurable overhead.
+ *
+ * @see GeoJsonReader#parseDataSet(java.io.InputStream, org.openstreetmap.josm.gui.progress.ProgressMonitor,
+ * GeoJsonImportListener, GeoJsonReader.Options...)
+ */
+@FunctionalInterface
+public interface GeoJsonImportListener {
+
+    /**
+     * Called on the importing thread when an import has finished, but not if it failed or was canceled.
+     *
+     * @param metrics the metrics of the import
+     */
+    void importFinished(GeoJsonImportMetrics metrics);
+}
@@ -0,0 +1,180 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one GeoJSON import, see {@link GeoJsonImportListener}. The counters may be updated by several threads
+ * with {@link GeoJsonReader.Options#PARALLEL}.
+ */
+public final class GeoJsonImportMetrics {
+
+    /**
+     * Phases of an import. The phases do not overlap on the importing thread, so their times add up to the total time
+     * of the import, unless the geometries are built on other threads.
+     */
+    public enum Phase {
+        /** Reading and decompressing the input, i.e. the time spent in the input stream */
+        DECOMPRESS,
+        /** Tokenizing the JSON and converting the properties to tags, which is the remaining time */
+        TOKENIZE,
+        /**
+         * Creating the nodes, ways and relations of the geometries, including the simplification. With
+         * {@link GeoJsonReader.Options#PARALLEL}, this is the sum of the times of all threads.
+         */
+        BUILD,
+        /** Adding the primitives to the dataset */
+        INSERT
+    }
+
+    /** Minimal duration of a window for the feature rate */
+    private static final long RATE_WINDOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<String, LongAdder> geometries = new ConcurrentHashMap<>();
+    private final LongAdder features = new LongAdder();
+    private final LongAdder vertices = new LongAdder();
+    private final LongAdder warnings = new LongAdder();
+    private final long start = System.nanoTime();
+    private long totalNanos;
+    private long bytesRead;
+    private long windowStart = start;
+    private long windowFeatures;
+    private double peakFeatureRate;
+
+    GeoJsonImportMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+    }
+
+    void addNanos(final Phase phase, final long nanos) {
+        phaseNanos.get(phase).add(nanos);
+    }
+
+    void addFeature() {
+        features.increment();
+    }
+
+    void addGeometry(final String type, final int vertexCount) {
+        geometries.computeIfAbsent(type, it -> new LongAdder()).increment();
+        vertices.add(vertexCount);
+    }
+
+    void addWarning() {
+        warnings.increment();
+    }
+
+    /**
+     * Update the peak feature rate, called regularly on the importing thread.
+     *
+     * @param now the current {@link System#nanoTime()}
+     */
+    void sample(final long now) {
+        if (now - windowStart >= RATE_WINDOW) {
+            final long count = features.sum();
+            peakFeatureRate = Math.max(peakFeatureRate, (count - windowFeatures) * 1e9 / (now - windowStart));
+            windowStart = now;
+            windowFeatures = count;
+        }
+    }
+
+    /**
+     * Complete the metrics at the end of the import.
+     *
+     * @param bytes the number of bytes read from the input
+     */
+    void finish(final long bytes) {
+        this.totalNanos = System.nanoTime() - start;
+        this.bytesRead = bytes;
+        // imports shorter than a window, or the rest of a longer one
+        final long now = start + totalNanos;
+        if (now > windowStart && (peakFeatureRate == 0 || now - windowStart >= RATE_WINDOW)) {
+            peakFeatureRate = Math.max(peakFeatureRate, (features.sum() - windowFeatures) * 1e9 / (now - windowStart));
+        }
+    }
+
+    /**
+     * @return the wall time of the import in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @param phase the phase
+     * @return the time spent in the phase in nanoseconds
+     */
+    public long getNanos(final Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    /**
+     * @return the number of features, including those without geometry
+     */
+    public long getFeatureCount() {
+        return features.sum();
+    }
+
+    /**
+     * @return the number of geometries by their type, e.g. {@code Polygon}; the members of a GeometryCollection are
+     * counted on their own, geometries outside of the area of the import are not counted
+     */
+    public Map<String, Long> getGeometryCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        geometries.forEach((type, count) -> counts.put(type, count.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return the number of positions of the converted geometries, before any simplification
+     */
+    public long getVertexCount() {
+        return vertices.sum();
+    }
+
+    /**
+     * @return the number of bytes of GeoJSON read, after decompression
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of warnings logged during the import
+     */
+    public long getWarningCount() {
+        return warnings.sum();
+    }
+
+    /**
+     * @return the highest number of features per second read during the import, measured in windows of at least
+     * half a second
+     */
+    public double getPeakFeatureRate() {
+        return peakFeatureRate;
+    }
+
+    /**
+     * @return a summary of the metrics in one line
+     */
+    @Override
+    public String toString() {
+        final StringBuilder summary = new StringBuilder("GeoJSON import: ").append(getFeatureCount()).append(" features ")
+            .append(getGeometryCounts()).append(", ").append(getVertexCount()).append(" vertices, ")
+            .append(getBytesRead()).append(" bytes in ").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append(" ms (");
+        for (Phase phase : Phase.values()) {
+            summary.append(phase == Phase.DECOMPRESS ? "" : ", ").append(phase.name().toLowerCase(Locale.ROOT))
+                .append(' ').append(TimeUnit.NANOSECONDS.toMillis(getNanos(phase))).append(" ms");
+        }
+        return summary.append("), peak ").append(Math.round(peakFeatureRate)).append(" features/s, ")
+            .append(getWarningCount()).append(" warnings").toString();
+    }
+}
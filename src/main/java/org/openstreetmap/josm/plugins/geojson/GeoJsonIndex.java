@@ -0,0 +1,622 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.tools.Logging;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Spatial index of the features of a GeoJSON FeatureCollection, stored in a sidecar file next to the GeoJSON file.
+ * <p>
+ * The index is built by scanning the file once. For each feature, it records the byte range of the feature in the file
+ * and the envelope of its geometry; features without geometry get an envelope covering the world. The features are
+ * sorted along a Hilbert curve and stored as a packed R-tree with {@link #NODE_SIZE} children per node, so a query
+ * reads only the nodes whose envelope intersects the area.
+ * <p>
+ * The index stores the size and modification time of the GeoJSON file. {@link #open(Path)} rebuilds an index which
+ * does not match the file anymore.
+ * <p>
+ * {@link #openFeatures(Bounds)} returns the features intersecting an area as a FeatureCollection, read from
+ * memory-mapped windows of the GeoJSON file, so that only these features have to be parsed.
+ */
+final class GeoJsonIndex implements Closeable {
+
+    /** Suffix of the index file, appended to the name of the GeoJSON file */
+    static final String SUFFIX = ".gjidx";
+
+    private static final int MAGIC = 0x474A4958; // GJIX
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+    private static final int NODE_SIZE = 16;
+    /** Bytes of a node envelope: four floats */
+    private static final int BOX_SIZE = 16;
+    /** Bytes of a feature: offset, length and envelope */
+    private static final int ENTRY_SIZE = 8 + 4 + BOX_SIZE;
+    /** Size of the windows of the GeoJSON file which are memory-mapped at once */
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final Path source;
+    private final FileChannel index;
+    private final long featureCount;
+    /** Number of nodes on each level, from the leaves (the features) to the root */
+    private final long[] levelSizes;
+    /** Position of the first node of each level in the index file */
+    private final long[] levelPositions;
+
+    private GeoJsonIndex(final Path source, final FileChannel index, final long featureCount) {
+        this.source = source;
+        this.index = index;
+        this.featureCount = featureCount;
+        this.levelSizes = getLevelSizes(featureCount);
+        this.levelPositions = new long[levelSizes.length];
+        // the internal levels are stored from the root down, followed by the features
+        long position = HEADER_SIZE;
+        for (int level = levelSizes.length - 1; level > 0; level--) {
+            levelPositions[level] = position;
+            position += levelSizes[level] * BOX_SIZE;
+        }
+        levelPositions[0] = position;
+    }
+
+    /**
+     * Get the index file of a GeoJSON file.
+     *
+     * @param source the GeoJSON file
+     * @return the index file, next to the GeoJSON file
+     */
+    static Path getIndexFile(final Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Open the index of a GeoJSON file, building it if it does not exist or does not match the file.
+     *
+     * @param source the GeoJSON file, an uncompressed FeatureCollection
+     * @return the index
+     * @throws IOException if the index cannot be read or written, or the file is not a FeatureCollection
+     */
+    static GeoJsonIndex open(final Path source) throws IOException {
+        final Path indexFile = getIndexFile(source);
+        if (Files.isRegularFile(indexFile)) {
+            final GeoJsonIndex index = read(source, indexFile);
+            if (index != null) {
+                return index;
+            }
+            Logging.info("GeoJSON index {0} is stale, rebuilding it", indexFile);
+        }
+        build(source, indexFile);
+        final GeoJsonIndex index = read(source, indexFile);
+        if (index == null) {
+            throw new IOException("GeoJSON file changed while it was indexed: " + source);
+        }
+        return index;
+    }
+
+    /**
+     * Read an index, if it matches the GeoJSON file.
+     *
+     * @return the index, or null if it is stale
+     */
+    private static GeoJsonIndex read(final Path source, final Path indexFile) throws IOException {
+        final FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            if (header.getInt() == MAGIC && header.getInt() == VERSION && header.getLong() == Files.size(source)
+                && header.getLong() == Files.getLastModifiedTime(source).toMillis()) {
+                final long featureCount = header.getLong();
+                final GeoJsonIndex index = new GeoJsonIndex(source, channel, featureCount);
+                if (channel.size() == index.levelPositions[0] + featureCount * ENTRY_SIZE) {
+                    return index;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Logging.debug(e);
+        }
+        channel.close();
+        return null;
+    }
+
+    /**
+     * Scan a GeoJSON file and write its index.
+     *
+     * @param source    the GeoJSON file
+     * @param indexFile the index file to write
+     * @throws IOException if the file cannot be read or is not a FeatureCollection, or the index cannot be written
+     */
+    static void build(final Path source, final Path indexFile) throws IOException {
+        Logging.info("Indexing GeoJSON file {0}", source);
+        final long size = Files.size(source);
+        final long lastModified = Files.getLastModifiedTime(source).toMillis();
+        final Entries entries = scan(source);
+        entries.sort();
+        final long[] levelSizes = getLevelSizes(entries.size);
+
+        // write to a temporary file first, so a failed build does not leave a broken index
+        final Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeLong(entries.size);
+            // envelopes of all levels, index 0 are the features
+            final List<float[]> levels = new ArrayList<>();
+            levels.add(entries.boxes);
+            for (int level = 1; level < levelSizes.length; level++) {
+                levels.add(union(levels.get(level - 1), (int) levelSizes[level - 1], (int) levelSizes[level]));
+            }
+            for (int level = levelSizes.length - 1; level > 0; level--) {
+                for (float value : levels.get(level)) {
+                    out.writeFloat(value);
+                }
+            }
+            for (int i = 0; i < entries.size; i++) {
+                out.writeLong(entries.offsets[i]);
+                out.writeInt(entries.lengths[i]);
+                for (int j = 4 * i; j < 4 * i + 4; j++) {
+                    out.writeFloat(entries.boxes[j]);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        Logging.info("Indexed {0} GeoJSON features in {1}", entries.size, indexFile);
+    }
+
+    /**
+     * Find the byte range and envelope of each feature. The file is decoded as ISO-8859-1, so that each byte is one
+     * character and the parser locations are byte offsets; only the structure and the numbers are needed here.
+     */
+    private static Entries scan(final Path source) throws IOException {
+        final Entries entries = new Entries();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source), 1 << 16);
+             JsonParser parser = Json.createParser(new InputStreamReader(in, StandardCharsets.ISO_8859_1))) {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                throw new IOException("Not a GeoJSON FeatureCollection: " + source);
+            }
+            boolean hasFeatures = false;
+            while (parser.next() == Event.KEY_NAME) {
+                final String key = parser.getString();
+                final Event event = parser.next();
+                if ("features".equals(key) && event == Event.START_ARRAY) {
+                    scanFeatures(parser, entries);
+                    hasFeatures = true;
+                } else {
+                    GeoJsonReader.skipValue(parser, event);
+                }
+            }
+            if (!hasFeatures) {
+                throw new IOException("Not a GeoJSON FeatureCollection: " + source);
+            }
+        }
+        return entries;
+    }
+
+    private static void scanFeatures(final JsonParser parser, final Entries entries) {
+        final double[] box = new double[4];
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (event != Event.START_OBJECT) {
+                GeoJsonReader.skipValue(parser, event);
+                continue;
+            }
+            // the location is just after the '{'
+            final long start = parser.getLocation().getStreamOffset() - 1;
+            Arrays.fill(box, Double.NaN);
+            while (parser.next() == Event.KEY_NAME) {
+                final String key = parser.getString();
+                final Event valueEvent = parser.next();
+                if ("geometry".equals(key) && valueEvent == Event.START_OBJECT) {
+                    scanGeometry(parser, box);
+                } else {
+                    GeoJsonReader.skipValue(parser, valueEvent);
+                }
+            }
+            final long end = parser.getLocation().getStreamOffset();
+            if (Double.isNaN(box[0])) {
+                // features without geometry are kept by the reader, so they match every area
+                box[0] = -90;
+                box[1] = -180;
+                box[2] = 90;
+                box[3] = 180;
+            }
+            entries.add(start, end - start, box);
+        }
+    }
+
+    private static void scanGeometry(final JsonParser parser, final double[] box) {
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            Event event = parser.next();
+            if ("coordinates".equals(key) && event == Event.START_ARRAY) {
+                scanCoordinates(parser, box);
+            } else if ("geometries".equals(key) && event == Event.START_ARRAY) {
+                while ((event = parser.next()) != Event.END_ARRAY) {
+                    if (event == Event.START_OBJECT) {
+                        scanGeometry(parser, box);
+                    } else {
+                        GeoJsonReader.skipValue(parser, event);
+                    }
+                }
+            } else {
+                GeoJsonReader.skipValue(parser, event);
+            }
+        }
+    }
+
+    /**
+     * Extend the envelope by the positions of a coordinates array of any depth. A position is an array which starts
+     * with two numbers, like in {@link CoordinateBuffer}.
+     */
+    private static void scanCoordinates(final JsonParser parser, final double[] box) {
+        final double[] position = new double[2];
+        int index = 0;
+        boolean valid = true;
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (valid && index < 2 && event == Event.VALUE_NUMBER) {
+                position[index] = parser.getBigDecimal().doubleValue();
+            } else if (valid && index >= 2) {
+                // additional dimensions of a position
+                GeoJsonReader.skipValue(parser, event);
+            } else {
+                valid = false;
+                if (event == Event.START_ARRAY) {
+                    scanCoordinates(parser, box);
+                }
+            }
+            index++;
+        }
+        if (valid && index >= 2) {
+            final double lon = position[0];
+            final double lat = position[1];
+            if (Double.isNaN(box[0])) {
+                box[0] = lat;
+                box[1] = lon;
+                box[2] = lat;
+                box[3] = lon;
+            } else {
+                box[0] = Math.min(box[0], lat);
+                box[1] = Math.min(box[1], lon);
+                box[2] = Math.max(box[2], lat);
+                box[3] = Math.max(box[3], lon);
+            }
+        }
+    }
+
+    /**
+     * Get the number of nodes on each level of a packed R-tree, from the leaves to the root.
+     */
+    private static long[] getLevelSizes(final long featureCount) {
+        final List<Long> sizes = new ArrayList<>();
+        long size = featureCount;
+        sizes.add(size);
+        while (size > 1) {
+            size = (size + NODE_SIZE - 1) / NODE_SIZE;
+            sizes.add(size);
+        }
+        return sizes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Compute the envelopes of the parent nodes of a level.
+     */
+    private static float[] union(final float[] children, final int childCount, final int parentCount) {
+        final float[] parents = new float[4 * parentCount];
+        for (int parent = 0; parent < parentCount; parent++) {
+            final int first = parent * NODE_SIZE;
+            final int last = Math.min(first + NODE_SIZE, childCount);
+            parents[4 * parent] = Float.POSITIVE_INFINITY;
+            parents[4 * parent + 1] = Float.POSITIVE_INFINITY;
+            parents[4 * parent + 2] = Float.NEGATIVE_INFINITY;
+            parents[4 * parent + 3] = Float.NEGATIVE_INFINITY;
+            for (int child = first; child < last; child++) {
+                parents[4 * parent] = Math.min(parents[4 * parent], children[4 * child]);
+                parents[4 * parent + 1] = Math.min(parents[4 * parent + 1], children[4 * child + 1]);
+                parents[4 * parent + 2] = Math.max(parents[4 * parent + 2], children[4 * child + 2]);
+                parents[4 * parent + 3] = Math.max(parents[4 * parent + 3], children[4 * child + 3]);
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * @return the number of indexed features
+     */
+    long getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Find the features whose envelope intersects an area.
+     *
+     * @param area the area, which may cross the 180th meridian
+     * @return the byte ranges of the features in the GeoJSON file, as offset and length, in file order
+     * @throws IOException if the index cannot be read
+     */
+    List<long[]> query(final Bounds area) throws IOException {
+        final List<long[]> result = new ArrayList<>();
+        final int root = levelSizes.length - 1;
+        if (root == 0) {
+            query(area, 0, 0, featureCount, result);
+        } else if (intersects(read(index, levelPositions[root], BOX_SIZE), area)) {
+            query(area, root - 1, 0, levelSizes[root - 1], result);
+        }
+        result.sort(Comparator.comparingLong(range -> range[0]));
+        return result;
+    }
+
+    /**
+     * Search the nodes {@code first} to {@code last} (exclusive) of a level, which have the same parent.
+     */
+    private void query(final Bounds area, final int level, final long first, final long last, final List<long[]> result)
+            throws IOException {
+        if (first == last) {
+            return;
+        }
+        if (level == 0) {
+            final ByteBuffer entries = read(index, levelPositions[0] + first * ENTRY_SIZE, (int) (last - first) * ENTRY_SIZE);
+            while (entries.hasRemaining()) {
+                final long offset = entries.getLong();
+                final int length = entries.getInt();
+                if (intersects(entries, area)) {
+                    result.add(new long[] {offset, length});
+                }
+            }
+            return;
+        }
+        final ByteBuffer boxes = read(index, levelPositions[level] + first * BOX_SIZE, (int) (last - first) * BOX_SIZE);
+        for (long node = first; node < last; node++) {
+            if (intersects(boxes, area)) {
+                final long firstChild = node * NODE_SIZE;
+                query(area, level - 1, firstChild, Math.min(firstChild + NODE_SIZE, levelSizes[level - 1]), result);
+            }
+        }
+    }
+
+    private static boolean intersects(final ByteBuffer box, final Bounds area) {
+        final float minLat = box.getFloat();
+        final float minLon = box.getFloat();
+        final float maxLat = box.getFloat();
+        final float maxLon = box.getFloat();
+        if (maxLat < area.getMinLat() || minLat > area.getMaxLat()) {
+            return false;
+        }
+        if (area.crosses180thMeridian()) {
+            return maxLon >= area.getMinLon() || minLon <= area.getMaxLon();
+        }
+        return maxLon >= area.getMinLon() && minLon <= area.getMaxLon();
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long position, final int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of GeoJSON index");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Open the features intersecting an area as a GeoJSON FeatureCollection.
+     *
+     * @param area the area
+     * @return the stream with the FeatureCollection, which must be closed
+     * @throws IOException if the index or the GeoJSON file cannot be read
+     */
+    InputStream openFeatures(final Bounds area) throws IOException {
+        final List<long[]> features = query(area);
+        Logging.info("GeoJSON index: {0} of {1} features in {2}", features.size(), featureCount, area);
+        return new FeatureInputStream(FileChannel.open(source, StandardOpenOption.READ), features);
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    /**
+     * The features found while scanning, with their envelopes as floats rounded outwards.
+     */
+    private static final class Entries {
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        float[] boxes = new float[4 * 1024];
+        int size;
+
+        void add(final long offset, final long length, final double[] box) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * size);
+                lengths = Arrays.copyOf(lengths, 2 * size);
+                boxes = Arrays.copyOf(boxes, 8 * size);
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("GeoJSON feature too large to be indexed: " + length + " bytes");
+            }
+            offsets[size] = offset;
+            lengths[size] = (int) length;
+            boxes[4 * size] = floor(box[0]);
+            boxes[4 * size + 1] = floor(box[1]);
+            boxes[4 * size + 2] = ceil(box[2]);
+            boxes[4 * size + 3] = ceil(box[3]);
+            size++;
+        }
+
+        /**
+         * Sort the features along a Hilbert curve through the centers of their envelopes, so that the features of a
+         * node are close to each other.
+         */
+        void sort() {
+            final long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                final double lat = (boxes[4 * i] + boxes[4 * i + 2]) / 2.0;
+                final double lon = (boxes[4 * i + 1] + boxes[4 * i + 3]) / 2.0;
+                final long hilbert = hilbert(scale(lon, -180, 180), scale(lat, -90, 90));
+                // sort by the Hilbert value, then by the original index
+                keys[i] = hilbert << 32 | i;
+            }
+            Arrays.sort(keys);
+            final long[] sortedOffsets = new long[size];
+            final int[] sortedLengths = new int[size];
+            final float[] sortedBoxes = new float[4 * size];
+            for (int i = 0; i < size; i++) {
+                final int from = (int) (keys[i] & 0xFFFF_FFFFL);
+                sortedOffsets[i] = offsets[from];
+                sortedLengths[i] = lengths[from];
+                System.arraycopy(boxes, 4 * from, sortedBoxes, 4 * i, 4);
+            }
+            offsets = sortedOffsets;
+            lengths = sortedLengths;
+            boxes = sortedBoxes;
+        }
+
+        private static int scale(final double value, final double min, final double max) {
+            final double clamped = Math.max(min, Math.min(max, value));
+            return (int) ((clamped - min) / (max - min) * 0x7FFF);
+        }
+
+        /**
+         * Get the distance of a point along a Hilbert curve filling a 2^15 by 2^15 grid.
+         */
+        private static long hilbert(int x, int y) {
+            long d = 0;
+            for (int s = 1 << 14; s > 0; s >>= 1) {
+                final int rx = (x & s) > 0 ? 1 : 0;
+                final int ry = (y & s) > 0 ? 1 : 0;
+                d += (long) s * s * ((3 * rx) ^ ry);
+                if (ry == 0) {
+                    if (rx == 1) {
+                        x = s - 1 - x;
+                        y = s - 1 - y;
+                    }
+                    final int t = x;
+                    x = y;
+                    y = t;
+                }
+            }
+            return d;
+        }
+
+        private static float floor(final double value) {
+            final float f = (float) value;
+            return f > value ? Math.nextDown(f) : f;
+        }
+
+        private static float ceil(final double value) {
+            final float f = (float) value;
+            return f < value ? Math.nextUp(f) : f;
+        }
+    }
+
+    /**
+     * Reads a FeatureCollection made of byte ranges of the GeoJSON file, which are read from memory-mapped windows of
+     * {@link #WINDOW_SIZE} bytes (or more, for larger features).
+     */
+    private static final class FeatureInputStream extends InputStream {
+        private static final byte[] PREFIX = "{\"type\":\"FeatureCollection\",\"features\":[".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] SEPARATOR = {','};
+        private static final byte[] SUFFIX = {']', '}'};
+
+        private final FileChannel channel;
+        private final List<long[]> features;
+        private int next;
+        private boolean separatorWritten;
+        private boolean suffixWritten;
+        private ByteBuffer part = ByteBuffer.wrap(PREFIX);
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        FeatureInputStream(final FileChannel channel, final List<long[]> features) {
+            this.channel = channel;
+            this.features = features;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return nextPart() ? part.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextPart()) {
+                return -1;
+            }
+            final int n = Math.min(len, part.remaining());
+            part.get(b, off, n);
+            return n;
+        }
+
+        /**
+         * Make sure that {@link #part} has remaining bytes.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean nextPart() throws IOException {
+            while (!part.hasRemaining()) {
+                if (next < features.size()) {
+                    if (next > 0 && !separatorWritten) {
+                        part = ByteBuffer.wrap(SEPARATOR);
+                        separatorWritten = true;
+                    } else {
+                        part = map(features.get(next++));
+                        separatorWritten = false;
+                    }
+                } else if (!suffixWritten) {
+                    part = ByteBuffer.wrap(SUFFIX);
+                    suffixWritten = true;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private ByteBuffer map(final long[] feature) throws IOException {
+            final long offset = feature[0];
+            final int length = (int) feature[1];
+            if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(channel.size() - offset, Math.max(WINDOW_SIZE, length)));
+            }
+            final ByteBuffer slice = window.duplicate();
+            slice.position((int) (offset - windowStart));
+            slice.limit((int) (offset - windowStart) + length);
+            return slice;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,528 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Cache of parsed GeoJSON files and URLs, so that an unchanged file is reopened without parsing it again.
+ * <p>
+ * Each entry is the dataset of one file in a compact binary form: the strings of all tags in a table, the tags as
+ * indices into the table, the coordinates as delta-encoded fixed-point numbers (with an escape for coordinates which
+ * have more than 7 decimals), and the nodes of ways and members of relations as indices.
+ * <p>
+ * An entry stores its path or URL, the reader settings which change the result, and a validator, and is only used if all
+ * of them match. The validator of a file is its size, modification time and CRC-32, so storing and loading an entry
+ * reads the file once to compute the CRC-32, which is much faster than parsing it. The validator of a URL is given by
+ * the caller, like the ETag of the HTTP response.
+ * <p>
+ * The total size of the entries is limited; the least recently used entries are removed first.
+ */
+final class GeoJsonParseCache {
+
+    /** Suffix of the entry files */
+    static final String SUFFIX = ".gjcache";
+
+    private static final int MAGIC = 0x474A5043; // GJPC
+    /** Version of the format, which must also be increased when the reader creates other primitives for a file */
+    private static final int VERSION = 4;
+    private static final double PRECISION = 1e7;
+    private static final int NODE = 0;
+    private static final int WAY = 1;
+    private static final int RELATION = 2;
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param directory the directory of the entries, which is created when the first entry is stored
+     * @param maxSize   the maximal total size of the entries in bytes
+     */
+    GeoJsonParseCache(final Path directory, final long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Load the dataset of a file.
+     *
+     * @param file    the GeoJSON file
+     * @param variant the settings of the reader which change the result, see {@link #getVariant}
+     * @return the dataset, or null if there is no entry for the file or it does not match the file
+     */
+    DataSet load(final Path file, final String variant) {
+        return load(file.toAbsolutePath().toString(), variant, validator -> {
+            // only compute the checksum if size and modification time match
+            final String prefix = getFileValidatorPrefix(file);
+            return validator.startsWith(prefix) && validator.equals(prefix + checksum(file));
+        });
+    }
+
+    /**
+     * Load the dataset of a URL.
+     *
+     * @param url       the URL
+     * @param validator the validator of the resource, see {@link #getValidator(String, String)}
+     * @param variant   the settings of the reader which change the result, see {@link #getVariant}
+     * @return the dataset, or null if there is no entry for the URL with this validator
+     */
+    DataSet load(final String url, final String validator, final String variant) {
+        return load(url, variant, validator::equals);
+    }
+
+    /**
+     * Get the validator of the entry of a URL, as stored by {@link #store(String, String, String, DataSet)}.
+     *
+     * @param url     the URL
+     * @param variant the settings of the reader which change the result, see {@link #getVariant}
+     * @return the validator, or null if there is no entry for the URL
+     */
+    String getValidator(final String url, final String variant) {
+        final Path entry = getEntry(url);
+        if (Files.isRegularFile(entry)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+                return readHeader(in, url, variant);
+            } catch (IOException e) {
+                Logging.debug(e);
+            }
+        }
+        return null;
+    }
+
+    private DataSet load(final String source, final String variant, final Validator validator) {
+        final Path entry = getEntry(source);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry), 1 << 16))) {
+            final String stored = readHeader(in, source, variant);
+            if (stored == null || !validator.matches(stored)) {
+                Logging.info("GeoJSON cache entry {0} is stale", entry);
+                return null;
+            }
+            final DataSet dataSet = read(in);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return dataSet;
+        } catch (IOException | RuntimeException e) {
+            Logging.warn("Cannot read GeoJSON cache entry {0}: {1}", entry, e.getMessage());
+            Logging.debug(e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the validator of the entry, or null if the entry is for another source, variant or format version
+     */
+    private static String readHeader(final DataInputStream in, final String source, final String variant)
+            throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(source) || !in.readUTF().equals(variant)) {
+            return null;
+        }
+        return in.readUTF();
+    }
+
+    /**
+     * Store the dataset of a file, and remove the least recently used entries if the cache gets too large.
+     *
+     * @param file         the GeoJSON file
+     * @param size         the size of the file when it was read
+     * @param lastModified the modification time of the file when it was read
+     * @param variant      the settings of the reader which change the result, see {@link #getVariant}
+     * @param dataSet      the dataset read from the file
+     */
+    void store(final Path file, final long size, final long lastModified, final String variant,
+            final DataSet dataSet) {
+        try {
+            final String prefix = getFileValidatorPrefix(file);
+            if (!prefix.equals(size + "/" + lastModified + "/")) {
+                return;
+            }
+            store(file.toAbsolutePath().toString(), prefix + checksum(file), variant, dataSet);
+        } catch (IOException e) {
+            Logging.warn("Cannot write GeoJSON cache entry for {0}: {1}", file, e.getMessage());
+            Logging.debug(e);
+        }
+    }
+
+    /**
+     * Store the dataset of a URL, and remove the least recently used entries if the cache gets too large.
+     *
+     * @param url       the URL
+     * @param validator the validator of the resource, like its ETag
+     * @param variant   the settings of the reader which change the result, see {@link #getVariant}
+     * @param dataSet   the dataset read from the URL
+     */
+    void store(final String url, final String validator, final String variant, final DataSet dataSet) {
+        final Path entry = getEntry(url);
+        final Path temporary = entry.resolveSibling(entry.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(url);
+                out.writeUTF(variant);
+                out.writeUTF(validator);
+                write(out, dataSet);
+            }
+            if (Files.size(temporary) > maxSize) {
+                Files.delete(temporary);
+                return;
+            }
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            evict();
+        } catch (IOException | RuntimeException e) {
+            Logging.warn("Cannot write GeoJSON cache entry {0}: {1}", entry, e.getMessage());
+            Logging.debug(e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException e1) {
+                Logging.debug(e1);
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the entries fit into the maximal size. Synchronized, since the
+     * files of a multi-file import are stored concurrently.
+     */
+    private synchronized void evict() throws IOException {
+        final List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            files.forEach(entries::add);
+        }
+        final Map<Path, FileTime> lastUsed = new HashMap<>();
+        long total = 0;
+        for (Path entry : entries) {
+            lastUsed.put(entry, Files.getLastModifiedTime(entry));
+            total += Files.size(entry);
+        }
+        entries.sort(Comparator.comparing(lastUsed::get));
+        for (int i = 0; i < entries.size() && total > maxSize; i++) {
+            total -= Files.size(entries.get(i));
+            Files.delete(entries.get(i));
+            Logging.info("Removed GeoJSON cache entry {0}", entries.get(i));
+        }
+    }
+
+    /**
+     * Get the entry file of a GeoJSON file.
+     */
+    Path getEntry(final Path file) {
+        return getEntry(file.toAbsolutePath().toString());
+    }
+
+    /**
+     * Get the entry file of a path or URL, named after its hash.
+     */
+    private Path getEntry(final String source) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b & 0xFF));
+            }
+            return directory.resolve(name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the variant of the entries read with some reader settings. Entries are only used for the same variant.
+     *
+     * @param options   the reader options
+     * @param tolerance the simplification tolerance of the reader
+     * @param filter    the feature filter of the reader, or null
+     * @return the variant
+     */
+    static String getVariant(final GeoJsonReader.Options[] options, final double tolerance, final FeatureFilter filter) {
+        final List<GeoJsonReader.Options> optionList = Arrays.asList(options);
+        final boolean deduplicate = optionList.contains(GeoJsonReader.Options.DEDUPLICATE_NODES);
+        final boolean multipolygonRelations = optionList.contains(GeoJsonReader.Options.MULTIPOLYGON_RELATIONS);
+        return (deduplicate ? "deduplicate-nodes" : "") + (multipolygonRelations ? " multipolygon-relations" : "")
+            + (tolerance > 0 ? " simplify=" + tolerance : "") + (filter != null ? " filter=" + filter : "");
+    }
+
+    private static String getFileValidatorPrefix(final Path file) throws IOException {
+        return Files.size(file) + "/" + Files.getLastModifiedTime(file).toMillis() + "/";
+    }
+
+    private static long checksum(final Path file) throws IOException {
+        final Checksum checksum = new CRC32();
+        final byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                checksum.update(buffer, 0, n);
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Check if a stored validator is still valid.
+     */
+    @FunctionalInterface
+    private interface Validator {
+        boolean matches(String validator) throws IOException;
+    }
+
+    private static void write(final DataOutputStream out, final DataSet dataSet) throws IOException {
+        final List<Node> nodes = new ArrayList<>(dataSet.getNodes());
+        final List<Way> ways = new ArrayList<>(dataSet.getWays());
+        final List<Relation> relations = new ArrayList<>(dataSet.getRelations());
+        final List<LongObjectMap<Integer>> indices = Arrays.asList(indices(nodes), indices(ways), indices(relations));
+
+        final Map<String, Integer> strings = new HashMap<>();
+        final List<String> table = new ArrayList<>();
+        for (List<? extends OsmPrimitive> primitives : Arrays.asList(nodes, ways, relations)) {
+            for (OsmPrimitive primitive : primitives) {
+                primitive.visitKeys((key, value) -> {
+                    addString(strings, table, key);
+                    addString(strings, table, value);
+                });
+            }
+        }
+        relations.forEach(relation -> relation.getMembers().forEach(member -> addString(strings, table, member.getRole())));
+        writeVarLong(out, table.size());
+        for (String string : table) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarLong(out, nodes.size());
+        long lat = 0;
+        long lon = 0;
+        for (Node node : nodes) {
+            lat = writeCoordinate(out, node.lat(), lat);
+            lon = writeCoordinate(out, node.lon(), lon);
+            writeTags(out, node, strings);
+        }
+
+        writeVarLong(out, ways.size());
+        for (Way way : ways) {
+            writeTags(out, way, strings);
+            writeVarLong(out, way.getNodesCount());
+            // consecutive nodes of a way mostly have consecutive indices, so the differences are small
+            long previous = 0;
+            for (int i = 0; i < way.getNodesCount(); i++) {
+                final long index = indices.get(NODE).get(way.getNode(i).getUniqueId());
+                writeVarLong(out, zigZag(index - previous));
+                previous = index;
+            }
+        }
+
+        writeVarLong(out, relations.size());
+        for (Relation relation : relations) {
+            writeTags(out, relation, strings);
+            writeVarLong(out, relation.getMembersCount());
+            for (RelationMember member : relation.getMembers()) {
+                final int type = member.getMember() instanceof Node ? NODE : member.getMember() instanceof Way ? WAY : RELATION;
+                out.writeByte(type);
+                writeVarLong(out, indices.get(type).get(member.getMember().getUniqueId()));
+                writeVarLong(out, strings.get(member.getRole()));
+            }
+        }
+    }
+
+    private static DataSet read(final DataInputStream in) throws IOException {
+        final String[] table = new String[readSize(in)];
+        for (int i = 0; i < table.length; i++) {
+            final byte[] bytes = new byte[readSize(in)];
+            in.readFully(bytes);
+            table[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        final Node[] nodes = new Node[readSize(in)];
+        final long[] coordinate = new long[2];
+        for (int i = 0; i < nodes.length; i++) {
+            final double lat = readCoordinate(in, coordinate, 0);
+            final double lon = readCoordinate(in, coordinate, 1);
+            nodes[i] = new Node(new LatLon(lat, lon));
+            readTags(in, nodes[i], table);
+        }
+
+        final Way[] ways = new Way[readSize(in)];
+        for (int i = 0; i < ways.length; i++) {
+            ways[i] = new Way();
+            readTags(in, ways[i], table);
+            final int count = readSize(in);
+            final List<Node> wayNodes = new ArrayList<>(count);
+            long index = 0;
+            for (int j = 0; j < count; j++) {
+                index += unZigZag(readVarLong(in));
+                wayNodes.add(nodes[Math.toIntExact(index)]);
+            }
+            ways[i].setNodes(wayNodes);
+        }
+
+        final Relation[] relations = new Relation[readSize(in)];
+        // type, index and role of the members; members which are relations may come later, so they are resolved last
+        final int[][] members = new int[relations.length][];
+        for (int i = 0; i < relations.length; i++) {
+            relations[i] = new Relation();
+            readTags(in, relations[i], table);
+            members[i] = new int[3 * readSize(in)];
+            for (int j = 0; j < members[i].length; j += 3) {
+                members[i][j] = in.readByte();
+                members[i][j + 1] = readSize(in);
+                members[i][j + 2] = readSize(in);
+            }
+        }
+
+        final DataSet dataSet = new DataSet();
+        dataSet.beginUpdate();
+        try {
+            for (Node node : nodes) {
+                dataSet.addPrimitive(node);
+            }
+            for (Way way : ways) {
+                dataSet.addPrimitive(way);
+            }
+            for (Relation relation : relations) {
+                dataSet.addPrimitive(relation);
+            }
+            for (int i = 0; i < relations.length; i++) {
+                final List<RelationMember> relationMembers = new ArrayList<>(members[i].length / 3);
+                for (int j = 0; j < members[i].length; j += 3) {
+                    final int index = members[i][j + 1];
+                    final OsmPrimitive member = members[i][j] == NODE ? nodes[index] : members[i][j] == WAY ? ways[index]
+                        : relations[index];
+                    relationMembers.add(new RelationMember(table[members[i][j + 2]], member));
+                }
+                relations[i].setMembers(relationMembers);
+            }
+        } finally {
+            dataSet.endUpdate();
+        }
+        return dataSet;
+    }
+
+    private static <T extends OsmPrimitive> LongObjectMap<Integer> indices(final List<T> primitives) {
+        final LongObjectMap<Integer> indices = new LongObjectMap<>();
+        for (int i = 0; i < primitives.size(); i++) {
+            indices.put(primitives.get(i).getUniqueId(), i);
+        }
+        return indices;
+    }
+
+    private static void addString(final Map<String, Integer> strings, final List<String> table, final String string) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, table.size());
+            table.add(string);
+        }
+    }
+
+    private static void writeTags(final DataOutputStream out, final OsmPrimitive primitive, final Map<String, Integer> strings)
+            throws IOException {
+        writeVarLong(out, primitive.getNumKeys());
+        for (Map.Entry<String, String> tag : primitive.getKeys().entrySet()) {
+            writeVarLong(out, strings.get(tag.getKey()));
+            writeVarLong(out, strings.get(tag.getValue()));
+        }
+    }
+
+    private static void readTags(final DataInputStream in, final OsmPrimitive primitive, final String[] table) throws IOException {
+        final int count = readSize(in);
+        if (count > 0) {
+            final Map<String, String> tags = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                tags.put(table[readSize(in)], table[readSize(in)]);
+            }
+            primitive.setKeys(tags);
+        }
+    }
+
+    /**
+     * Write a coordinate as difference to the previous fixed-point coordinate, or as raw double if it cannot be
+     * represented exactly with 7 decimals. The lowest bit tells both apart.
+     *
+     * @return the new previous fixed-point coordinate
+     */
+    private static long writeCoordinate(final DataOutputStream out, final double value, final long previous) throws IOException {
+        final long fixed = Math.round(value * PRECISION);
+        if (fixed / PRECISION == value) {
+            writeVarLong(out, zigZag(fixed - previous) << 1);
+            return fixed;
+        }
+        writeVarLong(out, 1);
+        out.writeLong(Double.doubleToRawLongBits(value));
+        return previous;
+    }
+
+    private static double readCoordinate(final DataInputStream in, final long[] previous, final int axis) throws IOException {
+        final long value = readVarLong(in);
+        if ((value & 1) != 0) {
+            return Double.longBitsToDouble(in.readLong());
+        }
+        previous[axis] += unZigZag(value >>> 1);
+        return previous[axis] / PRECISION;
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long rest = value;
+        while ((rest & ~0x7FL) != 0) {
+            out.writeByte((int) (rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.writeByte((int) rest);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Invalid variable-length number");
+    }
+
+    private static int readSize(final DataInputStream in) throws IOException {
+        return Math.toIntExact(readVarLong(in));
+    }
+}
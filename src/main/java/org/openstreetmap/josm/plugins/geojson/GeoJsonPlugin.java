@@ -1,6 +1,8 @@
 // License: Apache 2.0. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.geojson;
 
+import java.io.File;
+
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.plugins.Plugin;
@@ -13,13 +15,30 @@ import org.openstreetmap.josm.plugins.PluginInformation;
  * @author matthieun &lt;https://github.com/matthieun&gt;
  */
 public class GeoJsonPlugin extends Plugin {
+    private static File cacheDirectory;
+
     private final GeoJsonFileImporter geoJsonFileImporter;
+    private final GeoJsonFileExporter geoJsonFileExporter;
 
     public GeoJsonPlugin(final PluginInformation info) {
         super(info);
-        this.geoJsonFileImporter = new GeoJsonFileImporter();
+        setCacheDirectory(getPluginDirs().getCacheDirectory(false));
+        this.geoJsonFileImporter = new GeoJsonFileImporter(cacheDirectory);
         ExtensionFileFilter.addImporter(this.geoJsonFileImporter);
         ExtensionFileFilter.updateAllFormatsImporter();
+        this.geoJsonFileExporter = new GeoJsonFileExporter();
+        ExtensionFileFilter.addExporter(this.geoJsonFileExporter);
         MainApplication.getMenu().openLocation.addDownloadTaskClass(GeoJsonDownloadTask.class);
     }
+
+    private static void setCacheDirectory(final File directory) {
+        cacheDirectory = directory;
+    }
+
+    /**
+     * @return the cache directory of the plugin, or null if the plugin is not loaded
+     */
+    static File getCacheDirectory() {
+        return cacheDirectory;
+    }
 }
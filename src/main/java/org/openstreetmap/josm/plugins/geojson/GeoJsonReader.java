@@ -1,6 +1,7 @@
 // License: Apache 2.0. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.geojson;
 
+import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
@@ -13,21 +14,35 @@ import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.io.AbstractReader;
 import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonStructure;
 import javax.json.JsonValue;
 import javax.json.stream.JsonParser;
 import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
@@ -36,15 +51,254 @@ import static org.openstreetmap.josm.tools.I18n.tr;
  */
 public class GeoJsonReader extends AbstractReader {
 
+    /**
+     * Options for the conversion of GeoJSON to OSM primitives.
+     */
+    public enum Options {
+        /**
+         * Use one node for all way vertices at the same position, so that adjacent geometries share their common
+         * vertices. Point features always get their own node.
+         */
+        DEDUPLICATE_NODES,
+        /**
+         * Convert the features of a FeatureCollection on several threads. The result is the same as without this
+         * option.
+         */
+        PARALLEL,
+        /**
+         * Share equal tag keys and values between the primitives, see {@link TagDictionary}.
+         */
+        INTERN_TAGS,
+        /**
+         * Read a sequence of GeoJSON texts, newline-delimited (GeoJSONL, ndjson) or as RFC 8142 GeoJSON text
+         * sequence, see {@link JsonSequenceInputStream}. Each record is parsed on its own, malformed records are
+         * skipped, and the primitives are added to the dataset in batches while the input is read. The records are
+         * converted on the calling thread, {@link #PARALLEL} is ignored.
+         */
+        SEQUENCE,
+        /**
+         * Tokenize UTF-8 input with {@link Utf8JsonParser}, which reads the bytes directly, instead of the javax.json
+         * parser. The result is the same as without this option.
+         */
+        UTF8_PARSER,
+        /**
+         * Convert each MultiPolygon to one multipolygon relation, with the outer and inner ways of all its polygons
+         * as members, so the tags of the feature are only on the relation. Without this option, each polygon of a
+         * MultiPolygon becomes a closed way or, if it has holes, a multipolygon relation of its own, and all of them
+         * get the tags. A MultiPolygon of a single polygon without holes still becomes a closed way.
+         */
+        MULTIPOLYGON_RELATIONS
+    }
+
+    /** Number of ticks of the progress monitor when the input size is known */
+    private static final int PROGRESS_TICKS = 1000;
+    /** Number of features converted by one task with {@link Options#PARALLEL} */
+    private static final int PARALLEL_CHUNK_SIZE = 256;
+    /** Number of records added to the dataset at once with {@link Options#SEQUENCE} */
+    private static final int SEQUENCE_BATCH_SIZE = 1000;
+
     private static final String COORDINATES = "coordinates";
     private static final String FEATURES = "features";
     private static final String PROPERTIES = "properties";
     private static final String GEOMETRY = "geometry";
+    private static final String GEOMETRIES = "geometries";
     private static final String TYPE = "type";
+    private static final String GEOMETRY_COLLECTION = "GeometryCollection";
+    private static final JsonBuilderFactory BUILDER_FACTORY = Json.createBuilderFactory(null);
+    private static final JsonParserFactory PARSER_FACTORY = Json.createParserFactory(null);
+    private final JsonParserFactory parserFactory;
     private JsonParser parser;
+    /** Positions of the geometry being converted, reused for all geometries */
+    private final CoordinateBuffer coordinates = new CoordinateBuffer();
+    /** Primitives created for the geometry of the current feature, which get the tags of the feature */
+    private final List<OsmPrimitive> featurePrimitives = new ArrayList<>();
+    /** Nodes of way vertices by their rounded position, only set for {@link Options#DEDUPLICATE_NODES} */
+    private final LongObjectMap<Node> sharedNodes;
+    private long reusedNodes;
+    private final boolean parallel;
+    private final boolean sequence;
+    /** If each MultiPolygon becomes one relation, see {@link Options#MULTIPOLYGON_RELATIONS} */
+    private boolean multipolygonRelations;
+    /** Shared tag strings, only set for {@link Options#INTERN_TAGS} */
+    private TagDictionary tagDictionary;
+    /** If set, only geometries whose envelope intersects this area are converted */
+    private Bounds area;
+    private ProgressMonitor progressMonitor = NullProgressMonitor.INSTANCE;
+    /** If the import was canceled from another thread, see {@link #cancel()} */
+    private volatile boolean canceled;
+    private LongSupplier bytesRead;
+    private long inputSize;
+    /** If set, only the features accepted by it are converted, and only the properties kept by it become tags */
+    private FeatureFilter filter;
+    /** The state of the {@link #filter} for the feature read from the parser events */
+    private FeatureFilter.Match filterMatch;
+    /**
+     * The geometry of the current feature, which was read before its properties decided the {@link #filter}: the type
+     * of a geometry in the {@link #coordinates} buffer, or a geometry to convert from its tree
+     */
+    private String deferredType;
+    private JsonObject deferredGeometry;
+    /** Number of features rejected by the {@link #filter} */
+    private long filteredFeatures;
+    /** If set, the fingerprints and primitives of the features are recorded here, see {@link #setFingerprints} */
+    private FeatureFingerprints fingerprints;
+    /** If set, lines and rings are simplified before their nodes are created */
+    private LineSimplifier simplifier;
+    /** If set, the created primitives are collected here instead of being added to the dataset */
+    private List<OsmPrimitive> primitiveBuffer;
+    /** Number of primitives added to the dataset at once, 0 to add them as they are created */
+    private int batchSize;
+    /** Primitives of complete features waiting to be added to the dataset, only set with a {@link #batchSize} */
+    private List<OsmPrimitive> batch;
+    private final List<GeoJsonImportListener> listeners = new ArrayList<>();
+    /** Metrics of the current import, only set if they are collected */
+    private GeoJsonImportMetrics metrics;
+    /** Issues found by the current import */
+    private GeoJsonDiagnostics diagnostics = new GeoJsonDiagnostics();
+    /** Index of the current feature in the input, -1 before the first feature */
+    private long featureIndex = -1;
+    /** Time of this reader in {@link GeoJsonImportMetrics.Phase#BUILD}, only measured with {@link #metrics} */
+    private long buildNanos;
+    /** Time of this reader in {@link GeoJsonImportMetrics.Phase#INSERT}, only measured with {@link #metrics} */
+    private long insertNanos;
 
-    GeoJsonReader() {
+    GeoJsonReader(final Options... options) {
         // Restricts visibility
+        final List<Options> optionList = Arrays.asList(options);
+        this.sharedNodes = optionList.contains(Options.DEDUPLICATE_NODES) ? new LongObjectMap<>() : null;
+        this.parallel = optionList.contains(Options.PARALLEL);
+        this.sequence = optionList.contains(Options.SEQUENCE);
+        this.tagDictionary = optionList.contains(Options.INTERN_TAGS) ? new TagDictionary() : null;
+        this.multipolygonRelations = optionList.contains(Options.MULTIPOLYGON_RELATIONS);
+        this.parserFactory = optionList.contains(Options.UTF8_PARSER) ? Utf8JsonParser.FACTORY : PARSER_FACTORY;
+    }
+
+    /**
+     * Create a reader for a {@link ConversionTask}, which converts features like this reader.
+     */
+    private GeoJsonReader createWorker() {
+        final GeoJsonReader worker = new GeoJsonReader();
+        worker.tagDictionary = tagDictionary;
+        worker.multipolygonRelations = multipolygonRelations;
+        worker.area = area;
+        worker.setFilter(filter);
+        worker.fingerprints = fingerprints;
+        worker.simplifier = simplifier;
+        worker.metrics = metrics;
+        worker.diagnostics = diagnostics;
+        worker.primitiveBuffer = new ArrayList<>();
+        return worker;
+    }
+
+    /**
+     * Get the dictionary used for the tags.
+     *
+     * @return the dictionary, or null without {@link Options#INTERN_TAGS}
+     */
+    TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * Get the number of nodes that were not created because an existing node at the same position was reused.
+     *
+     * @return the number of reused nodes, always 0 without {@link Options#DEDUPLICATE_NODES}
+     */
+    public long getReusedNodeCount() {
+        return reusedNodes;
+    }
+
+    /**
+     * Get the issues found by the last import.
+     *
+     * @return the issues
+     */
+    public GeoJsonDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Simplify lines and rings with a tolerance, see {@link LineSimplifier}. With {@link Options#DEDUPLICATE_NODES},
+     * the features are converted on the calling thread, {@link Options#PARALLEL} is ignored, so that shared borders are
+     * simplified consistently.
+     *
+     * @param tolerance the maximal distance in metres of a removed vertex from the simplified line, 0 to keep all
+     */
+    void setSimplification(final double tolerance) {
+        this.simplifier = tolerance > 0 ? new LineSimplifier(tolerance, sharedNodes != null) : null;
+    }
+
+    /**
+     * Get the number of vertices removed by the simplification.
+     *
+     * @return the number of removed vertices, 0 without simplification
+     */
+    public long getRemovedVertexCount() {
+        return simplifier == null ? 0 : simplifier.getRemovedVertexCount();
+    }
+
+    /**
+     * Convert only the features accepted by a filter, with only the properties kept by it. The filter is applied
+     * while the features are read: the parser skips rejected features and dropped properties, and a geometry is only
+     * converted once the filter accepts its feature.
+     *
+     * @param filter the filter, or null to convert all features with all properties
+     */
+    void setFilter(final FeatureFilter filter) {
+        this.filter = filter;
+        this.filterMatch = filter == null ? null : filter.new Match();
+    }
+
+    /**
+     * Get the number of features rejected by the filter in the last import.
+     *
+     * @return the number of rejected features, 0 without filter
+     */
+    public long getFilteredFeatureCount() {
+        return filteredFeatures;
+    }
+
+    /**
+     * Record the fingerprint of each feature and the primitives created for it, and skip the features which did not
+     * change since the import of the previous table of the fingerprints. The dataset then only has the primitives of
+     * the new and changed features, see {@link FeatureFingerprints#update}. The features are read as tree, and
+     * {@link Options#PARALLEL} is ignored. The vertices of new ways are not shared with the primitives of unchanged
+     * features, even with {@link Options#DEDUPLICATE_NODES}.
+     *
+     * @param fingerprints the table for this import, or null to convert all features
+     */
+    void setFingerprints(final FeatureFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Get the fingerprints of the last import.
+     *
+     * @return the table, or null without fingerprints or if the input was not made of features, e.g. a topology
+     */
+    FeatureFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Attach a listener for the metrics of the imports of this reader.
+     *
+     * @param listener the listener
+     */
+    void addImportListener(final GeoJsonImportListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Add the primitives to the dataset in batches, each in one {@link DataSet#beginUpdate() update}, so that the
+     * dataset can be shown in a layer while it is read, and the layer is only updated once per batch. A batch is
+     * added after the feature with which it reaches the batch size, so it may be somewhat larger.
+     *
+     * @param batchSize the number of primitives of a batch, 0 to add the primitives as they are created
+     */
+    void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+        this.batch = batchSize > 0 ? new ArrayList<>() : null;
     }
 
     private void setParser(final JsonParser parser) {
@@ -55,12 +309,605 @@ public class GeoJsonReader extends AbstractReader {
         while (parser.hasNext()) {
             Event event = parser.next();
             if (event == Event.START_OBJECT) {
-                parseRoot(parser.getObject());
+                parseRoot();
             }
         }
         parser.close();
     }
 
+    /**
+     * Parse the root object from the parser events. The {@code features} array of a FeatureCollection is streamed,
+     * so only one feature at a time is held in memory. A Feature, like a record of a GeoJSON sequence, is streamed
+     * with {@link #parseFeature()} if its {@code type} comes before its geometry and properties. Other root members
+     * are collected and, if the root turns out not to be a FeatureCollection, handed to the tree-based
+     * {@link #parseRoot(JsonObject)}. The {@code arcs} of a TopoJSON topology are streamed into a
+     * {@link TopoJsonReader}, which converts the topology at the end.
+     */
+    private void parseRoot() {
+        final JsonObjectBuilder root = BUILDER_FACTORY.createObjectBuilder();
+        String type = null;
+        boolean streamed = false;
+        boolean featureMembers = false;
+        TopoJsonReader topology = null;
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            final Event event = parser.next();
+            if (FEATURES.equals(key) && event == Event.START_ARRAY && (type == null || "FeatureCollection".equals(type))) {
+                parseFeatures();
+                streamed = true;
+            } else if (TopoJsonReader.ARCS.equals(key) && event == Event.START_ARRAY && TopoJsonReader.TOPOLOGY.equals(type)) {
+                topology = new TopoJsonReader(this);
+                topology.readArcs(parser);
+            } else {
+                final JsonValue value = parser.getValue();
+                root.add(key, value);
+                if (TYPE.equals(key) && value instanceof JsonString) {
+                    type = ((JsonString) value).getString();
+                    if ("Feature".equals(type) && !featureMembers && fingerprints == null) {
+                        parseFeature(root);
+                        return;
+                    }
+                }
+                featureMembers |= GEOMETRY.equals(key) || PROPERTIES.equals(key);
+            }
+        }
+        if (topology != null) {
+            topology.read(root.build());
+        } else if (!streamed) {
+            parseRoot(root.build());
+        }
+    }
+
+    private void parseFeatures() {
+        if (parallel && fingerprints == null && (simplifier == null || !simplifier.isSharedVertices())) {
+            parseFeaturesParallel();
+            return;
+        }
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (event == Event.START_OBJECT) {
+                updateProgress();
+                if (fingerprints != null) {
+                    parseFeature(parser.getObject());
+                } else {
+                    parseFeature();
+                }
+                commitFullBatch();
+            } else {
+                skipValue(parser, event);
+            }
+        }
+    }
+
+    /**
+     * Read the features and convert them on the {@link ParallelConversion#POOL} in chunks of
+     * {@link #PARALLEL_CHUNK_SIZE}. Each task converts its chunk into a list of its own, and the lists are merged into
+     * the dataset in the order of the features, so the result is the same as with a sequential conversion. With a
+     * {@link #batchSize}, the lists are merged as soon as the tasks are done, instead of after the last feature.
+     */
+    private void parseFeaturesParallel() {
+        final int maxPendingTasks = 4 * ParallelConversion.POOL.getParallelism();
+        final List<ForkJoinTask<List<OsmPrimitive>>> tasks = new ArrayList<>();
+        // converted primitives of joined tasks, only merged before the end with a batch size
+        final List<OsmPrimitive> converted = new ArrayList<>();
+        int joinedTasks = 0;
+        List<JsonObject> chunk = new ArrayList<>(PARALLEL_CHUNK_SIZE);
+        long[] chunkIndices = new long[PARALLEL_CHUNK_SIZE];
+        try {
+            Event event;
+            while ((event = parser.next()) != Event.END_ARRAY) {
+                if (event == Event.START_OBJECT) {
+                    updateProgress();
+                    featureIndex++;
+                    final JsonObject feature = readFeature();
+                    if (feature == null) {
+                        continue;
+                    }
+                    chunkIndices[chunk.size()] = featureIndex;
+                    chunk.add(feature);
+                    if (chunk.size() == PARALLEL_CHUNK_SIZE) {
+                        tasks.add(ParallelConversion.POOL.submit(new ConversionTask(chunk, chunkIndices)));
+                        chunk = new ArrayList<>(PARALLEL_CHUNK_SIZE);
+                        chunkIndices = new long[PARALLEL_CHUNK_SIZE];
+                        // do not read further ahead than the workers can convert, and with a batch size, merge what
+                        // they have converted as soon as possible
+                        while (tasks.size() - joinedTasks > maxPendingTasks
+                            || (batchSize > 0 && joinedTasks < tasks.size() && tasks.get(joinedTasks).isDone())) {
+                            addConverted(converted, tasks.get(joinedTasks++).join());
+                        }
+                    }
+                } else {
+                    skipValue(parser, event);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                tasks.add(ParallelConversion.POOL.submit(new ConversionTask(chunk, chunkIndices)));
+            }
+
+            if (batchSize > 0) {
+                for (ForkJoinTask<List<OsmPrimitive>> task : tasks.subList(joinedTasks, tasks.size())) {
+                    updateProgress();
+                    addConverted(converted, task.join());
+                }
+                mergeBatch(converted);
+                return;
+            }
+            getDataSet().beginUpdate();
+            try {
+                for (ForkJoinTask<List<OsmPrimitive>> task : tasks) {
+                    updateProgress();
+                    mergePrimitives(task.join());
+                }
+            } finally {
+                getDataSet().endUpdate();
+            }
+        } catch (ImportCanceledException e) {
+            tasks.forEach(task -> task.cancel(false));
+            throw e;
+        }
+    }
+
+    /**
+     * Read the records of a GeoJSON sequence. Each record is converted into the buffer of a worker, like a
+     * {@link ConversionTask}, and the buffer is merged into the dataset every {@link #SEQUENCE_BATCH_SIZE} records.
+     * The primitives of a record which cannot be read are removed from the buffer. With a {@link #batchSize}, the buffer
+     * is merged once it has that many primitives instead.
+     */
+    private void parseSequence(final InputStream source) throws IOException {
+        final JsonSequenceInputStream records = new JsonSequenceInputStream(source);
+        final GeoJsonReader worker = createWorker();
+        long skippedRecords = 0;
+        int batchedRecords = 0;
+        while (records.nextRecord()) {
+            updateProgress();
+            final int bufferSize = worker.primitiveBuffer.size();
+            try {
+                worker.setParser(parserFactory.createParser(records, StandardCharsets.UTF_8));
+                worker.parse();
+            } catch (RuntimeException e) {
+                // a malformed record must not abort the whole import
+                final long record = records.getRecordNumber();
+                worker.report(GeoJsonDiagnostics.Kind.MALFORMED_RECORD, () -> tr("record {0}: {1}", record, e.getMessage()));
+                Logging.trace(e);
+                worker.primitiveBuffer.subList(bufferSize, worker.primitiveBuffer.size()).clear();
+                worker.featurePrimitives.clear();
+                worker.deferredType = null;
+                worker.deferredGeometry = null;
+                skippedRecords++;
+            }
+            if (batchSize > 0 ? worker.primitiveBuffer.size() >= batchSize : ++batchedRecords == SEQUENCE_BATCH_SIZE) {
+                mergeBatch(worker.primitiveBuffer);
+                batchedRecords = 0;
+            }
+        }
+        mergeBatch(worker.primitiveBuffer);
+        buildNanos += worker.buildNanos;
+        filteredFeatures += worker.filteredFeatures;
+        if (skippedRecords > 0) {
+            Logging.warn(tr("{0} of {1} GeoJSON records could not be read", skippedRecords, records.getRecordNumber()));
+        }
+    }
+
+    /**
+     * Collect the primitives of a joined {@link ConversionTask}, and merge them into the dataset once there are
+     * {@link #batchSize} of them. Without a batch size, the primitives are merged after all tasks.
+     */
+    private void addConverted(final List<OsmPrimitive> converted, final List<OsmPrimitive> primitives) {
+        if (batchSize > 0) {
+            converted.addAll(primitives);
+            if (converted.size() >= batchSize) {
+                mergeBatch(converted);
+            }
+        }
+    }
+
+    /**
+     * Move the primitives of a dataset read by another reader (or loaded from the {@link GeoJsonParseCache}) into the
+     * dataset of this reader. With {@link Options#DEDUPLICATE_NODES}, way vertices at a position which already has a
+     * shared node are replaced by it, so the ways of adjacent files, e.g. tiles, share the vertices on their common
+     * edges. This reader must not parse at the same time.
+     *
+     * @param other the dataset, which is empty afterwards
+     */
+    void mergeDataSet(final DataSet other) {
+        // members before the primitives referring to them, relations only have way members
+        final List<OsmPrimitive> primitives = new ArrayList<>(other.getNodes());
+        primitives.addAll(other.getWays());
+        primitives.addAll(other.getRelations());
+        other.clear();
+        mergeBatch(primitives);
+    }
+
+    private void mergeBatch(final List<OsmPrimitive> primitives) {
+        getDataSet().beginUpdate();
+        try {
+            mergePrimitives(primitives);
+        } finally {
+            getDataSet().endUpdate();
+        }
+        primitives.clear();
+    }
+
+    /**
+     * Add the primitives converted by a {@link ConversionTask} to the dataset. With
+     * {@link Options#DEDUPLICATE_NODES}, the way vertices are replaced by the shared nodes here.
+     */
+    private void mergePrimitives(final List<OsmPrimitive> primitives) {
+        final long start = metrics == null ? 0 : System.nanoTime();
+        // the shared nodes are added through addToDataSet, which measures the time on its own
+        final long nestedInsertNanos = insertNanos;
+        if (sharedNodes == null) {
+            primitives.forEach(getDataSet()::addPrimitive);
+        } else {
+            mergeSharedNodes(primitives);
+        }
+        if (metrics != null) {
+            insertNanos = nestedInsertNanos + System.nanoTime() - start;
+        }
+    }
+
+    private void mergeSharedNodes(final List<OsmPrimitive> primitives) {
+        // way vertices, mapped to their shared node once it is known
+        final Map<Node, Node> vertices = new IdentityHashMap<>();
+        for (OsmPrimitive primitive : primitives) {
+            if (primitive instanceof Way) {
+                ((Way) primitive).getNodes().forEach(node -> vertices.put(node, null));
+            }
+        }
+        for (OsmPrimitive primitive : primitives) {
+            if (primitive instanceof Way) {
+                final Way way = (Way) primitive;
+                final List<Node> nodes = way.getNodes();
+                nodes.replaceAll(node -> vertices.computeIfAbsent(node, it -> getSharedNode(it.lat(), it.lon(), it)));
+                way.setNodes(removeConsecutiveDuplicates(nodes));
+                getDataSet().addPrimitive(way);
+            } else if (!vertices.containsKey(primitive)) {
+                getDataSet().addPrimitive(primitive);
+            }
+        }
+    }
+
+    /**
+     * Converts a chunk of features into primitives which are not yet part of a dataset.
+     */
+    private final class ConversionTask implements Callable<List<OsmPrimitive>> {
+        private List<JsonObject> features;
+        /** Indices of the features in the input */
+        private final long[] featureIndices;
+
+        ConversionTask(final List<JsonObject> features, final long[] featureIndices) {
+            this.features = features;
+            this.featureIndices = featureIndices;
+        }
+
+        @Override
+        public List<OsmPrimitive> call() {
+            final GeoJsonReader worker = createWorker();
+            // the features were already filtered and projected by readFeature()
+            worker.setFilter(null);
+            for (int i = 0; i < features.size(); i++) {
+                worker.featureIndex = featureIndices[i] - 1;
+                worker.parseFeature(features.get(i));
+            }
+            if (metrics != null) {
+                metrics.addNanos(GeoJsonImportMetrics.Phase.BUILD, worker.buildNanos);
+            }
+            // release the JSON as soon as possible, the task is kept until the merge
+            features = null;
+            return worker.primitiveBuffer;
+        }
+    }
+
+    /**
+     * Holder of the thread pool for {@link Options#PARALLEL}, which is only created when needed.
+     */
+    private static final class ParallelConversion {
+        static final ForkJoinPool POOL = Utils.newForkJoinPool("geojson.import.threads", "geojson-import-%d", Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Parse a feature from the parser events. The geometry is converted while it is read, the other members are
+     * collected into a {@link JsonObject} which provides the tags.
+     */
+    private void parseFeature() {
+        parseFeature(BUILDER_FACTORY.createObjectBuilder());
+    }
+
+    /**
+     * Parse the remaining members of a feature from the parser events, see {@link #parseFeature()}.
+     *
+     * @param feature the members read so far, which are neither the geometry nor the properties
+     */
+    private void parseFeature(final JsonObjectBuilder feature) {
+        featureIndex++;
+        if (metrics != null) {
+            metrics.addFeature();
+        }
+        if (filterMatch != null) {
+            filterMatch.reset();
+        }
+        boolean hasGeometry = false;
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            final Event event = parser.next();
+            if (event == Event.START_OBJECT && GEOMETRY.equals(key)) {
+                parseGeometry(filterMatch != null);
+                hasGeometry = true;
+            } else if (event == Event.START_OBJECT && PROPERTIES.equals(key) && filterMatch != null) {
+                feature.add(key, readProperties());
+            } else {
+                feature.add(key, parser.getValue());
+            }
+            if (filterMatch != null && filterMatch.isRejected()) {
+                skipMembers();
+                break;
+            }
+        }
+        if (filterMatch != null) {
+            if (!finishFilter(hasGeometry)) {
+                deferredType = null;
+                deferredGeometry = null;
+                return;
+            }
+            createDeferredGeometry();
+        }
+        if (hasGeometry) {
+            fillTagsFromFeature(feature.build());
+        } else {
+            parseNonGeometryFeature(feature.build());
+        }
+    }
+
+    /**
+     * Read the properties of a feature from the parser events, and test them with the {@link #filterMatch}. Only the
+     * properties which are kept or tested by the {@link #filter} are read, the parser skips the others. Once the
+     * feature is rejected, the remaining properties are skipped.
+     *
+     * @return the kept properties
+     */
+    private JsonObject readProperties() {
+        final JsonObjectBuilder properties = BUILDER_FACTORY.createObjectBuilder();
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            final Event event = parser.next();
+            final boolean kept = filter.keepsProperty(key);
+            if (!kept && !filter.testsProperty(key)) {
+                skipValue(parser, event);
+                continue;
+            }
+            final JsonValue value = parser.getValue();
+            if (filter.testsProperty(key) && !filterMatch.acceptsProperty(key, value)) {
+                skipMembers();
+                break;
+            }
+            if (kept) {
+                properties.add(key, value);
+            }
+        }
+        filterMatch.finishProperties();
+        return properties.build();
+    }
+
+    /**
+     * Read a feature from the parser events for a {@link ConversionTask}. With a {@link #filter}, the feature is tested
+     * while it is read, and only its kept properties are collected, see {@link #readProperties()}.
+     *
+     * @return the feature, or null if the filter rejects it
+     */
+    private JsonObject readFeature() {
+        if (filterMatch == null) {
+            return parser.getObject();
+        }
+        filterMatch.reset();
+        final JsonObjectBuilder feature = BUILDER_FACTORY.createObjectBuilder();
+        boolean hasGeometry = false;
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            final Event event = parser.next();
+            if (event == Event.START_OBJECT && PROPERTIES.equals(key)) {
+                feature.add(key, readProperties());
+            } else {
+                final JsonValue value = parser.getValue();
+                if (event == Event.START_OBJECT && GEOMETRY.equals(key)) {
+                    filterMatch.acceptsGeometryType(getGeometryType(value));
+                    hasGeometry = true;
+                }
+                feature.add(key, value);
+            }
+            if (filterMatch.isRejected()) {
+                skipMembers();
+                break;
+            }
+        }
+        if (finishFilter(hasGeometry)) {
+            return feature.build();
+        }
+        if (metrics != null) {
+            // accepted features are counted by the conversion
+            metrics.addFeature();
+        }
+        return null;
+    }
+
+    /**
+     * Decide the {@link #filterMatch} of a feature which was read from the parser events.
+     *
+     * @param hasGeometry if the feature has a geometry, whose type was already tested
+     * @return if the feature is accepted
+     */
+    private boolean finishFilter(final boolean hasGeometry) {
+        if (!hasGeometry) {
+            filterMatch.acceptsGeometryType(null);
+        }
+        if (filterMatch.finishProperties()) {
+            return true;
+        }
+        filteredFeatures++;
+        return false;
+    }
+
+    /**
+     * Create the primitives of the {@link #deferredType deferred geometry} of an accepted feature, if it has one.
+     */
+    private void createDeferredGeometry() {
+        if (deferredType != null) {
+            createGeometry(deferredType);
+            deferredType = null;
+        } else if (deferredGeometry != null) {
+            parseGeometry(deferredGeometry);
+            deferredGeometry = null;
+        }
+    }
+
+    /**
+     * Check if a feature is accepted by the {@link #filter}.
+     *
+     * @param feature the feature
+     * @return if the feature is accepted, always true without filter
+     */
+    private boolean acceptsFeature(final JsonObject feature) {
+        return acceptsFeature(feature.get(PROPERTIES), getGeometryType(feature.get(GEOMETRY)));
+    }
+
+    private boolean acceptsFeature(final JsonValue properties, final String geometryType) {
+        if (filter == null) {
+            return true;
+        }
+        if (filter.accepts(properties instanceof JsonObject ? (JsonObject) properties : JsonValue.EMPTY_JSON_OBJECT, geometryType)) {
+            return true;
+        }
+        filteredFeatures++;
+        return false;
+    }
+
+    /**
+     * Start a feature which is converted by a {@link TopoJsonReader}: report the progress, count the feature and test
+     * it with the {@link #filter}. Once its primitives are complete, the converter calls {@link #commitFullBatch()}.
+     *
+     * @param properties   the properties of the feature, may be null
+     * @param geometryType the geometry type, or null if it has no geometry
+     * @return if the feature is accepted
+     */
+    boolean startFeature(final JsonValue properties, final String geometryType) {
+        updateProgress();
+        featureIndex++;
+        if (metrics != null) {
+            metrics.addFeature();
+        }
+        return acceptsFeature(properties, geometryType);
+    }
+
+    /**
+     * @return the type of a geometry, or null if it is not a geometry with a type
+     */
+    private static String getGeometryType(final JsonValue geometry) {
+        final JsonValue type = geometry instanceof JsonObject ? ((JsonObject) geometry).get(TYPE) : null;
+        return type instanceof JsonString ? ((JsonString) type).getString() : null;
+    }
+
+    /**
+     * Skip the remaining members of the current object, including its end.
+     */
+    private void skipMembers() {
+        while (parser.next() == Event.KEY_NAME) {
+            skipValue(parser, parser.next());
+        }
+    }
+
+    /**
+     * Parse a geometry from the parser events. Geometries whose first member is a known {@code type} are converted
+     * while their coordinates are read, all others are collected and handed to {@link #parseGeometry(JsonObject)}.
+     */
+    private void parseGeometry() {
+        parseGeometry(false);
+    }
+
+    /**
+     * Parse a geometry from the parser events, see {@link #parseGeometry()}.
+     *
+     * @param filtered if this is the geometry of a feature tested by the {@link #filterMatch}: the geometry is skipped
+     *                 if its type is rejected, and it is deferred until {@link #createDeferredGeometry()} if the
+     *                 properties of the feature were not read yet
+     */
+    private void parseGeometry(final boolean filtered) {
+        final JsonObjectBuilder geometry = BUILDER_FACTORY.createObjectBuilder();
+        Event event = parser.next();
+        if (event == Event.KEY_NAME && TYPE.equals(parser.getString())) {
+            if (parser.next() == Event.VALUE_STRING) {
+                final String type = parser.getString();
+                if (filtered && !filterMatch.acceptsGeometryType(type)) {
+                    skipMembers();
+                    return;
+                }
+                final boolean defer = filtered && !filterMatch.isPropertiesDecided();
+                if (GEOMETRY_COLLECTION.equals(type) && !defer) {
+                    parseGeometryCollection();
+                    return;
+                }
+                final int depth = getCoordinatesDepth(type);
+                if (depth > 0) {
+                    parseGeometry(type, depth, defer);
+                    return;
+                }
+            }
+            geometry.add(TYPE, parser.getValue());
+            event = parser.next();
+        }
+        while (event == Event.KEY_NAME) {
+            final String key = parser.getString();
+            parser.next();
+            geometry.add(key, parser.getValue());
+            event = parser.next();
+        }
+        final JsonObject object = geometry.build();
+        if (filtered) {
+            if (!filterMatch.acceptsGeometryType(getGeometryType(object))) {
+                return;
+            } else if (!filterMatch.isPropertiesDecided()) {
+                deferredGeometry = object;
+                return;
+            }
+        }
+        parseGeometry(object);
+    }
+
+    private void parseGeometry(final String type, final int depth, final boolean defer) {
+        coordinates.clear();
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            final Event event = parser.next();
+            if (event == Event.START_ARRAY && COORDINATES.equals(key)) {
+                coordinates.read(parser, depth);
+            } else {
+                skipValue(parser, event);
+            }
+        }
+        if (defer) {
+            deferredType = type;
+        } else {
+            createGeometry(type);
+        }
+    }
+
+    private void parseGeometryCollection() {
+        while (parser.next() == Event.KEY_NAME) {
+            final String key = parser.getString();
+            Event event = parser.next();
+            if (event == Event.START_ARRAY && GEOMETRIES.equals(key)) {
+                while ((event = parser.next()) != Event.END_ARRAY) {
+                    if (event == Event.START_OBJECT) {
+                        parseGeometry();
+                    } else {
+                        skipValue(parser, event);
+                        parseNullGeometry();
+                    }
+                }
+            } else {
+                skipValue(parser, event);
+            }
+        }
+    }
+
     private void parseRoot(final JsonObject object) {
         switch (object.getString(TYPE)) {
             case "FeatureCollection":
@@ -69,34 +916,58 @@ public class GeoJsonReader extends AbstractReader {
             case "Feature":
                 parseFeature(object);
                 break;
-            case "GeometryCollection":
-                parseGeometryCollection(null, object);
+            case TopoJsonReader.TOPOLOGY:
+                new TopoJsonReader(this).read(object);
                 break;
             default:
-                parseGeometry(null, object);
+                parseGeometry(object);
+                featurePrimitives.clear();
         }
     }
 
     private void parseFeatureCollection(final JsonArray features) {
         for (JsonValue feature : features) {
             if (feature instanceof JsonObject) {
+                updateProgress();
                 JsonObject item = (JsonObject) feature;
                 parseFeature(item);
+                commitFullBatch();
             }
         }
     }
 
     private void parseFeature(final JsonObject feature) {
+        featureIndex++;
+        if (metrics != null) {
+            metrics.addFeature();
+        }
+        if (fingerprints == null) {
+            convertFeature(feature);
+        } else if (fingerprints.startFeature(feature)) {
+            convertFeature(feature);
+            fingerprints.finishFeature();
+        }
+    }
+
+    private void convertFeature(final JsonObject feature) {
+        if (!acceptsFeature(feature)) {
+            return;
+        }
         JsonValue geometry = feature.get(GEOMETRY);
         if (geometry != null && geometry.getValueType().equals(JsonValue.ValueType.OBJECT)) {
-            parseGeometry(feature, geometry.asJsonObject());
+            parseGeometry(geometry.asJsonObject());
+            fillTagsFromFeature(feature);
         } else {
-            JsonValue properties = feature.get(PROPERTIES);
-            if(properties != null && properties.getValueType().equals(JsonValue.ValueType.OBJECT)) {
-                parseNonGeometryFeature(feature, properties.asJsonObject());
-            } else {
-                Logging.warn(tr("Relation/non-geometry feature without properties found: {0}", feature));
-            }
+            parseNonGeometryFeature(feature);
+        }
+    }
+
+    private void parseNonGeometryFeature(final JsonObject feature) {
+        JsonValue properties = feature.get(PROPERTIES);
+        if(properties != null && properties.getValueType().equals(JsonValue.ValueType.OBJECT)) {
+            parseNonGeometryFeature(feature, properties.asJsonObject());
+        } else {
+            report(GeoJsonDiagnostics.Kind.FEATURE_WITHOUT_PROPERTIES, () -> GeoJsonDiagnostics.abbreviate(feature));
         }
     }
 
@@ -104,139 +975,311 @@ public class GeoJsonReader extends AbstractReader {
         // get relation type
         JsonValue type = properties.get(TYPE);
         if (type == null || properties.getValueType().equals(JsonValue.ValueType.STRING)) {
-            Logging.warn(tr("Relation/non-geometry feature without type found: {0}", feature));
+            report(GeoJsonDiagnostics.Kind.FEATURE_WITHOUT_TYPE, () -> GeoJsonDiagnostics.abbreviate(feature));
             return;
         }
 
         // create misc. non-geometry feature
         final Relation relation = new Relation();
         relation.put(TYPE, type.toString());
-        fillTagsFromFeature(feature, relation);
-        getDataSet().addPrimitive(relation);
+        relation.setKeys(getTags(feature));
+        addPrimitive(relation);
     }
 
-    private void parseGeometryCollection(final JsonObject feature, final JsonObject geometry) {
-        JsonArray geometries = geometry.getJsonArray("geometries");
+    private void parseGeometryCollection(final JsonObject geometry) {
+        JsonArray geometries = geometry.getJsonArray(GEOMETRIES);
         for (JsonValue jsonValue : geometries) {
-            parseGeometry(feature, jsonValue.asJsonObject());
+            if (jsonValue instanceof JsonObject) {
+                parseGeometry(jsonValue.asJsonObject());
+            } else {
+                parseNullGeometry();
+            }
         }
     }
 
-    private void parseGeometry(final JsonObject feature, final JsonObject geometry) {
-        if (geometry == null) {
-            parseNullGeometry(feature);
+    private void parseGeometry(final JsonObject geometry) {
+        final String type = geometry.getString(TYPE);
+        if (GEOMETRY_COLLECTION.equals(type)) {
+            parseGeometryCollection(geometry);
             return;
         }
+        final int depth = getCoordinatesDepth(type);
+        if (depth == 0) {
+            parseUnknown(geometry);
+            return;
+        }
+        final JsonValue coordinateArray = geometry.get(COORDINATES);
+        coordinates.read(coordinateArray instanceof JsonArray ? (JsonArray) coordinateArray : null, depth);
+        createGeometry(type);
+    }
 
-        switch (geometry.getString(TYPE)) {
+    /**
+     * Get the nesting depth of the coordinates of a geometry type.
+     *
+     * @param type the geometry type
+     * @return the depth, or 0 if the type has no coordinates (e.g. an unknown type)
+     */
+    private static int getCoordinatesDepth(final String type) {
+        switch (type) {
             case "Point":
-                parsePoint(feature, geometry.getJsonArray(COORDINATES));
-                break;
+                return 1;
             case "MultiPoint":
-                parseMultiPoint(feature, geometry);
-                break;
             case "LineString":
-                parseLineString(feature, geometry.getJsonArray(COORDINATES));
-                break;
+                return 2;
             case "MultiLineString":
-                parseMultiLineString(feature, geometry);
-                break;
             case "Polygon":
-                parsePolygon(feature, geometry.getJsonArray(COORDINATES));
-                break;
+                return 3;
             case "MultiPolygon":
-                parseMultiPolygon(feature, geometry);
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Create the primitives of a geometry from the {@link #coordinates} buffer, unless it is outside of the
+     * {@link #area}.
+     *
+     * @param type the geometry type, one with coordinates
+     */
+    private void createGeometry(final String type) {
+        if (area != null && !coordinates.intersects(area)) {
+            return;
+        }
+        if (metrics == null) {
+            createPrimitives(type);
+            return;
+        }
+        metrics.addGeometry(type, coordinates.size());
+        final long start = System.nanoTime();
+        final long nestedInsertNanos = insertNanos;
+        createPrimitives(type);
+        buildNanos += System.nanoTime() - start - (insertNanos - nestedInsertNanos);
+    }
+
+    private void createPrimitives(final String type) {
+        switch (type) {
+            case "Point":
+            case "MultiPoint":
+                parsePoints();
                 break;
-            case "GeometryCollection":
-                parseGeometryCollection(feature, geometry);
+            case "LineString":
+            case "MultiLineString":
+                parseLineStrings();
+                break;
+            case "MultiPolygon":
+                if (multipolygonRelations && (coordinates.polygonCount() > 1 || coordinates.lineCount() > 1)) {
+                    parseMultiPolygon();
+                    break;
+                }
+                parsePolygons();
                 break;
             default:
-                parseUnknown(geometry);
+                parsePolygons();
         }
     }
 
-    private void parsePoint(final JsonObject feature, final JsonArray coordinates) {
-        double lat = coordinates.getJsonNumber(1).doubleValue();
-        double lon = coordinates.getJsonNumber(0).doubleValue();
-        Node node = createNode(lat, lon);
-        fillTagsFromFeature(feature, node);
+    private void parsePoints() {
+        for (int i = 0; i < coordinates.size(); i++) {
+            featurePrimitives.add(createNode(coordinates.lat(i), coordinates.lon(i)));
+        }
     }
 
-    private void parseMultiPoint(final JsonObject feature, final JsonObject geometry) {
-        JsonArray coordinates = geometry.getJsonArray(COORDINATES);
-        for (JsonValue coordinate : coordinates) {
-            parsePoint(feature, coordinate.asJsonArray());
+    private void parseLineStrings() {
+        for (int line = 0; line < coordinates.lineCount(); line++) {
+            createWay(line, false).ifPresent(featurePrimitives::add);
         }
     }
 
-    private void parseLineString(final JsonObject feature, final JsonArray coordinates) {
-        if (coordinates.isEmpty()) {
-            return;
+    private void parsePolygons() {
+        for (int polygon = 0; polygon < coordinates.polygonCount(); polygon++) {
+            parsePolygon(coordinates.polygonStart(polygon), coordinates.polygonEnd(polygon));
         }
-        createWay(coordinates, false)
-            .ifPresent(way -> fillTagsFromFeature(feature, way));
     }
 
-    private void parseMultiLineString(final JsonObject feature, final JsonObject geometry) {
-        JsonArray coordinates = geometry.getJsonArray(COORDINATES);
-        for (JsonValue coordinate : coordinates) {
-            parseLineString(feature, coordinate.asJsonArray());
+    private void parsePolygon(final int firstRing, final int lastRing) {
+        if (lastRing - firstRing == 1) {
+            createWay(firstRing, true).ifPresent(featurePrimitives::add);
+        } else if (lastRing - firstRing > 1) {
+            final List<RelationMember> members = new ArrayList<>(lastRing - firstRing);
+            addRingMembers(firstRing, lastRing, members);
+            addMultipolygon(members);
         }
     }
 
-    private void parsePolygon(final JsonObject feature, final JsonArray coordinates) {
-        if (coordinates.size() == 1) {
-            createWay(coordinates.getJsonArray(0), true)
-                .ifPresent(way -> fillTagsFromFeature(feature, way));
-        } else if (coordinates.size() > 1) {
-            // create multipolygon
-            final Relation multipolygon = new Relation();
-            multipolygon.put(TYPE, "multipolygon");
-            createWay(coordinates.getJsonArray(0), true)
-                .ifPresent(way -> multipolygon.addMember(new RelationMember("outer", way)));
+    /**
+     * Create one multipolygon relation for all polygons of the {@link #coordinates} buffer, see
+     * {@link Options#MULTIPOLYGON_RELATIONS}.
+     */
+    private void parseMultiPolygon() {
+        final List<RelationMember> members = new ArrayList<>(coordinates.lineCount());
+        for (int polygon = 0; polygon < coordinates.polygonCount(); polygon++) {
+            addRingMembers(coordinates.polygonStart(polygon), coordinates.polygonEnd(polygon), members);
+        }
+        if (!members.isEmpty()) {
+            addMultipolygon(members);
+        }
+    }
 
-            for (JsonValue interiorRing : coordinates.subList(1, coordinates.size())) {
-                createWay(interiorRing.asJsonArray(), true)
-                    .ifPresent(way -> multipolygon.addMember(new RelationMember("inner", way)));
+    /**
+     * Create the ways of the rings of a polygon and add them to a member list, the first ring as outer way and the
+     * others as inner ways.
+     */
+    private void addRingMembers(final int firstRing, final int lastRing, final List<RelationMember> members) {
+        for (int ring = firstRing; ring < lastRing; ring++) {
+            final String role = ring == firstRing ? "outer" : "inner";
+            createWay(ring, true).ifPresent(way -> members.add(new RelationMember(role, way)));
+        }
+    }
+
+    private void addMultipolygon(final List<RelationMember> members) {
+        final Relation multipolygon = new Relation();
+        multipolygon.setMembers(members);
+        featurePrimitives.add(multipolygon);
+        addPrimitive(multipolygon);
+    }
+
+    Node createNode(final double lat, final double lon) {
+        final Node node = new Node(new LatLon(lat, lon));
+        addPrimitive(node);
+        return node;
+    }
+
+    /**
+     * Get the node for a way vertex. With {@link Options#DEDUPLICATE_NODES}, the node created for the first vertex
+     * at a position (rounded to {@link LatLon#MAX_SERVER_PRECISION}) is reused for all later vertices there.
+     */
+    private Node getVertex(final double lat, final double lon) {
+        return sharedNodes == null ? createNode(lat, lon) : getSharedNode(lat, lon, null);
+    }
+
+    /**
+     * Get the shared node at a position.
+     *
+     * @param lat  the latitude
+     * @param lon  the longitude
+     * @param node the node to use if there is none at the position yet, which is added to the dataset directly when
+     *             primitives of a {@link ConversionTask} are merged, or null to create one
+     * @return the shared node
+     */
+    private Node getSharedNode(final double lat, final double lon, final Node node) {
+        if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            return node == null ? createNode(lat, lon) : addToDataSet(node);
+        }
+        final long key = getPositionKey(lat, lon);
+        final Node shared = sharedNodes.get(key);
+        if (shared != null) {
+            reusedNodes++;
+            return shared;
+        }
+        final Node created = node == null ? createNode(lat, lon) : addToDataSet(node);
+        sharedNodes.put(key, created);
+        return created;
+    }
+
+    /**
+     * Get the key of a position rounded to {@link LatLon#MAX_SERVER_PRECISION}, for positions in the valid range.
+     *
+     * @param lat the latitude
+     * @param lon the longitude
+     * @return the key
+     */
+    static long getPositionKey(final double lat, final double lon) {
+        return Math.round(lat / LatLon.MAX_SERVER_PRECISION) << 32 | Math.round(lon / LatLon.MAX_SERVER_PRECISION) & 0xFFFF_FFFFL;
+    }
+
+    /**
+     * Add a vertex to the nodes of a way, unless it is the same node as the previous vertex, which occurs when vertices
+     * share a node, since a way must not contain the same node twice in a row.
+     */
+    private static void addVertex(final List<Node> nodes, final Node node) {
+        if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node) {
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * Remove repeated nodes, which occur when vertices share a node, since a way must not contain the same node
+     * twice in a row.
+     */
+    private static List<Node> removeConsecutiveDuplicates(final List<Node> nodes) {
+        final List<Node> result = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (result.isEmpty() || result.get(result.size() - 1) != node) {
+                result.add(node);
             }
+        }
+        return result;
+    }
 
-            fillTagsFromFeature(feature, multipolygon);
-            getDataSet().addPrimitive(multipolygon);
+    <T extends OsmPrimitive> T addPrimitive(final T primitive) {
+        if (fingerprints != null) {
+            fingerprints.addPrimitive(primitive);
         }
+        if (primitiveBuffer != null) {
+            primitiveBuffer.add(primitive);
+        } else if (batch != null) {
+            batch.add(primitive);
+        } else {
+            addToDataSet(primitive);
+        }
+        return primitive;
     }
 
-    private void parseMultiPolygon(final JsonObject feature, final JsonObject geometry) {
-        JsonArray coordinates = geometry.getJsonArray(COORDINATES);
-        for (JsonValue coordinate : coordinates) {
-            parsePolygon(feature, coordinate.asJsonArray());
+    private <T extends OsmPrimitive> T addToDataSet(final T primitive) {
+        if (metrics != null) {
+            final long start = System.nanoTime();
+            getDataSet().addPrimitive(primitive);
+            insertNanos += System.nanoTime() - start;
+        } else {
+            getDataSet().addPrimitive(primitive);
         }
+        return primitive;
     }
 
-    private Node createNode(final double lat, final double lon) {
-        final Node node = new Node(new LatLon(lat, lon));
-        getDataSet().addPrimitive(node);
-        return node;
+    /**
+     * Add the {@link #batch} to the dataset if it has reached the {@link #batchSize}. Called after each feature, so
+     * that only complete features with their tags are added.
+     */
+    void commitFullBatch() {
+        if (batch != null && batch.size() >= batchSize) {
+            commitBatch();
+        }
     }
 
-    private Optional<Way> createWay(final JsonArray coordinates, final boolean autoClose) {
-        if (coordinates.isEmpty()) {
-            return Optional.empty();
+    private void commitBatch() {
+        final long start = metrics == null ? 0 : System.nanoTime();
+        getDataSet().beginUpdate();
+        try {
+            batch.forEach(getDataSet()::addPrimitive);
+        } finally {
+            getDataSet().endUpdate();
         }
+        batch.clear();
+        if (metrics != null) {
+            insertNanos += System.nanoTime() - start;
+        }
+    }
 
-        final List<LatLon> latlons = coordinates.stream().map(coordinate -> {
-            final JsonArray jsonValues = coordinate.asJsonArray();
-            return new LatLon(
-                jsonValues.getJsonNumber(1).doubleValue(),
-                jsonValues.getJsonNumber(0).doubleValue()
-            );
-        }).collect(Collectors.toList());
+    /**
+     * Create a way from a line of the {@link #coordinates} buffer.
+     *
+     * @param line      the index of the line in the buffer
+     * @param autoClose if the way should be closed even if the last position differs from the first
+     * @return the way, or nothing if the line is empty
+     */
+    private Optional<Way> createWay(final int line, final boolean autoClose) {
+        final int start = coordinates.lineStart(line);
+        int end = coordinates.lineEnd(line);
+        if (start == end) {
+            return Optional.empty();
+        }
 
-        final int size = latlons.size();
         final boolean doAutoclose;
-        if (size > 1) {
-            if (latlons.get(0).equals(latlons.get(size - 1))) {
+        if (end - start > 1) {
+            if (coordinates.isSamePosition(start, end - 1)) {
                 // Remove last coordinate, but later add first node to the end
-                latlons.remove(size - 1);
+                end--;
                 doAutoclose = true;
             } else {
                 doAutoclose = autoClose;
@@ -245,50 +1288,109 @@ public class GeoJsonReader extends AbstractReader {
             doAutoclose = false;
         }
 
-        final Way way = new Way();
-        way.setNodes(latlons.stream().map(Node::new).collect(Collectors.toList()));
+        // the nodes are created straight from the buffer, without an intermediate list of positions
+        final List<Node> nodes = new ArrayList<>(end - start + 1);
+        if (simplifier != null && end - start > 1) {
+            for (int i : simplifier.simplify(coordinates, start, end, doAutoclose)) {
+                addVertex(nodes, getVertex(coordinates.lat(i), coordinates.lon(i)));
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                addVertex(nodes, getVertex(coordinates.lat(i), coordinates.lon(i)));
+            }
+        }
         if (doAutoclose) {
-            way.addNode(way.getNode(0));
+            addVertex(nodes, nodes.get(0));
         }
 
-        way.getNodes().stream().distinct().forEach(it -> getDataSet().addPrimitive(it));
-        getDataSet().addPrimitive(way);
+        final Way way = new Way();
+        way.setNodes(nodes);
+        addPrimitive(way);
 
         return Optional.of(way);
     }
 
-    private void fillTagsFromFeature(final JsonObject feature, final OsmPrimitive primitive) {
-        if (feature != null) {
-            primitive.setKeys(getTags(feature));
+    /**
+     * Set the tags of the feature on the primitives created for its geometry. The relations, which are multipolygons,
+     * get {@code type=multipolygon} unless the feature has a {@code type} property.
+     */
+    private void fillTagsFromFeature(final JsonObject feature) {
+        if (!featurePrimitives.isEmpty()) {
+            final Map<String, String> tags = getTags(feature);
+            for (OsmPrimitive primitive : featurePrimitives) {
+                primitive.setKeys(tags);
+                if (primitive instanceof Relation && !tags.containsKey(TYPE)) {
+                    primitive.put(TYPE, "multipolygon");
+                }
+            }
+            featurePrimitives.clear();
         }
     }
 
     private void parseUnknown(final JsonObject object) {
-        Logging.warn(tr("Unknown json object found {0}", object));
+        report(GeoJsonDiagnostics.Kind.UNKNOWN_GEOMETRY, () -> GeoJsonDiagnostics.abbreviate(object));
     }
 
-    private void parseNullGeometry(JsonObject feature) {
-        Logging.warn(tr("Geometry of feature {0} is null", feature));
+    private void parseNullGeometry() {
+        report(GeoJsonDiagnostics.Kind.NULL_GEOMETRY, () -> null);
+    }
+
+    /**
+     * Add an issue of the current feature to the {@link #diagnostics}. Only the examples kept there are logged, and
+     * only for them the detail is computed.
+     *
+     * @param kind   the kind of the issue
+     * @param detail the detail of the issue
+     */
+    void report(final GeoJsonDiagnostics.Kind kind, final Supplier<String> detail) {
+        final GeoJsonDiagnostics.Issue issue = diagnostics.add(kind, featureIndex, detail);
+        if (issue != null) {
+            Logging.warn(issue.toString());
+        }
+        if (metrics != null) {
+            metrics.addWarning();
+        }
     }
 
-    private Map<String, String> getTags(final JsonObject feature) {
+    /**
+     * Skip the value of the current event, including all nested events of an array or object.
+     *
+     * @param parser the parser
+     * @param event  the current event
+     */
+    static void skipValue(final JsonParser parser, final Event event) {
+        if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        } else if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        }
+    }
+
+    /**
+     * Get the tags of a feature from its properties.
+     *
+     * @param feature the feature, or another object with {@code properties}
+     * @return the tags
+     */
+    Map<String, String> getTags(final JsonObject feature) {
         final Map<String, String> tags = new TreeMap<>();
 
         if (feature.containsKey(PROPERTIES) && !feature.isNull(PROPERTIES)) {
             JsonValue properties = feature.get(PROPERTIES);
             if(properties != null && properties.getValueType().equals(JsonValue.ValueType.OBJECT)) {
                 for (Map.Entry<String, JsonValue> stringJsonValueEntry : properties.asJsonObject().entrySet()) {
+                    if (filter != null && !filter.keepsProperty(stringJsonValueEntry.getKey())) {
+                        continue;
+                    }
                     final JsonValue value = stringJsonValueEntry.getValue();
 
                     if (value instanceof JsonString) {
-                        tags.put(stringJsonValueEntry.getKey(), ((JsonString) value).getString());
+                        putTag(tags, stringJsonValueEntry.getKey(), ((JsonString) value).getString());
                     } else if (value instanceof JsonStructure) {
-                        Logging.warn(
-                            "The GeoJSON contains an object with property '" + stringJsonValueEntry.getKey()
-                                + "' whose value has the unsupported type '" + value.getClass().getSimpleName() + "'. That key-value pair is ignored!"
-                        );
+                        report(GeoJsonDiagnostics.Kind.UNSUPPORTED_PROPERTY,
+                            () -> stringJsonValueEntry.getKey() + " (" + value.getValueType() + ')');
                     } else if (value.getValueType() != JsonValue.ValueType.NULL) {
-                        tags.put(stringJsonValueEntry.getKey(), value.toString());
+                        putTag(tags, stringJsonValueEntry.getKey(), value.toString());
                     }
                 }
             }
@@ -296,25 +1398,226 @@ public class GeoJsonReader extends AbstractReader {
         return tags;
     }
 
+    private void putTag(final Map<String, String> tags, final String key, final String value) {
+        if (tagDictionary == null) {
+            tags.put(key, value);
+        } else {
+            final String sharedKey = tagDictionary.key(key);
+            tags.put(sharedKey, tagDictionary.value(sharedKey, value));
+        }
+    }
+
+    /**
+     * Report the progress and stop the import if it was canceled. Called before each feature.
+     */
+    private void updateProgress() {
+        if (canceled || progressMonitor.isCanceled()) {
+            throw new ImportCanceledException();
+        }
+        if (metrics != null) {
+            metrics.sample(System.nanoTime());
+        }
+        if (bytesRead != null && inputSize > 0) {
+            final int ticks = (int) Math.min(PROGRESS_TICKS, bytesRead.getAsLong() * PROGRESS_TICKS / inputSize);
+            if (ticks > progressMonitor.getTicks()) {
+                progressMonitor.setTicks(ticks);
+            }
+        }
+    }
+
+    /**
+     * Thrown by {@link #updateProgress()} to leave the parser when the import was canceled.
+     */
+    private static final class ImportCanceledException extends RuntimeException {
+        ImportCanceledException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Input stream which measures the bytes read from the underlying stream and the time spent reading them, which
+     * includes the decompression.
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+        private long count;
+        private long nanos;
+
+        TimedInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            final int b = super.read();
+            nanos += System.nanoTime() - start;
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final long start = System.nanoTime();
+            final int n = super.read(b, off, len);
+            nanos += System.nanoTime() - start;
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Restrict the import to an area. Geometries whose envelope does not intersect the area are dropped before any
+     * primitive is created for them. Each geometry of a GeometryCollection is checked on its own; features without
+     * geometry have no position and are always kept.
+     *
+     * @param area the area, or null to import all geometries
+     */
+    void setArea(final Bounds area) {
+        this.area = area;
+    }
+
+    /**
+     * @return the area the import is restricted to, or null to import all geometries
+     */
+    Bounds getArea() {
+        return area;
+    }
+
+    /**
+     * Set the source of the progress reported while parsing. Without it, the progress is indeterminate.
+     *
+     * @param bytesRead the number of bytes of the input read so far, e.g. from the compressed file
+     * @param inputSize the total number of bytes of the input
+     */
+    void setInputProgress(final LongSupplier bytesRead, final long inputSize) {
+        this.bytesRead = bytesRead;
+        this.inputSize = inputSize;
+    }
+
+    /**
+     * Cancel the import from another thread, like canceling its progress monitor. An import which has not started yet
+     * is canceled as soon as it starts.
+     */
+    void cancel() {
+        this.canceled = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the dataset with the parsed data, or null if the import was canceled through the progress monitor or
+     * {@link #cancel()}
+     */
     @Override
     protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
-        setParser(Json.createParser(source));
-        parse();
+        this.progressMonitor = progressMonitor == null ? NullProgressMonitor.INSTANCE : progressMonitor;
+        this.metrics = listeners.isEmpty() && !Logging.isDebugEnabled() ? null : new GeoJsonImportMetrics();
+        this.diagnostics = new GeoJsonDiagnostics();
+        this.featureIndex = -1;
+        this.filteredFeatures = 0;
+        final TimedInputStream input = metrics == null ? null : new TimedInputStream(source);
+        if (bytesRead != null && inputSize > 0) {
+            this.progressMonitor.beginTask(tr("Parsing GeoJSON…"), PROGRESS_TICKS);
+        } else {
+            this.progressMonitor.beginTask(null);
+            this.progressMonitor.indeterminateSubTask(tr("Parsing GeoJSON…"));
+        }
+        try {
+            if (sequence) {
+                parseSequence(input == null ? source : input);
+            } else {
+                setParser(parserFactory.createParser(input == null ? source : input));
+                parse();
+            }
+            if (batch != null) {
+                commitBatch();
+            }
+        } catch (ImportCanceledException e) {
+            Logging.info("GeoJSON import canceled");
+            if (parser != null) {
+                parser.close();
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalDataException(e);
+        } finally {
+            this.progressMonitor.finishTask();
+        }
+        if (!diagnostics.isEmpty()) {
+            Logging.warn(diagnostics.toString());
+        }
+        if (sharedNodes != null) {
+            Logging.info("GeoJSON: {0} nodes reused for shared positions, {1} distinct positions", reusedNodes, sharedNodes.size());
+        }
+        if (tagDictionary != null) {
+            Logging.info("GeoJSON tag dictionary: {0}", tagDictionary);
+        }
+        if (filter != null) {
+            Logging.info("GeoJSON filter {0} rejected {1} features", filter, filteredFeatures);
+        }
+        if (simplifier != null) {
+            Logging.info("GeoJSON simplification removed {0} of {1} vertices", simplifier.getRemovedVertexCount(),
+                simplifier.getVertexCount());
+        }
+        if (metrics != null) {
+            finishMetrics(input);
+        }
 
         return getDataSet();
     }
 
+    /**
+     * Complete the {@link #metrics} of an import, log them and notify the listeners.
+     */
+    private void finishMetrics(final TimedInputStream input) {
+        metrics.finish(input.count);
+        metrics.addNanos(GeoJsonImportMetrics.Phase.DECOMPRESS, input.nanos);
+        metrics.addNanos(GeoJsonImportMetrics.Phase.INSERT, insertNanos);
+        metrics.addNanos(GeoJsonImportMetrics.Phase.BUILD, buildNanos);
+        // the time of the importing thread in none of the other phases
+        metrics.addNanos(GeoJsonImportMetrics.Phase.TOKENIZE,
+            Math.max(0, metrics.getTotalNanos() - input.nanos - insertNanos - buildNanos));
+        Logging.info(metrics.toString());
+        for (GeoJsonImportListener listener : listeners) {
+            listener.importFinished(metrics);
+        }
+    }
+
     /**
      * Parse the given input source and return the dataset.
      *
      * @param source          the source input stream. Must not be null.
      * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
-     * @return the dataset with the parsed data
+     * @param options         the options for the conversion
+     * @return the dataset with the parsed data, or null if the import was canceled through the progress monitor
+     * @throws IllegalDataException     if an error was found while parsing the data from the source
+     * @throws IllegalArgumentException if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor, Options... options)
+            throws IllegalDataException {
+        return new GeoJsonReader(options).doParseDataSet(source, progressMonitor);
+    }
+
+    /**
+     * Parse the given input source and return the dataset, and report the metrics of the import to a listener.
+     *
+     * @param source          the source input stream. Must not be null.
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     * @param listener        the listener, which is notified when the import has finished
+     * @param options         the options for the conversion
+     * @return the dataset with the parsed data, or null if the import was canceled through the progress monitor
      * @throws IllegalDataException     if an error was found while parsing the data from the source
      * @throws IllegalArgumentException if source is null
      */
-    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
-        return new GeoJsonReader().doParseDataSet(source, progressMonitor);
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor, GeoJsonImportListener listener,
+            Options... options) throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader(options);
+        reader.addImportListener(listener);
+        return reader.doParseDataSet(source, progressMonitor);
     }
 
 }
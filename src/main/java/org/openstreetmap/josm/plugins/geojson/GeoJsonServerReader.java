@@ -1,34 +1,167 @@
 // License: Apache 2.0. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.geojson;
 
+import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.io.OsmServerReader;
 import org.openstreetmap.josm.io.OsmTransferException;
+import org.openstreetmap.josm.tools.HttpClient;
+import org.openstreetmap.josm.tools.Logging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.regex.Pattern;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 /**
  * GeoJson server reader.
+ * <p>
+ * HTTP resources are parsed while they are downloaded, see {@link #STREAMING}. If the {@link GeoJsonFileImporter#PARSE_CACHE}
+ * is enabled, the parsed data is cached with the ETag or Last-Modified header of the response, and the next download
+ * of the URL is a conditional request, which reads the data from the cache if the resource did not change.
  * @author Omar Vega Ramos &lt;ovruni@riseup.net&gt;
  */
 public class GeoJsonServerReader extends OsmServerReader {
 
+    /**
+     * Parse HTTP resources while they are downloaded, instead of downloading them to a file first. Area downloads with
+     * the {@link GeoJsonFileImporter#SPATIAL_INDEX} always download to a file, which is indexed.
+     */
+    public static final BooleanProperty STREAMING = new BooleanProperty("geojson.download.streaming", true);
+
+    private static final Pattern HTTP_PATTERN = Pattern.compile("https?://.*", Pattern.CASE_INSENSITIVE);
+    private static final String ETAG = "ETag ";
+    private static final String LAST_MODIFIED = "Last-Modified ";
+
     private final String url;
+    private final Bounds area;
+    private final GeoJsonFileImporter importer;
 
     public GeoJsonServerReader(String url) {
+        this(url, null);
+    }
+
+    /**
+     * Constructs a reader which only keeps the geometries in an area.
+     *
+     * @param url  the URL of the GeoJSON file
+     * @param area the area, or null for all geometries
+     */
+    public GeoJsonServerReader(String url, Bounds area) {
+        this(url, area, new GeoJsonFileImporter(GeoJsonPlugin.getCacheDirectory()));
+    }
+
+    /**
+     * Constructs a reader which only keeps the geometries in an area.
+     *
+     * @param url      the URL of the GeoJSON file
+     * @param area     the area, or null for all geometries
+     * @param importer the importer, with the cache directory
+     */
+    GeoJsonServerReader(String url, Bounds area, GeoJsonFileImporter importer) {
         this.url = url;
+        this.area = area;
+        this.importer = importer;
     }
 
     @Override
     public DataSet parseOsm(ProgressMonitor progressMonitor) throws OsmTransferException {
         try {
             progressMonitor.beginTask(tr("Contacting Server…"), 10);
-            return new GeoJsonFileImporter().parseDataSet(url);
+            if (STREAMING.get() && HTTP_PATTERN.matcher(url).matches()
+                && (area == null || !GeoJsonFileImporter.SPATIAL_INDEX.get())) {
+                return parseStreaming(progressMonitor);
+            }
+            return importer.parseDataSet(url, area);
         } catch (Exception e) {
             throw new OsmTransferException(e);
         } finally {
+            activeConnection = null;
             progressMonitor.finishTask();
-        }        
+        }
+    }
+
+    /**
+     * Parse the response while it is downloaded. The progress is the share of the response which was received.
+     *
+     * @return the dataset, or null if the download was canceled
+     */
+    private DataSet parseStreaming(ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
+        final String variant = GeoJsonFileImporter.getCacheVariant(url);
+        // only complete datasets are cached
+        final GeoJsonParseCache cache = area == null ? importer.getParseCache() : null;
+        final String cachedValidator = cache != null ? cache.getValidator(url, variant) : null;
+
+        HttpClient.Response response = connect(cachedValidator);
+        try {
+            if (cachedValidator != null && response.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                final DataSet cached = cache.load(url, cachedValidator, variant);
+                if (cached != null) {
+                    Logging.info("GeoJSON at {0} not modified, loaded from cache", url);
+                    return cached;
+                }
+                // the entry was removed in the meantime
+                response.disconnect();
+                response = connect(null);
+            }
+            if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException(tr("Server returned HTTP {0} ({1}) for {2}", response.getResponseCode(),
+                    response.getResponseMessage(), url));
+            }
+            progressMonitor.worked(1);
+
+            // the content length is only the size of the content if it is not encoded
+            final long size = response.getContentEncoding() == null ? response.getContentLength() : -1;
+            try (ByteCountingInputStream received = new ByteCountingInputStream(response.getContent());
+                 InputStream in = Compression.byExtension(new URL(url).getPath()).getUncompressedInputStream(received)) {
+                final GeoJsonReader reader = GeoJsonFileImporter.createReader(url);
+                reader.setArea(area);
+                reader.setInputProgress(received::getCount, size);
+                final DataSet data = reader.doParseDataSet(in, progressMonitor.createSubTaskMonitor(9, false));
+                final String validator = getValidator(response);
+                if (data != null && cache != null && validator != null) {
+                    cache.store(url, validator, variant, data);
+                }
+                return data;
+            }
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private HttpClient.Response connect(final String validator) throws IOException {
+        final HttpClient client = HttpClient.create(new URL(url)).setReasonForRequest("GeoJSON download");
+        if (validator != null && validator.startsWith(ETAG)) {
+            client.setHeader("If-None-Match", validator.substring(ETAG.length()));
+        } else if (validator != null && validator.startsWith(LAST_MODIFIED)) {
+            client.setHeader("If-Modified-Since", validator.substring(LAST_MODIFIED.length()));
+        }
+        activeConnection = client;
+        if (isCanceled()) {
+            throw new IOException(tr("Download of {0} canceled", url));
+        }
+        return client.connect();
+    }
+
+    /**
+     * @return the validator of a response, for the next conditional request, or null if it has none
+     */
+    private static String getValidator(final HttpClient.Response response) {
+        final String etag = response.getHeaderField("ETag");
+        if (etag != null && !etag.isEmpty()) {
+            return ETAG + etag;
+        }
+        final String lastModified = response.getHeaderField("Last-Modified");
+        if (lastModified != null && !lastModified.isEmpty()) {
+            return LAST_MODIFIED + lastModified;
+        }
+        return null;
     }
 }
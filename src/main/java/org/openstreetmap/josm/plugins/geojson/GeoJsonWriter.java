@@ -0,0 +1,250 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+/**
+ * Writer that writes a dataset as a GeoJSON FeatureCollection, with the geometry types created by
+ * {@link GeoJsonReader}:
+ * <ul>
+ *     <li>nodes with tags or without parent way become Points,</li>
+ *     <li>closed ways become Polygons and other ways LineStrings,</li>
+ *     <li>multipolygon relations with one outer ring followed by inner rings become Polygons with holes, and those
+ *     with several outer rings, each followed by the inner rings of its holes, MultiPolygons,</li>
+ *     <li>other relations with a {@code type} tag become features without geometry.</li>
+ * </ul>
+ * A ring is a closed way, or consecutive members with the same role whose ways are joined at their ends, like the
+ * arcs of a TopoJSON polygon. Untagged ways which are only members of such multipolygons are written as part of the
+ * multipolygon only. The tags become the properties of the features, reading the result with {@link GeoJsonReader}
+ * gives the same primitives, except that a ring of several ways becomes one closed way.
+ * <p>
+ * The output is written with a {@link JsonGenerator} while the dataset is traversed, without building a JSON tree.
+ */
+public class GeoJsonWriter {
+
+    private static final String TYPE = "type";
+    private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(null);
+
+    private final DataSet data;
+
+    /**
+     * Constructs a new writer.
+     *
+     * @param data the dataset to write
+     */
+    public GeoJsonWriter(final DataSet data) {
+        this.data = data;
+    }
+
+    /**
+     * Write the dataset to the given stream, encoded in UTF-8. The stream is not closed.
+     *
+     * @param out             the output stream
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     */
+    public void write(final OutputStream out, final ProgressMonitor progressMonitor) {
+        final ProgressMonitor monitor = progressMonitor == null ? NullProgressMonitor.INSTANCE : progressMonitor;
+        monitor.beginTask(tr("Writing GeoJSON…"), 3);
+        // closing the generator would close the stream
+        final JsonGenerator generator = GENERATOR_FACTORY.createGenerator(out, StandardCharsets.UTF_8);
+        try {
+            generator.writeStartObject()
+                .write(TYPE, "FeatureCollection")
+                .writeStartArray("features");
+            for (Node node : data.getNodes()) {
+                if (!node.isDeleted() && node.isLatLonKnown() && (node.hasKeys() || node.getParentWays().isEmpty())) {
+                    writeFeature(generator, node, null);
+                }
+            }
+            monitor.worked(1);
+            final Map<Relation, List<List<List<Node>>>> multipolygons = new HashMap<>();
+            for (Relation relation : data.getRelations()) {
+                final List<List<List<Node>>> polygons = relation.isDeleted() ? null : getPolygons(relation);
+                if (polygons != null) {
+                    multipolygons.put(relation, polygons);
+                }
+            }
+            for (Way way : data.getWays()) {
+                if (!way.isDeleted() && way.getNodesCount() > 0 && !way.isIncomplete()
+                    && (way.hasKeys() || !isMultipolygonRing(way, multipolygons))) {
+                    writeFeature(generator, way, null);
+                }
+            }
+            monitor.worked(1);
+            for (Relation relation : data.getRelations()) {
+                if (!relation.isDeleted() && (multipolygons.containsKey(relation) || relation.hasKey(TYPE))) {
+                    writeFeature(generator, relation, multipolygons.get(relation));
+                }
+            }
+            monitor.worked(1);
+            generator.writeEnd().writeEnd();
+            generator.flush();
+        } finally {
+            monitor.finishTask();
+        }
+    }
+
+    /**
+     * Check if a way is written as a ring of a multipolygon.
+     */
+    private static boolean isMultipolygonRing(final Way way, final Map<Relation, ?> multipolygons) {
+        for (OsmPrimitive referrer : way.getReferrers()) {
+            if (!(referrer instanceof Relation) || referrer.isDeleted() || !multipolygons.containsKey(referrer)) {
+                return false;
+            }
+        }
+        return !way.getReferrers().isEmpty();
+    }
+
+    /**
+     * Get the polygons of a relation with the structure of the multipolygons created by {@link GeoJsonReader}, i.e.
+     * outer rings, each followed by the inner rings of its holes.
+     *
+     * @return the polygons, each a list of rings starting with the outer ring, or null if the relation cannot be
+     * written as a Polygon or MultiPolygon
+     */
+    private static List<List<List<Node>>> getPolygons(final Relation relation) {
+        if ((relation.hasKey(TYPE) && !relation.hasTag(TYPE, "multipolygon")) || relation.getMembersCount() == 0
+            || relation.hasIncompleteMembers()) {
+            return null;
+        }
+        final List<List<List<Node>>> polygons = new ArrayList<>();
+        // the ring being joined, and the number of its ways
+        List<Node> ring = null;
+        boolean outerRing = false;
+        int ringWays = 0;
+        for (RelationMember member : relation.getMembers()) {
+            final boolean outer = "outer".equals(member.getRole());
+            if (!member.isWay() || member.getWay().getNodesCount() < 2 || !(outer || "inner".equals(member.getRole()))) {
+                return null;
+            }
+            if (ring == null) {
+                if (!outer && polygons.isEmpty()) {
+                    return null;
+                }
+                ring = member.getWay().getNodes();
+                outerRing = outer;
+                ringWays = 1;
+            } else if (outer != outerRing || !join(ring, member.getWay().getNodes(), ringWays++ == 1)) {
+                return null;
+            }
+            if (ring.get(0) == ring.get(ring.size() - 1)) {
+                if (outerRing) {
+                    polygons.add(new ArrayList<>());
+                }
+                polygons.get(polygons.size() - 1).add(ring);
+                ring = null;
+            }
+        }
+        return ring == null ? polygons : null;
+    }
+
+    /**
+     * Append the nodes of a way to an open ring, reversed if the way ends where the ring ends.
+     *
+     * @param ring    the nodes of the ring
+     * @param nodes   the nodes of the way
+     * @param reverse if the ring may be reversed to end where the way starts or ends, since it is a single way
+     * @return if the way was joined to the ring
+     */
+    private static boolean join(final List<Node> ring, final List<Node> nodes, final boolean reverse) {
+        final Node last = ring.get(ring.size() - 1);
+        if (last == nodes.get(0)) {
+            ring.addAll(nodes.subList(1, nodes.size()));
+        } else if (last == nodes.get(nodes.size() - 1)) {
+            for (int i = nodes.size() - 2; i >= 0; i--) {
+                ring.add(nodes.get(i));
+            }
+        } else if (reverse && (ring.get(0) == nodes.get(0) || ring.get(0) == nodes.get(nodes.size() - 1))) {
+            Collections.reverse(ring);
+            return join(ring, nodes, false);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeFeature(final JsonGenerator generator, final OsmPrimitive primitive,
+            final List<List<List<Node>>> polygons) {
+        generator.writeStartObject()
+            .write(TYPE, "Feature")
+            .writeStartObject("properties");
+        for (Map.Entry<String, String> tag : primitive.getKeys().entrySet()) {
+            generator.write(tag.getKey(), tag.getValue());
+        }
+        generator.writeEnd();
+        if (primitive instanceof Node) {
+            generator.writeStartObject("geometry").write(TYPE, "Point").writeKey("coordinates");
+            writePosition(generator, (Node) primitive);
+            generator.writeEnd();
+        } else if (primitive instanceof Way) {
+            final Way way = (Way) primitive;
+            if (way.isClosed()) {
+                generator.writeStartObject("geometry").write(TYPE, "Polygon").writeStartArray("coordinates");
+                writeLine(generator, way);
+                generator.writeEnd().writeEnd();
+            } else {
+                generator.writeStartObject("geometry").write(TYPE, "LineString").writeKey("coordinates");
+                writeLine(generator, way);
+                generator.writeEnd();
+            }
+        } else if (polygons != null && polygons.size() == 1) {
+            generator.writeStartObject("geometry").write(TYPE, "Polygon").writeStartArray("coordinates");
+            writePolygon(generator, polygons.get(0));
+            generator.writeEnd().writeEnd();
+        } else if (polygons != null) {
+            generator.writeStartObject("geometry").write(TYPE, "MultiPolygon").writeStartArray("coordinates");
+            for (List<List<Node>> polygon : polygons) {
+                generator.writeStartArray();
+                writePolygon(generator, polygon);
+                generator.writeEnd();
+            }
+            generator.writeEnd().writeEnd();
+        } else {
+            generator.writeNull("geometry");
+        }
+        generator.writeEnd();
+    }
+
+    private static void writePolygon(final JsonGenerator generator, final List<List<Node>> rings) {
+        for (List<Node> ring : rings) {
+            writeLine(generator, ring);
+        }
+    }
+
+    private static void writeLine(final JsonGenerator generator, final Way way) {
+        writeLine(generator, way.getNodes());
+    }
+
+    private static void writeLine(final JsonGenerator generator, final List<Node> nodes) {
+        generator.writeStartArray();
+        for (Node node : nodes) {
+            writePosition(generator, node);
+        }
+        generator.writeEnd();
+    }
+
+    private static void writePosition(final JsonGenerator generator, final Node node) {
+        generator.writeStartArray().write(node.lon()).write(node.lat()).writeEnd();
+    }
+}
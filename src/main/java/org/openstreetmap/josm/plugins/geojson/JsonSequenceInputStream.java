@@ -0,0 +1,157 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a sequence of JSON texts into records, so that each record can be read by a parser of its own.
+ * <p>
+ * Two formats are supported: newline-delimited JSON (GeoJSONL, ndjson), where each line is a record, and JSON text
+ * sequences (RFC 7464, GeoJSONSeq as of RFC 8142), where each record starts with a record separator (RS, 0x1E) and
+ * may span several lines. The format is detected from the first byte which is not whitespace. Empty records are
+ * skipped.
+ * <p>
+ * After {@link #nextRecord()}, this stream returns the bytes of the current record only, and ends at its end. Only
+ * one buffer is held, so records of any size are read with constant memory.
+ */
+final class JsonSequenceInputStream extends InputStream {
+
+    private static final int RS = 0x1E;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    /** If records are delimited by RS only, otherwise also by newlines */
+    private boolean textSequence;
+    private boolean formatKnown;
+    private boolean inRecord;
+    private long records;
+
+    /**
+     * Constructs a new stream.
+     *
+     * @param in the stream with the sequence, which is not closed by this stream
+     */
+    JsonSequenceInputStream(final InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Skip the rest of the current record and move to the next non-empty record.
+     *
+     * @return true if there is a next record, false at the end of the sequence
+     * @throws IOException if the underlying stream cannot be read
+     */
+    boolean nextRecord() throws IOException {
+        while (inRecord) {
+            final int n = read(buffer.length);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+        while (fill()) {
+            final int b = buffer[position] & 0xFF;
+            if (b == RS) {
+                if (!formatKnown) {
+                    textSequence = true;
+                    formatKnown = true;
+                }
+            } else if (!isWhitespace(b)) {
+                formatKnown = true;
+                inRecord = true;
+                records++;
+                return true;
+            }
+            position++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of the current record, starting at 1
+     */
+    long getRecordNumber() {
+        return records;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (read(1) < 0) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        final int n = read(len);
+        if (n > 0) {
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+        }
+        return n;
+    }
+
+    /**
+     * Find the number of bytes of the current record available in the buffer. At the end of the record, the
+     * separator is consumed. For {@code n > 0}, the bytes are left in the buffer at {@link #position}; the caller
+     * advances the position.
+     *
+     * @param max the maximum number of bytes
+     * @return the number of bytes, or -1 at the end of the record
+     */
+    private int read(final int max) throws IOException {
+        if (!inRecord || !fill()) {
+            inRecord = false;
+            return -1;
+        }
+        final int end = (int) Math.min(limit, (long) position + max);
+        for (int i = position; i < end; i++) {
+            final int b = buffer[i];
+            if (b == RS || (b == '\n' && !textSequence)) {
+                if (i == position) {
+                    // keep an RS, it starts the next record
+                    if (b != RS) {
+                        position++;
+                    }
+                    inRecord = false;
+                    return -1;
+                }
+                return i - position;
+            }
+        }
+        return end - position;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        position = 0;
+        limit = 0;
+        int n;
+        do {
+            n = in.read(buffer);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private static boolean isWhitespace(final int b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    @Override
+    public void close() {
+        // the underlying stream is closed by its owner
+    }
+}
@@ -0,0 +1,301 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simplifies the lines and rings of a {@link CoordinateBuffer} with the Douglas-Peucker algorithm, before nodes are
+ * created for them.
+ * <p>
+ * The tolerance is the maximal distance in metres of a removed vertex from the simplified line, measured in a sinusoidal
+ * projection centred on the middle vertex of the line, so that each vertex is scaled by its own latitude. The first and
+ * last vertex of a line are always kept. A ring keeps at least three distinct vertices and is simplified with a smaller
+ * tolerance, or not at all, if the simplified ring would intersect itself. Intersections between different rings are
+ * not checked.
+ * <p>
+ * If vertices are shared, the vertices kept by earlier lines are always kept, and the sections between them are
+ * simplified separately. A border which two geometries share between kept vertices is therefore simplified to the
+ * same vertices in both. Only in this mode, a simplifier must not be used by several threads at once.
+ */
+final class LineSimplifier {
+
+    private static final double EARTH_RADIUS = 6_378_137;
+    /** Number of times a ring is simplified again with half the tolerance, if the result is not valid */
+    private static final int MAX_ATTEMPTS = 4;
+
+    private final double tolerance;
+    /** Positions of the kept vertices, only set if vertices are shared */
+    private final LongObjectMap<Boolean> keptPositions;
+    private final LongAdder removedVertices = new LongAdder();
+    private final LongAdder vertices = new LongAdder();
+
+    /**
+     * Constructs a new simplifier.
+     *
+     * @param tolerance      the tolerance in metres
+     * @param sharedVertices if vertices at the same position are shared between lines
+     */
+    LineSimplifier(final double tolerance, final boolean sharedVertices) {
+        this.tolerance = tolerance;
+        this.keptPositions = sharedVertices ? new LongObjectMap<>() : null;
+    }
+
+    /**
+     * @return if vertices at the same position are shared between lines
+     */
+    boolean isSharedVertices() {
+        return keptPositions != null;
+    }
+
+    /**
+     * @return the number of vertices removed so far
+     */
+    long getRemovedVertexCount() {
+        return removedVertices.sum();
+    }
+
+    /**
+     * @return the number of vertices simplified so far, including the removed ones
+     */
+    long getVertexCount() {
+        return vertices.sum();
+    }
+
+    /**
+     * Simplify a line of a coordinate buffer.
+     *
+     * @param coordinates the buffer
+     * @param start       the index of the first position
+     * @param end         the index after the last position; the last position of a ring is not repeated
+     * @param ring        if the line is a ring
+     * @return the indices of the kept positions, in ascending order
+     */
+    int[] simplify(final CoordinateBuffer coordinates, final int start, final int end, final boolean ring) {
+        final int n = end - start;
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        final double scale = EARTH_RADIUS * Math.PI / 180;
+        final double centralLon = coordinates.lon(start + n / 2);
+        for (int i = 0; i < n; i++) {
+            final double lat = coordinates.lat(start + i);
+            // the difference of longitude across the 180th meridian
+            final double lon = Math.IEEEremainder(coordinates.lon(start + i) - centralLon, 360);
+            x[i] = lon * scale * Math.cos(Math.toRadians(lat));
+            y[i] = lat * scale;
+        }
+
+        final boolean[] pinned = new boolean[n];
+        pinned[0] = true;
+        pinned[n - 1] = !ring;
+        if (ring) {
+            // a second anchor, so that the ring is split into two lines
+            pinned[farthest(x, y, 0, 1, n)] = true;
+        }
+        if (keptPositions != null) {
+            for (int i = 0; i < n; i++) {
+                pinned[i] |= keptPositions.get(positionKey(coordinates, start + i)) != null;
+            }
+        }
+
+        int[] kept = null;
+        double attemptTolerance = tolerance;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && kept == null; attempt++) {
+            kept = simplify(x, y, pinned, ring, attemptTolerance);
+            if (ring && (kept.length < 3 || intersectsItself(x, y, kept))) {
+                kept = null;
+                attemptTolerance /= 2;
+            }
+        }
+        if (kept == null) {
+            kept = new int[n];
+            Arrays.setAll(kept, i -> i);
+        }
+
+        vertices.add(n);
+        removedVertices.add(n - kept.length);
+        for (int i = 0; i < kept.length; i++) {
+            if (keptPositions != null) {
+                keptPositions.put(positionKey(coordinates, start + kept[i]), Boolean.TRUE);
+            }
+            kept[i] += start;
+        }
+        return kept;
+    }
+
+    private static long positionKey(final CoordinateBuffer coordinates, final int i) {
+        return GeoJsonReader.getPositionKey(coordinates.lat(i), coordinates.lon(i));
+    }
+
+    /**
+     * Run Douglas-Peucker on each section between pinned vertices.
+     *
+     * @return the indices of the kept vertices
+     */
+    private static int[] simplify(final double[] x, final double[] y, final boolean[] pinned, final boolean ring,
+            final double tolerance) {
+        final int n = x.length;
+        final boolean[] keep = pinned.clone();
+        // sections as pairs of start and end index, a ring is closed by the section back to the first vertex
+        int[] stack = new int[64];
+        int top = 0;
+        int previous = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n ? ring : pinned[i]) {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = previous;
+                stack[top++] = i;
+                previous = i;
+            }
+        }
+        while (top > 0) {
+            final int last = stack[--top];
+            final int first = stack[--top];
+            if (last - first < 2) {
+                continue;
+            }
+            final int farthest = farthestFromSegment(x, y, first, last);
+            if (distance(x, y, farthest, first, last % n) > tolerance) {
+                keep[farthest] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        int count = 0;
+        for (boolean k : keep) {
+            count += k ? 1 : 0;
+        }
+        final int[] kept = new int[count];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                kept[j++] = i;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return the vertex between {@code first} and {@code last} (exclusive) farthest from the segment between both,
+     * where {@code last} may be the length of the line for the first vertex of a ring
+     */
+    private static int farthestFromSegment(final double[] x, final double[] y, final int first, final int last) {
+        int farthest = first + 1;
+        double max = -1;
+        for (int i = first + 1; i < last; i++) {
+            final double d = distance(x, y, i, first, last % x.length);
+            if (d > max) {
+                max = d;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * @return the vertex in {@code [from, to)} farthest from {@code origin}
+     */
+    private static int farthest(final double[] x, final double[] y, final int origin, final int from, final int to) {
+        int farthest = from;
+        double max = -1;
+        for (int i = from; i < to; i++) {
+            final double d = Math.hypot(x[i] - x[origin], y[i] - y[origin]);
+            if (d > max) {
+                max = d;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * @return the distance of vertex {@code i} from the segment between vertices {@code a} and {@code b}
+     */
+    private static double distance(final double[] x, final double[] y, final int i, final int a, final int b) {
+        final double dx = x[b] - x[a];
+        final double dy = y[b] - y[a];
+        final double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : ((x[i] - x[a]) * dx + (y[i] - y[a]) * dy) / length;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x[i] - (x[a] + t * dx), y[i] - (y[a] + t * dy));
+    }
+
+    /**
+     * Check if a ring intersects itself. The segments are sorted by their smallest x, and each segment is only
+     * compared with the segments whose x range overlaps its own.
+     *
+     * @param kept the indices of the vertices of the ring, which is closed implicitly
+     */
+    static boolean intersectsItself(final double[] x, final double[] y, final int[] kept) {
+        final int m = kept.length;
+        final Integer[] segments = new Integer[m];
+        Arrays.setAll(segments, i -> i);
+        Arrays.sort(segments, (s, t) -> Double.compare(minX(x, kept, s), minX(x, kept, t)));
+        for (int i = 0; i < m; i++) {
+            final int s = segments[i];
+            final double maxX = Math.max(x[kept[s]], x[kept[(s + 1) % m]]);
+            for (int j = i + 1; j < m && minX(x, kept, segments[j]) <= maxX; j++) {
+                final int t = segments[j];
+                if (Math.abs(s - t) == 1 || Math.abs(s - t) == m - 1) {
+                    // adjacent segments share a vertex; they only intersect if they overlap
+                    if (overlapAdjacent(x, y, kept, Math.min(s, t) == 0 && Math.max(s, t) == m - 1 ? m - 1 : Math.min(s, t))) {
+                        return true;
+                    }
+                } else if (intersects(x, y, kept[s], kept[(s + 1) % m], kept[t], kept[(t + 1) % m])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static double minX(final double[] x, final int[] kept, final int segment) {
+        return Math.min(x[kept[segment]], x[kept[(segment + 1) % kept.length]]);
+    }
+
+    /**
+     * Check if a segment and the next one fold back onto each other.
+     */
+    private static boolean overlapAdjacent(final double[] x, final double[] y, final int[] kept, final int segment) {
+        final int m = kept.length;
+        final int a = kept[segment];
+        final int b = kept[(segment + 1) % m];
+        final int c = kept[(segment + 2) % m];
+        final double cross = (x[b] - x[a]) * (y[c] - y[b]) - (y[b] - y[a]) * (x[c] - x[b]);
+        final double dot = (x[b] - x[a]) * (x[c] - x[b]) + (y[b] - y[a]) * (y[c] - y[b]);
+        return cross == 0 && dot < 0;
+    }
+
+    /**
+     * Check if the segments a-b and c-d intersect or touch.
+     */
+    private static boolean intersects(final double[] x, final double[] y, final int a, final int b, final int c, final int d) {
+        final double d1 = orientation(x, y, c, d, a);
+        final double d2 = orientation(x, y, c, d, b);
+        final double d3 = orientation(x, y, a, b, c);
+        final double d4 = orientation(x, y, a, b, d);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return true;
+        }
+        return (d1 == 0 && onSegment(x, y, c, d, a)) || (d2 == 0 && onSegment(x, y, c, d, b))
+            || (d3 == 0 && onSegment(x, y, a, b, c)) || (d4 == 0 && onSegment(x, y, a, b, d));
+    }
+
+    private static double orientation(final double[] x, final double[] y, final int a, final int b, final int c) {
+        return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+    }
+
+    /**
+     * @return if c, which is collinear with a-b, lies on the segment a-b
+     */
+    private static boolean onSegment(final double[] x, final double[] y, final int a, final int b, final int c) {
+        return Math.min(x[a], x[b]) <= x[c] && x[c] <= Math.max(x[a], x[b])
+            && Math.min(y[a], y[b]) <= y[c] && y[c] <= Math.max(y[a], y[b]);
+    }
+}
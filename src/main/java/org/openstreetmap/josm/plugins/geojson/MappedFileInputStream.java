@@ -0,0 +1,159 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input stream of an uncompressed file, which maps the file into memory in windows of up to
+ * {@link #MAX_WINDOW_SIZE} bytes. A read copies the bytes directly from the mapping into the buffer of the reader,
+ * e.g. of {@link Utf8JsonParser}, without a system call and without the intermediate buffers of a
+ * {@link java.io.FileInputStream}.
+ * <p>
+ * A window is unmapped by the garbage collector once it is no longer referenced, which happens when the next window
+ * is mapped or the stream is closed. Until then, the file cannot be deleted on Windows.
+ */
+final class MappedFileInputStream extends InputStream {
+
+    /** Maximal size of a mapped window, the largest size of a {@link MappedByteBuffer} */
+    static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    /** The mapped window, or null before the first read and after the last window */
+    private MappedByteBuffer window;
+    /** Offset of the {@link #window} in the file */
+    private long windowOffset;
+    private long mark = -1;
+
+    /**
+     * Open a file.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be opened
+     */
+    MappedFileInputStream(final Path file) throws IOException {
+        this(file, MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * Open a file, with a smaller window size for testing.
+     *
+     * @param file       the file
+     * @param windowSize the maximal size of a window
+     * @throws IOException if the file cannot be opened
+     */
+    MappedFileInputStream(final Path file, final int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the size of the file
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes read (or skipped) so far
+     */
+    long getPosition() {
+        return window == null ? windowOffset : windowOffset + window.position();
+    }
+
+    /**
+     * Map the window at a position of the file.
+     *
+     * @return if there are bytes left to read
+     */
+    private boolean map(final long position) throws IOException {
+        window = null;
+        windowOffset = Math.min(position, size);
+        if (windowOffset == size) {
+            return false;
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowOffset, Math.min(windowSize, size - windowOffset));
+        return true;
+    }
+
+    /**
+     * @return if there are bytes left to read, mapping the next window if needed
+     */
+    private boolean ensureRemaining() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        return map(getPosition());
+    }
+
+    @Override
+    public int read() throws IOException {
+        return ensureRemaining() ? window.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureRemaining()) {
+            return -1;
+        }
+        final int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long position = getPosition();
+        final long skipped = Math.max(0, Math.min(n, size - position));
+        if (window != null && skipped <= window.remaining()) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            map(position + skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - getPosition());
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readLimit) {
+        mark = getPosition();
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (mark < 0) {
+            throw new IOException("Mark not set");
+        }
+        final long position = getPosition();
+        if (window != null && mark >= windowOffset && mark <= position) {
+            window.position((int) (mark - windowOffset));
+        } else {
+            map(mark);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
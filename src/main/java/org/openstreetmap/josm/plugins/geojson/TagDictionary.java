@@ -0,0 +1,128 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Dictionary which shares equal tag keys and values during one import, so that each distinct string is retained only
+ * once instead of once per feature.
+ * <p>
+ * All keys are shared. Values are shared per key, up to {@link #MAX_VALUES_PER_KEY} distinct values of at most
+ * {@link #MAX_VALUE_LENGTH} characters. Keys with many distinct values (names, house numbers, ids) thus only share
+ * their first values, and the dictionary does not grow with the number of features.
+ * <p>
+ * The dictionary is thread safe, so it can be shared by the tasks of a parallel import.
+ */
+final class TagDictionary {
+
+    /** The maximum number of distinct values kept for one key */
+    static final int MAX_VALUES_PER_KEY = 1024;
+    /** The maximum length of a value to be kept */
+    static final int MAX_VALUE_LENGTH = 64;
+
+    private final Map<String, Entry> dictionary = new ConcurrentHashMap<>();
+    private final LongAdder keyLookups = new LongAdder();
+    private final LongAdder keyHits = new LongAdder();
+    private final LongAdder valueLookups = new LongAdder();
+    private final LongAdder valueHits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * A shared key and its shared values.
+     */
+    private static final class Entry {
+        final String key;
+        final Map<String, String> values = new ConcurrentHashMap<>();
+
+        Entry(final String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Get the shared instance of a key.
+     *
+     * @param key the key
+     * @return the shared string equal to {@code key}
+     */
+    String key(final String key) {
+        keyLookups.increment();
+        final Entry entry = dictionary.get(key);
+        if (entry != null) {
+            hit(keyHits, key);
+            return entry.key;
+        }
+        final Entry previous = dictionary.putIfAbsent(key, new Entry(key));
+        return previous == null ? key : previous.key;
+    }
+
+    /**
+     * Get the shared instance of a value.
+     *
+     * @param key   the key of the value
+     * @param value the value
+     * @return the shared string equal to {@code value}, or {@code value} if it is not kept in the dictionary
+     */
+    String value(final String key, final String value) {
+        valueLookups.increment();
+        final Entry entry = dictionary.get(key);
+        if (entry == null || value.length() > MAX_VALUE_LENGTH) {
+            return value;
+        }
+        final Map<String, String> values = entry.values;
+        final String shared = values.get(value);
+        if (shared != null) {
+            hit(valueHits, value);
+            return shared;
+        }
+        if (values.size() < MAX_VALUES_PER_KEY) {
+            final String previous = values.putIfAbsent(value, value);
+            return previous == null ? value : previous;
+        }
+        return value;
+    }
+
+    private void hit(final LongAdder hits, final String string) {
+        hits.increment();
+        // String object and char array headers plus the characters, as retained by a Java 8 VM
+        savedBytes.add(24 + ((16 + 2L * string.length() + 7) & ~7));
+    }
+
+    /**
+     * @return the estimated number of bytes which are not retained because a shared string was used
+     */
+    long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    /**
+     * @return the share of key lookups which found a key in the dictionary, between 0 and 1
+     */
+    double getKeyHitRate() {
+        return rate(keyHits, keyLookups);
+    }
+
+    /**
+     * @return the share of value lookups which found a value in the dictionary, between 0 and 1
+     */
+    double getValueHitRate() {
+        return rate(valueHits, valueLookups);
+    }
+
+    private static double rate(final LongAdder hits, final LongAdder lookups) {
+        final long total = lookups.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d keys, %.1f%% key hits, %.1f%% value hits, %s saved",
+            dictionary.size(), 100 * getKeyHitRate(), 100 * getValueHitRate(),
+            Utils.getSizeString(getSavedBytes(), Locale.getDefault()));
+    }
+}
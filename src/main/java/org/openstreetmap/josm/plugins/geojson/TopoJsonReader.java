@@ -0,0 +1,456 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Reader of a TopoJSON topology, see https://github.com/topojson/topojson-specification, for a
+ * {@link GeoJsonReader} which finds a root object of type {@code Topology}.
+ * <p>
+ * The arcs are decoded into a {@link CoordinateBuffer}, and the nodes of an arc are created only once, when the
+ * first geometry uses it. Arcs which meet at an end share the node there. A line becomes a way over the nodes of its
+ * arcs. A polygon whose only ring is an arc of its own becomes a closed way; all other polygons become multipolygon
+ * relations whose members are the ways of the arcs, one way per arc, which are shared with the adjacent polygons.
+ * <p>
+ * The members of the {@code objects} and of their GeometryCollections are the features; their {@code properties}
+ * become the tags. Their geometries only refer to the arcs, so they are read as tree, after the arcs. If the import is
+ * restricted to an area, a geometry is only converted if the envelope of its positions intersects it, like in GeoJSON.
+ */
+final class TopoJsonReader {
+
+    /** The type of the root object of a TopoJSON file */
+    static final String TOPOLOGY = "Topology";
+    /** The member of the root object with the arcs */
+    static final String ARCS = "arcs";
+
+    private static final String OBJECTS = "objects";
+    private static final String TRANSFORM = "transform";
+    private static final String GEOMETRIES = "geometries";
+    private static final String COORDINATES = "coordinates";
+    private static final String PROPERTIES = "properties";
+    private static final String TYPE = "type";
+
+    private final GeoJsonReader reader;
+    /** The arcs, each as one line, quantized until {@link #read(JsonObject)} */
+    private final CoordinateBuffer arcs = new CoordinateBuffer();
+    private boolean arcsRead;
+    /** The nodes of each arc, once a geometry uses it */
+    private Node[][] arcNodes;
+    /** The way of each arc, once a multipolygon uses it */
+    private Way[] arcWays;
+    /** Number of times each arc is used by the rings of the polygons */
+    private int[] ringArcUses;
+    /** Nodes at the ends of the arcs, by their rounded position */
+    private final LongObjectMap<Node> arcEnds = new LongObjectMap<>();
+    /* The transform of quantized positions, the identity if the topology is not quantized */
+    private double scaleLat = 1;
+    private double scaleLon = 1;
+    private double translateLat;
+    private double translateLon;
+
+    /**
+     * Create a reader for a topology, whose primitives are created by a GeoJSON reader.
+     *
+     * @param reader the GeoJSON reader
+     */
+    TopoJsonReader(final GeoJsonReader reader) {
+        this.reader = reader;
+        // the features share the primitives of their arcs, so they cannot be replaced one by one
+        reader.setFingerprints(null);
+    }
+
+    /**
+     * Read the arcs from the parser events, before the other members of the topology.
+     *
+     * @param parser the parser, whose current event is the {@code START_ARRAY} of the arcs
+     */
+    void readArcs(final JsonParser parser) {
+        arcs.read(parser, 3);
+        arcsRead = true;
+    }
+
+    /**
+     * Convert a topology.
+     *
+     * @param topology the topology, whose {@code arcs} may have been read by {@link #readArcs(JsonParser)} instead
+     */
+    void read(final JsonObject topology) {
+        if (!arcsRead) {
+            final JsonValue arcArray = topology.get(ARCS);
+            arcs.read(arcArray instanceof JsonArray ? (JsonArray) arcArray : null, 3);
+        }
+        final JsonValue transform = topology.get(TRANSFORM);
+        final boolean quantized = transform instanceof JsonObject;
+        if (quantized) {
+            final double[] scale = getPair(transform.asJsonObject().get("scale"), 1);
+            final double[] translate = getPair(transform.asJsonObject().get("translate"), 0);
+            scaleLon = scale[0];
+            scaleLat = scale[1];
+            translateLon = translate[0];
+            translateLat = translate[1];
+        }
+        arcs.dequantize(scaleLat, scaleLon, translateLat, translateLon, quantized);
+        arcNodes = new Node[arcs.lineCount()][];
+        arcWays = new Way[arcs.lineCount()];
+        ringArcUses = new int[arcs.lineCount()];
+
+        final JsonValue objects = topology.get(OBJECTS);
+        if (objects instanceof JsonObject) {
+            for (JsonValue object : objects.asJsonObject().values()) {
+                countRingArcUses(object);
+            }
+            for (JsonValue object : objects.asJsonObject().values()) {
+                readObject(object);
+            }
+        }
+    }
+
+    /**
+     * @return the two numbers of a transform member, or the default for both if it is not a pair of numbers
+     */
+    private static double[] getPair(final JsonValue pair, final double defaultValue) {
+        if (pair instanceof JsonArray && ((JsonArray) pair).size() >= 2 && ((JsonArray) pair).get(0) instanceof JsonNumber
+                && ((JsonArray) pair).get(1) instanceof JsonNumber) {
+            return new double[] {((JsonArray) pair).getJsonNumber(0).doubleValue(), ((JsonArray) pair).getJsonNumber(1).doubleValue()};
+        }
+        return new double[] {defaultValue, defaultValue};
+    }
+
+    private static String getType(final JsonObject geometry) {
+        final JsonValue type = geometry.get(TYPE);
+        return type instanceof JsonString ? ((JsonString) type).getString() : null;
+    }
+
+    /**
+     * Count how often the rings use each arc, so a ring of an arc which is not shared becomes a closed way.
+     */
+    private void countRingArcUses(final JsonValue object) {
+        if (!(object instanceof JsonObject)) {
+            return;
+        }
+        final JsonObject geometry = object.asJsonObject();
+        final String type = getType(geometry);
+        if ("GeometryCollection".equals(type) && geometry.get(GEOMETRIES) instanceof JsonArray) {
+            geometry.getJsonArray(GEOMETRIES).forEach(this::countRingArcUses);
+        } else if ("Polygon".equals(type) || "MultiPolygon".equals(type)) {
+            for (JsonArray polygon : getPolygons(geometry, type)) {
+                for (JsonValue ring : polygon) {
+                    final int[] ringArcs = getArcs(ring);
+                    if (ringArcs != null) {
+                        for (int id : ringArcs) {
+                            ringArcUses[arcIndex(id)]++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a member of the {@code objects} of the topology, or of a GeometryCollection, as feature.
+     */
+    private void readObject(final JsonValue object) {
+        if (!(object instanceof JsonObject)) {
+            reader.report(GeoJsonDiagnostics.Kind.NULL_GEOMETRY, () -> null);
+            return;
+        }
+        final JsonObject geometry = object.asJsonObject();
+        final String type = getType(geometry);
+        if ("GeometryCollection".equals(type)) {
+            final JsonValue geometries = geometry.get(GEOMETRIES);
+            if (geometries instanceof JsonArray) {
+                geometries.asJsonArray().forEach(this::readObject);
+            }
+            return;
+        }
+        if (!reader.startFeature(geometry.get(PROPERTIES), type)) {
+            return;
+        } else if (type == null) {
+            reader.report(GeoJsonDiagnostics.Kind.NULL_GEOMETRY, () -> null);
+            return;
+        }
+        final List<OsmPrimitive> primitives = new ArrayList<>();
+        switch (type) {
+            case "Point":
+            case "MultiPoint":
+                readPoints(geometry.get(COORDINATES), "Point".equals(type), primitives);
+                break;
+            case "LineString":
+            case "MultiLineString":
+                readLines(geometry, "LineString".equals(type), primitives);
+                break;
+            case "Polygon":
+            case "MultiPolygon":
+                readPolygons(getPolygons(geometry, type), primitives);
+                break;
+            default:
+                reader.report(GeoJsonDiagnostics.Kind.UNKNOWN_GEOMETRY, () -> GeoJsonDiagnostics.abbreviate(geometry));
+        }
+        if (!primitives.isEmpty()) {
+            final Map<String, String> tags = reader.getTags(geometry);
+            for (OsmPrimitive primitive : primitives) {
+                primitive.setKeys(tags);
+                if (primitive instanceof Relation && !tags.containsKey(TYPE)) {
+                    primitive.put(TYPE, "multipolygon");
+                }
+            }
+        }
+        reader.commitFullBatch();
+    }
+
+    private void readPoints(final JsonValue coordinates, final boolean single, final List<OsmPrimitive> primitives) {
+        final List<JsonValue> positions = !(coordinates instanceof JsonArray) ? Collections.emptyList()
+            : single ? Collections.singletonList(coordinates) : coordinates.asJsonArray();
+        final List<double[]> points = new ArrayList<>(positions.size());
+        final Envelope envelope = new Envelope();
+        for (JsonValue position : positions) {
+            final double[] point = getPair(position, Double.NaN);
+            if (!Double.isNaN(point[0]) && !Double.isNaN(point[1])) {
+                final double lat = point[1] * scaleLat + translateLat;
+                final double lon = point[0] * scaleLon + translateLon;
+                points.add(new double[] {lat, lon});
+                envelope.add(lat, lon);
+            }
+        }
+        if (envelope.intersects(reader.getArea())) {
+            for (double[] point : points) {
+                primitives.add(reader.createNode(point[0], point[1]));
+            }
+        }
+    }
+
+    private void readLines(final JsonObject geometry, final boolean single, final List<OsmPrimitive> primitives) {
+        final JsonValue lines = geometry.get(ARCS);
+        final List<JsonValue> lineArcs = !(lines instanceof JsonArray) ? Collections.emptyList()
+            : single ? Collections.singletonList(lines) : lines.asJsonArray();
+        final List<int[]> validLines = new ArrayList<>(lineArcs.size());
+        final Envelope envelope = new Envelope();
+        for (JsonValue line : lineArcs) {
+            final int[] ids = getArcs(line);
+            if (ids == null) {
+                reportInvalidArcs(geometry);
+            } else if (ids.length > 0) {
+                validLines.add(ids);
+                envelope.addArcs(ids);
+            }
+        }
+        if (envelope.intersects(reader.getArea())) {
+            for (int[] ids : validLines) {
+                final Way way = new Way();
+                way.setNodes(getNodes(ids));
+                primitives.add(reader.addPrimitive(way));
+            }
+        }
+    }
+
+    /**
+     * @return the polygons of a Polygon or MultiPolygon, each an array of rings
+     */
+    private static List<JsonArray> getPolygons(final JsonObject geometry, final String type) {
+        final JsonValue polygons = geometry.get(ARCS);
+        if (!(polygons instanceof JsonArray)) {
+            return Collections.emptyList();
+        } else if ("Polygon".equals(type)) {
+            return Collections.singletonList(polygons.asJsonArray());
+        }
+        final List<JsonArray> result = new ArrayList<>();
+        for (JsonValue polygon : polygons.asJsonArray()) {
+            if (polygon instanceof JsonArray) {
+                result.add(polygon.asJsonArray());
+            }
+        }
+        return result;
+    }
+
+    private void readPolygons(final List<JsonArray> polygons, final List<OsmPrimitive> primitives) {
+        // check all rings before any arc way is created, so an invalid ring leaves no ways of the others behind
+        final List<int[]> rings = new ArrayList<>();
+        final List<String> roles = new ArrayList<>();
+        for (JsonArray polygon : polygons) {
+            for (int ring = 0; ring < polygon.size(); ring++) {
+                final int[] ids = getArcs(polygon.get(ring));
+                if (ids == null) {
+                    reportInvalidArcs(polygon);
+                    return;
+                }
+                rings.add(ids);
+                roles.add(ring == 0 ? "outer" : "inner");
+            }
+        }
+        final Envelope envelope = new Envelope();
+        rings.forEach(envelope::addArcs);
+        if (!envelope.intersects(reader.getArea())) {
+            return;
+        }
+        final List<RelationMember> members = new ArrayList<>();
+        int firstArc = -1;
+        for (int ring = 0; ring < rings.size(); ring++) {
+            for (int id : rings.get(ring)) {
+                firstArc = firstArc < 0 ? arcIndex(id) : firstArc;
+                members.add(new RelationMember(roles.get(ring), getArcWay(arcIndex(id))));
+            }
+        }
+        if (members.size() == 1 && ringArcUses[firstArc] == 1) {
+            // a ring of its own, like a polygon of GeoJSON
+            primitives.add(members.get(0).getWay());
+        } else if (!members.isEmpty()) {
+            final Relation multipolygon = new Relation();
+            multipolygon.setMembers(members);
+            primitives.add(reader.addPrimitive(multipolygon));
+        }
+    }
+
+    private void reportInvalidArcs(final JsonValue geometry) {
+        reader.report(GeoJsonDiagnostics.Kind.INVALID_ARC, () -> GeoJsonDiagnostics.abbreviate(geometry));
+    }
+
+    /**
+     * Get the arc indices of a line or ring. A negative index {@code ~i} refers to the arc {@code i} in reverse.
+     *
+     * @return the indices, or null if they are not valid or refer to an arc with less than two positions
+     */
+    private int[] getArcs(final JsonValue line) {
+        if (!(line instanceof JsonArray)) {
+            return null;
+        }
+        final JsonArray array = line.asJsonArray();
+        final int[] ids = new int[array.size()];
+        for (int i = 0; i < ids.length; i++) {
+            final JsonValue id = array.get(i);
+            if (!(id instanceof JsonNumber) || !((JsonNumber) id).isIntegral()) {
+                return null;
+            }
+            ids[i] = ((JsonNumber) id).intValue();
+            final int arc = arcIndex(ids[i]);
+            if (arc >= arcNodes.length || arcs.lineEnd(arc) - arcs.lineStart(arc) < 2) {
+                return null;
+            }
+        }
+        return ids;
+    }
+
+    private static int arcIndex(final int id) {
+        return id < 0 ? ~id : id;
+    }
+
+    /**
+     * Get the nodes of a line of arcs, without repeating the node where one arc ends and the next one starts.
+     */
+    private List<Node> getNodes(final int[] ids) {
+        final List<Node> nodes = new ArrayList<>();
+        for (int id : ids) {
+            final Node[] arc = getArcNodes(arcIndex(id));
+            for (int i = 0; i < arc.length; i++) {
+                final Node node = arc[id < 0 ? arc.length - 1 - i : i];
+                if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node) {
+                    nodes.add(node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Get the way of an arc, which is created when it is first used.
+     */
+    private Way getArcWay(final int arc) {
+        if (arcWays[arc] == null) {
+            final Way way = new Way();
+            way.setNodes(getNodes(new int[] {arc}));
+            arcWays[arc] = reader.addPrimitive(way);
+        }
+        return arcWays[arc];
+    }
+
+    /**
+     * Get the nodes of an arc, which are created when it is first used. The nodes at its ends are shared with the
+     * other arcs which end at the same position.
+     */
+    private Node[] getArcNodes(final int arc) {
+        if (arcNodes[arc] == null) {
+            final int start = arcs.lineStart(arc);
+            final int end = arcs.lineEnd(arc);
+            // the last vertices before the end at its position are represented by the end node
+            int last = end - 1;
+            while (last - 1 > start && arcs.isSamePosition(last - 1, end - 1)) {
+                last--;
+            }
+            final List<Node> nodes = new ArrayList<>(end - start);
+            nodes.add(getArcEnd(arcs.lat(start), arcs.lon(start)));
+            for (int i = start + 1; i < last; i++) {
+                if (!arcs.isSamePosition(i, i - 1)) {
+                    nodes.add(reader.createNode(arcs.lat(i), arcs.lon(i)));
+                }
+            }
+            if (end - 1 > start) {
+                nodes.add(getArcEnd(arcs.lat(end - 1), arcs.lon(end - 1)));
+            }
+            arcNodes[arc] = nodes.toArray(new Node[0]);
+        }
+        return arcNodes[arc];
+    }
+
+    private Node getArcEnd(final double lat, final double lon) {
+        if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            return reader.createNode(lat, lon);
+        }
+        final long key = GeoJsonReader.getPositionKey(lat, lon);
+        Node node = arcEnds.get(key);
+        if (node == null) {
+            node = reader.createNode(lat, lon);
+            arcEnds.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * The envelope of the positions of a geometry, which is checked against the area of the {@link #reader}.
+     */
+    private final class Envelope {
+        private double minLat = Double.POSITIVE_INFINITY;
+        private double minLon = Double.POSITIVE_INFINITY;
+        private double maxLat = Double.NEGATIVE_INFINITY;
+        private double maxLon = Double.NEGATIVE_INFINITY;
+
+        void add(final double lat, final double lon) {
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+        }
+
+        void addArcs(final int[] ids) {
+            for (int id : ids) {
+                final int arc = arcIndex(id);
+                for (int i = arcs.lineStart(arc); i < arcs.lineEnd(arc); i++) {
+                    add(arcs.lat(i), arcs.lon(i));
+                }
+            }
+        }
+
+        /**
+         * @param area the area, or null if the import is not restricted to one
+         * @return if the envelope intersects the area, always true without an area
+         */
+        boolean intersects(final Bounds area) {
+            return area == null || (minLat <= maxLat && CoordinateBuffer.intersects(area, minLat, minLon, maxLat, maxLon));
+        }
+    }
+}
@@ -0,0 +1,905 @@
+// License: Apache 2.0. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.geojson;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonLocation;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * JSON parser which reads UTF-8 bytes directly, without decoding the input to characters first.
+ * <p>
+ * Compared with the javax.json parser, strings are only decoded when they are requested (short ASCII strings like
+ * keys and geometry types are shared), numbers are parsed to a double without creating a {@link BigDecimal} (see
+ * {@link #getDouble()}), and {@link #skipArray()} and {@link #skipObject()} scan the bytes without tokenizing them.
+ * The events and values are the same as those of the javax.json parser, which remains the reference. Input which is
+ * not UTF-8 is handed to the javax.json parser, see {@link #FACTORY}.
+ * <p>
+ * The location of an event only has the stream offset, the line and column are not tracked.
+ */
+final class Utf8JsonParser implements JsonParser {
+
+    /**
+     * Factory of parsers for UTF-8 byte streams. Input streams in another encoding (detected like RFC 4627 does, by
+     * the zero bytes of UTF-16 and UTF-32), readers and JSON values are parsed by the javax.json parser.
+     */
+    static final JsonParserFactory FACTORY = new Factory();
+
+    private static final JsonParserFactory REFERENCE_FACTORY = Json.createParserFactory(null);
+    private static final JsonBuilderFactory BUILDER_FACTORY = Json.createBuilderFactory(null);
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Exactly representable powers of ten, for the fast path of {@link #getDouble()} */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22
+    };
+    /** Largest mantissa which is exactly representable as double */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** Number of digits of a number which always fit into a long */
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final int STRING_CACHE_SIZE = 1024;
+    private static final int MAX_CACHED_STRING_LENGTH = 32;
+
+    /* Containers on the stack */
+    private static final byte OBJECT = 1;
+    private static final byte ARRAY = 2;
+
+    /* States, i.e. what the next token may be */
+    private static final int VALUE = 0;
+    private static final int KEY_OR_END = 1;
+    private static final int VALUE_OR_END = 2;
+    private static final int COMMA_OR_END = 3;
+    private static final int COLON = 4;
+    private static final int DONE = 5;
+
+    private final InputStream in;
+    private byte[] buffer;
+    /** Index of the next byte to read in the {@link #buffer} */
+    private int position;
+    /** Index after the last byte read into the {@link #buffer} */
+    private int limit;
+    /** Offset of the start of the {@link #buffer} in the stream */
+    private long bufferOffset;
+    private boolean eof;
+
+    private byte[] stack = new byte[32];
+    private int depth;
+    private int state = VALUE;
+    private Event event;
+    /** The string of a {@code KEY_NAME} event, or of a {@code VALUE_STRING} event once it is decoded */
+    private String string;
+    /**
+     * The bytes of the number of a {@code VALUE_NUMBER} event, or of the string of a {@code VALUE_STRING} event, which
+     * are valid until the next event
+     */
+    private int valueStart;
+    private int valueEnd;
+    private boolean integral;
+    /* Properties of the bytes of a string, see scanString() */
+    private int stringHash;
+    private boolean stringAscii;
+    private boolean stringEscaped;
+    private final String[] stringCache = new String[STRING_CACHE_SIZE];
+
+    /**
+     * Creates a parser.
+     *
+     * @param in     the UTF-8 input, without byte order mark
+     * @param prefix the first bytes of the input, which were already read from {@code in}
+     * @param offset the offset of the prefix in the array
+     * @param length the length of the prefix
+     */
+    private Utf8JsonParser(final InputStream in, final byte[] prefix, final int offset, final int length) {
+        this.in = in;
+        this.buffer = new byte[Math.max(BUFFER_SIZE, length)];
+        System.arraycopy(prefix, offset, buffer, 0, length);
+        this.limit = length;
+        this.bufferOffset = offset;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (state != DONE) {
+            return true;
+        }
+        final int c = peekNonWhitespace();
+        if (c < 0) {
+            return false;
+        }
+        throw unexpected(c);
+    }
+
+    @Override
+    public Event next() {
+        final int c = peekNonWhitespace();
+        switch (state) {
+            case VALUE:
+                return readValue(c);
+            case KEY_OR_END:
+                if (c == '}') {
+                    position++;
+                    return end(Event.END_OBJECT);
+                }
+                return readKey(c);
+            case VALUE_OR_END:
+                if (c == ']') {
+                    position++;
+                    return end(Event.END_ARRAY);
+                }
+                return readValue(c);
+            case COMMA_OR_END:
+                final boolean inObject = stack[depth - 1] == OBJECT;
+                if (c == ',') {
+                    position++;
+                    return inObject ? readKey(peekNonWhitespace()) : readValue(peekNonWhitespace());
+                } else if (c == (inObject ? '}' : ']')) {
+                    position++;
+                    return end(inObject ? Event.END_OBJECT : Event.END_ARRAY);
+                }
+                throw unexpected(c);
+            case COLON:
+                if (c != ':') {
+                    throw unexpected(c);
+                }
+                position++;
+                return readValue(peekNonWhitespace());
+            default:
+                throw new NoSuchElementException();
+        }
+    }
+
+    private Event readKey(final int c) {
+        if (c != '"') {
+            throw unexpected(c);
+        }
+        position++;
+        string = readString();
+        state = COLON;
+        return event = Event.KEY_NAME;
+    }
+
+    private Event readValue(final int c) {
+        switch (c) {
+            case '{':
+                position++;
+                push(OBJECT);
+                state = KEY_OR_END;
+                return event = Event.START_OBJECT;
+            case '[':
+                position++;
+                push(ARRAY);
+                state = VALUE_OR_END;
+                return event = Event.START_ARRAY;
+            case '"':
+                // only decoded when requested, see getString()
+                position++;
+                scanString();
+                string = null;
+                return value(Event.VALUE_STRING);
+            case 't':
+                readLiteral("true");
+                return value(Event.VALUE_TRUE);
+            case 'f':
+                readLiteral("false");
+                return value(Event.VALUE_FALSE);
+            case 'n':
+                readLiteral("null");
+                return value(Event.VALUE_NULL);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber();
+                    return value(Event.VALUE_NUMBER);
+                }
+                throw unexpected(c);
+        }
+    }
+
+    private Event value(final Event value) {
+        state = depth == 0 ? DONE : COMMA_OR_END;
+        return event = value;
+    }
+
+    private Event end(final Event end) {
+        depth--;
+        return value(end);
+    }
+
+    private void push(final byte container) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * depth);
+        }
+        stack[depth++] = container;
+    }
+
+    /**
+     * Read more input into the buffer. The bytes before the {@link #position} (or before the current number) are
+     * discarded, so indices into the buffer must be taken relative to the position across this call.
+     *
+     * @return if more bytes were read
+     */
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        // keep the bytes of the current value, which may be requested after hasNext()
+        final boolean keepValue = event == Event.VALUE_NUMBER || (event == Event.VALUE_STRING && string == null);
+        final int keep = keepValue ? Math.min(valueStart, position) : position;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            bufferOffset += keep;
+            limit -= keep;
+            position -= keep;
+            valueStart -= keep;
+            valueEnd -= keep;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        try {
+            int n;
+            do {
+                n = in.read(buffer, limit, buffer.length - limit);
+            } while (n == 0);
+            if (n < 0) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new JsonException("I/O error while parsing JSON", e);
+        }
+    }
+
+    /**
+     * @return the next byte which is not whitespace, without consuming it, or -1 at the end of the input
+     */
+    private int peekNonWhitespace() {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            final byte b = buffer[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b & 0xFF;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Read a string, whose opening quote was consumed.
+     */
+    private String readString() {
+        scanString();
+        return decodeString();
+    }
+
+    /**
+     * Consume a string, whose opening quote was consumed, and check its escape sequences. The string is not decoded,
+     * its bytes are from {@link #valueStart} to {@link #valueEnd} afterwards, see {@link #decodeString()}.
+     */
+    private void scanString() {
+        int i = position;
+        int hash = 0;
+        boolean ascii = true;
+        boolean escaped = false;
+        while (true) {
+            if (i == limit) {
+                final int read = i - position;
+                if (!fill()) {
+                    throw error("Unexpected end of input in a string");
+                }
+                i = position + read;
+            }
+            final byte b = buffer[i];
+            if (b == '"') {
+                break;
+            } else if (b == '\\') {
+                escaped = true;
+                i = checkEscape(i);
+                continue;
+            } else if (b >= 0 && b < 0x20) {
+                throw error("Unexpected control character in a string");
+            }
+            ascii &= b >= 0;
+            hash = 31 * hash + b;
+            i++;
+        }
+        valueStart = position;
+        valueEnd = i;
+        stringHash = hash;
+        stringAscii = ascii;
+        stringEscaped = escaped;
+        position = i + 1;
+    }
+
+    /**
+     * Check the escape sequence at an index, reading more input if needed.
+     *
+     * @param escape the index of the backslash
+     * @return the index after the escape sequence
+     */
+    private int checkEscape(final int escape) {
+        int i = escape;
+        while (limit - i < 2) {
+            final int read = i - position;
+            if (!fill()) {
+                throw error("Unexpected end of input in a string");
+            }
+            i = position + read;
+        }
+        switch (buffer[i + 1]) {
+            case '"':
+            case '\\':
+            case '/':
+            case 'b':
+            case 'f':
+            case 'n':
+            case 'r':
+            case 't':
+                return i + 2;
+            case 'u':
+                while (limit - i < 6) {
+                    final int read = i - position;
+                    if (!fill()) {
+                        throw error("Unexpected end of input in a string");
+                    }
+                    i = position + read;
+                }
+                for (int j = i + 2; j < i + 6; j++) {
+                    if (Character.digit(buffer[j], 16) < 0) {
+                        throw error("Invalid unicode escape sequence");
+                    }
+                }
+                return i + 6;
+            default:
+                throw error("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Decode the string scanned by {@link #scanString()}.
+     */
+    private String decodeString() {
+        final int length = valueEnd - valueStart;
+        if (!stringEscaped) {
+            return stringAscii ? getAsciiString(valueStart, length, stringHash)
+                : new String(buffer, valueStart, length, StandardCharsets.UTF_8);
+        }
+        final StringBuilder result = new StringBuilder(length);
+        int segment = valueStart;
+        int i = valueStart;
+        while (i < valueEnd) {
+            if (buffer[i] == '\\') {
+                result.append(new String(buffer, segment, i - segment, StandardCharsets.UTF_8));
+                i = decodeEscape(i, result);
+                segment = i;
+            } else {
+                i++;
+            }
+        }
+        return result.append(new String(buffer, segment, valueEnd - segment, StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Get an ASCII string from the buffer, which is shared with equal earlier strings if it is short.
+     */
+    private String getAsciiString(final int start, final int length, final int hash) {
+        if (length > MAX_CACHED_STRING_LENGTH) {
+            return new String(buffer, start, length, StandardCharsets.ISO_8859_1);
+        }
+        final int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        final String cached = stringCache[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == buffer[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return cached;
+            }
+        }
+        final String result = new String(buffer, start, length, StandardCharsets.ISO_8859_1);
+        stringCache[slot] = result;
+        return result;
+    }
+
+    /**
+     * Decode an escape sequence checked by {@link #checkEscape(int)}.
+     *
+     * @param escape the index of the backslash
+     * @param result the decoded string, to which the character is appended
+     * @return the index after the escape sequence
+     */
+    private int decodeEscape(final int escape, final StringBuilder result) {
+        final byte b = buffer[escape + 1];
+        switch (b) {
+            case 'b':
+                result.append('\b');
+                break;
+            case 'f':
+                result.append('\f');
+                break;
+            case 'n':
+                result.append('\n');
+                break;
+            case 'r':
+                result.append('\r');
+                break;
+            case 't':
+                result.append('\t');
+                break;
+            case 'u':
+                int c = 0;
+                for (int i = escape + 2; i < escape + 6; i++) {
+                    c = c << 4 | Character.digit(buffer[i], 16);
+                }
+                result.append((char) c);
+                return escape + 6;
+            default:
+                result.append((char) b);
+        }
+        return escape + 2;
+    }
+
+    private void readLiteral(final String literal) {
+        while (limit - position < literal.length()) {
+            if (!fill()) {
+                throw error("Unexpected end of input");
+            }
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (buffer[position + i] != literal.charAt(i)) {
+                throw unexpected(buffer[position] & 0xFF);
+            }
+        }
+        position += literal.length();
+    }
+
+    /**
+     * Read the bytes of a number, and check its syntax.
+     */
+    private void readNumber() {
+        int i = position;
+        boolean fractionOrExponent = false;
+        while (true) {
+            if (i == limit) {
+                final int read = i - position;
+                if (!fill()) {
+                    break;
+                }
+                i = position + read;
+            }
+            final byte b = buffer[i];
+            if (b == '.' || b == 'e' || b == 'E') {
+                fractionOrExponent = true;
+            } else if ((b < '0' || b > '9') && b != '-' && b != '+') {
+                break;
+            }
+            i++;
+        }
+        valueStart = position;
+        valueEnd = i;
+        integral = !fractionOrExponent;
+        if (!isValidNumber(valueStart, valueEnd)) {
+            throw error("Invalid number " + new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1));
+        }
+        position = i;
+    }
+
+    /**
+     * Check the syntax {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?} of a number.
+     */
+    private boolean isValidNumber(final int start, final int end) {
+        int i = start;
+        if (i < end && buffer[i] == '-') {
+            i++;
+        }
+        if (i < end && buffer[i] == '0') {
+            i++;
+        } else {
+            final int digits = i;
+            i = skipDigits(i, end);
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < end && buffer[i] == '.') {
+            final int digits = ++i;
+            i = skipDigits(i, end);
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+            if (i < end && (buffer[i] == '+' || buffer[i] == '-')) {
+                i++;
+            }
+            final int digits = i;
+            i = skipDigits(i, end);
+            if (i == digits) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    private int skipDigits(final int start, final int end) {
+        int i = start;
+        while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Get the value of the current {@code VALUE_NUMBER} event as double, like {@code JsonParser.getLong()} for
+     * integral numbers of at most 18 digits and like {@code getBigDecimal().doubleValue()} for all others, but
+     * without creating a {@code BigDecimal} or a string for most numbers.
+     * <p>
+     * A number with at most 18 significant digits is read into a long mantissa and a decimal exponent. If the
+     * mantissa and the power of ten of the exponent are both exactly representable as double, a single correctly
+     * rounded multiplication or division gives the correctly rounded result (Clinger's fast path). Other numbers are
+     * parsed by {@link Double#parseDouble(String)}, which is correctly rounded as well.
+     *
+     * @return the value
+     */
+    double getDouble() {
+        checkNumber();
+        int i = valueStart;
+        final boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (integral && valueEnd - i <= MAX_LONG_DIGITS) {
+            // longer integers would not fit into a long, they are read like other numbers
+            return getLong();
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        for (; i < valueEnd && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            if (digits < MAX_LONG_DIGITS) {
+                mantissa = 10 * mantissa + buffer[i] - '0';
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                truncated |= buffer[i] != '0';
+                exponent++;
+            }
+        }
+        if (i < valueEnd && buffer[i] == '.') {
+            for (i++; i < valueEnd && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                if (digits < MAX_LONG_DIGITS) {
+                    mantissa = 10 * mantissa + buffer[i] - '0';
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                } else {
+                    truncated |= buffer[i] != '0';
+                }
+            }
+        }
+        if (i < valueEnd) {
+            // the exponent, which is too large for the fast path if it has many digits
+            i++;
+            final boolean negativeExponent = buffer[i] == '-';
+            if (buffer[i] == '-' || buffer[i] == '+') {
+                i++;
+            }
+            int value = 0;
+            for (; i < valueEnd && value < 100_000; i++) {
+                value = 10 * value + buffer[i] - '0';
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (mantissa == 0 && !truncated) {
+            // like BigDecimal, which has no negative zero
+            return 0.0;
+        }
+        if (!truncated && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(getString());
+    }
+
+    private void checkNumber() {
+        if (event != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("Current event is " + event + ", not VALUE_NUMBER");
+        }
+    }
+
+    @Override
+    public String getString() {
+        if (event == Event.KEY_NAME) {
+            return string;
+        } else if (event == Event.VALUE_STRING) {
+            if (string == null) {
+                string = decodeString();
+            }
+            return string;
+        } else if (event == Event.VALUE_NUMBER) {
+            return new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+        }
+        throw new IllegalStateException("Current event " + event + " has no string");
+    }
+
+    @Override
+    public boolean isIntegralNumber() {
+        checkNumber();
+        return integral;
+    }
+
+    @Override
+    public int getInt() {
+        return (int) getLong();
+    }
+
+    @Override
+    public long getLong() {
+        checkNumber();
+        final int start = buffer[valueStart] == '-' ? valueStart + 1 : valueStart;
+        if (!integral || valueEnd - start > MAX_LONG_DIGITS) {
+            return getBigDecimal().longValue();
+        }
+        long value = 0;
+        for (int i = start; i < valueEnd; i++) {
+            value = 10 * value + buffer[i] - '0';
+        }
+        return start == valueStart ? value : -value;
+    }
+
+    @Override
+    public BigDecimal getBigDecimal() {
+        checkNumber();
+        return new BigDecimal(getString());
+    }
+
+    @Override
+    public JsonLocation getLocation() {
+        return new Location(bufferOffset + position);
+    }
+
+    @Override
+    public JsonObject getObject() {
+        if (event != Event.START_OBJECT) {
+            throw new IllegalStateException("Current event is " + event + ", not START_OBJECT");
+        }
+        final JsonObjectBuilder object = BUILDER_FACTORY.createObjectBuilder();
+        while (next() == Event.KEY_NAME) {
+            final String key = string;
+            next();
+            object.add(key, getValue());
+        }
+        return object.build();
+    }
+
+    @Override
+    public JsonArray getArray() {
+        if (event != Event.START_ARRAY) {
+            throw new IllegalStateException("Current event is " + event + ", not START_ARRAY");
+        }
+        final JsonArrayBuilder array = BUILDER_FACTORY.createArrayBuilder();
+        while (next() != Event.END_ARRAY) {
+            array.add(getValue());
+        }
+        return array.build();
+    }
+
+    @Override
+    public JsonValue getValue() {
+        if (event == null) {
+            throw new IllegalStateException("No current event");
+        }
+        switch (event) {
+            case START_OBJECT:
+                return getObject();
+            case START_ARRAY:
+                return getArray();
+            case KEY_NAME:
+            case VALUE_STRING:
+                return Json.createValue(getString());
+            case VALUE_NUMBER:
+                return integral && valueEnd - valueStart <= MAX_LONG_DIGITS ? Json.createValue(getLong())
+                    : Json.createValue(getBigDecimal());
+            case VALUE_TRUE:
+                return JsonValue.TRUE;
+            case VALUE_FALSE:
+                return JsonValue.FALSE;
+            case VALUE_NULL:
+                return JsonValue.NULL;
+            default:
+                throw new IllegalStateException("Current event " + event + " has no value");
+        }
+    }
+
+    @Override
+    public void skipArray() {
+        // like the javax.json parser, only skip an array which has just started
+        if (event == Event.START_ARRAY) {
+            skipContainer();
+            end(Event.END_ARRAY);
+        }
+    }
+
+    @Override
+    public void skipObject() {
+        if (event == Event.START_OBJECT) {
+            skipContainer();
+            end(Event.END_OBJECT);
+        }
+    }
+
+    /**
+     * Skip the bytes up to the end of the container which has just started, only looking at brackets and strings.
+     */
+    private void skipContainer() {
+        int level = 1;
+        boolean inString = false;
+        int i = position;
+        while (true) {
+            if (i == limit) {
+                position = i;
+                if (!fill()) {
+                    throw error("Unexpected end of input");
+                }
+                i = position;
+            }
+            final byte b = buffer[i++];
+            if (inString) {
+                if (b == '\\') {
+                    // skip the escaped byte, which may be in the next part of the input
+                    if (i == limit) {
+                        position = i;
+                        if (!fill()) {
+                            throw error("Unexpected end of input in a string");
+                        }
+                        i = position;
+                    }
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '[' || b == '{') {
+                level++;
+            } else if ((b == ']' || b == '}') && --level == 0) {
+                position = i;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new JsonException("I/O error while closing the JSON parser", e);
+        }
+    }
+
+    private JsonParsingException unexpected(final int c) {
+        return error(c < 0 ? "Unexpected end of input" : "Unexpected character '" + (char) c + "' (" + c + ')');
+    }
+
+    private JsonParsingException error(final String message) {
+        final JsonLocation location = getLocation();
+        return new JsonParsingException(message + " at offset " + location.getStreamOffset(), location);
+    }
+
+    /**
+     * Location with only a stream offset.
+     */
+    private static final class Location implements JsonLocation {
+        private final long offset;
+
+        Location(final long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return -1;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return -1;
+        }
+
+        @Override
+        public long getStreamOffset() {
+            return offset;
+        }
+    }
+
+    /**
+     * Factory of {@link Utf8JsonParser}s, see {@link #FACTORY}.
+     */
+    private static final class Factory implements JsonParserFactory {
+
+        @Override
+        public JsonParser createParser(final InputStream in) {
+            // RFC 4627 encoding detection: UTF-16 and UTF-32 have a zero byte in the first two bytes
+            final byte[] prefix = new byte[4];
+            int length = 0;
+            try {
+                int n;
+                while (length < prefix.length && (n = in.read(prefix, length, prefix.length - length)) >= 0) {
+                    length += n;
+                }
+            } catch (IOException e) {
+                throw new JsonException("I/O error while detecting the encoding of JSON", e);
+            }
+            if ((length > 0 && prefix[0] == 0) || (length > 1 && prefix[1] == 0)
+                || (length > 1 && (prefix[0] & 0xFF) == 0xFE && (prefix[1] & 0xFF) == 0xFF)
+                || (length > 1 && (prefix[0] & 0xFF) == 0xFF && (prefix[1] & 0xFF) == 0xFE)) {
+                return REFERENCE_FACTORY.createParser(new SequenceInputStream(new ByteArrayInputStream(prefix, 0, length), in));
+            }
+            return create(in, prefix, length);
+        }
+
+        @Override
+        public JsonParser createParser(final InputStream in, final Charset charset) {
+            if (!StandardCharsets.UTF_8.equals(charset)) {
+                return REFERENCE_FACTORY.createParser(in, charset);
+            }
+            return create(in, new byte[0], 0);
+        }
+
+        /**
+         * Create a parser for UTF-8, skipping a byte order mark.
+         */
+        private static JsonParser create(final InputStream in, final byte[] prefix, final int length) {
+            final boolean bom = length >= 3 && (prefix[0] & 0xFF) == 0xEF && (prefix[1] & 0xFF) == 0xBB
+                && (prefix[2] & 0xFF) == 0xBF;
+            return bom ? new Utf8JsonParser(in, prefix, 3, length - 3) : new Utf8JsonParser(in, prefix, 0, length);
+        }
+
+        @Override
+        public JsonParser createParser(final Reader reader) {
+            return REFERENCE_FACTORY.createParser(reader);
+        }
+
+        @Override
+        public JsonParser createParser(final JsonObject object) {
+            return REFERENCE_FACTORY.createParser(object);
+        }
+
+        @Override
+        public JsonParser createParser(final JsonArray array) {
+            return REFERENCE_FACTORY.createParser(array);
+        }
+
+        @Override
+        public Map<String, ?> getConfigInUse() {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.stream.JsonParser;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+public class CoordinateBufferTest {
+
+    private static final String MULTIPOLYGON = "[[[[1, 2], [3.5, 4.25, 100], [5, 6], [1, 2]]],"
+        + " [[[10, 20], [30, 40], [50, 60]], [], [[11, 21], [\"x\", 1], [12, 22], [13]]]]";
+
+    @Test
+    public void testReadParserAndTree() {
+        final CoordinateBuffer streamed = new CoordinateBuffer();
+        try (JsonParser parser = Json.createParser(new StringReader(MULTIPOLYGON))) {
+            parser.next();
+            streamed.read(parser, 4);
+        }
+        final CoordinateBuffer tree = new CoordinateBuffer();
+        try (JsonParser parser = Json.createParser(new StringReader(MULTIPOLYGON))) {
+            parser.next();
+            tree.read(parser.getArray(), 4);
+        }
+
+        for (CoordinateBuffer buffer : new CoordinateBuffer[] {streamed, tree}) {
+            assertEquals(9, buffer.size());
+            assertEquals(4, buffer.lineCount());
+            assertEquals(2, buffer.polygonCount());
+            assertEquals(1, buffer.polygonStart(1));
+            assertEquals(4, buffer.polygonEnd(1));
+            assertEquals(4, buffer.lineEnd(0));
+            assertEquals(7, buffer.lineStart(2));
+            assertEquals(7, buffer.lineEnd(2));
+            assertEquals(9, buffer.lineEnd(3));
+            assertEquals(4.25, buffer.lat(1), 0);
+            assertEquals(3.5, buffer.lon(1), 0);
+            assertEquals(22, buffer.lat(8), 0);
+            assertTrue(buffer.isSamePosition(0, 3));
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        final CoordinateBuffer buffer = new CoordinateBuffer();
+        try (JsonParser parser = Json.createParser(new StringReader(MULTIPOLYGON))) {
+            parser.next();
+            buffer.read(parser, 4);
+        }
+        try (JsonParser parser = Json.createParser(new StringReader("[7, 8]"))) {
+            parser.next();
+            buffer.read(parser, 1);
+        }
+        assertEquals(1, buffer.size());
+        assertEquals(0, buffer.lineCount());
+        assertEquals(0, buffer.polygonCount());
+        assertEquals(8, buffer.lat(0), 0);
+        assertEquals(7, buffer.lon(0), 0);
+    }
+
+    @Test
+    public void testChunks() {
+        // a line over more chunks than are retained, and a polygon after it
+        final int positions = (CoordinateBuffer.RETAINED_CHUNKS + 2) * CoordinateBuffer.CHUNK_SIZE + 3;
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < positions; i++) {
+            json.append(i == 0 ? "[" : ", [").append(i).append(", ").append(-i).append(']');
+        }
+        final CoordinateBuffer buffer = new CoordinateBuffer();
+        try (JsonParser parser = Json.createParser(new StringReader(json.append(']').toString()))) {
+            parser.next();
+            buffer.read(parser, 2);
+        }
+        assertEquals(positions, buffer.size());
+        assertEquals(positions, buffer.lineEnd(0));
+        for (int i : new int[] {0, CoordinateBuffer.CHUNK_SIZE - 1, CoordinateBuffer.CHUNK_SIZE, positions - 1}) {
+            assertEquals(-i, buffer.lat(i), 0);
+            assertEquals(i, buffer.lon(i), 0);
+        }
+        buffer.dequantize(2, 1, 0, 0, true);
+        assertEquals(-(double) (positions - 1) * positions, buffer.lat(positions - 1), 0);
+
+        try (JsonParser parser = Json.createParser(new StringReader("[[[1, 2], [3, 4], [5, 6], [1, 2]]]"))) {
+            parser.next();
+            buffer.read(parser, 3);
+        }
+        assertTrue(buffer.capacity() <= CoordinateBuffer.RETAINED_CHUNKS * CoordinateBuffer.CHUNK_SIZE);
+        assertEquals(4, buffer.size());
+        assertEquals(6, buffer.lat(2), 0);
+        assertTrue(buffer.isSamePosition(0, 3));
+    }
+
+    @Test
+    public void testLargeIntegers() {
+        // integers which do not fit into a long are not wrapped, so they stay out of range
+        final String json = "[[18446744073709551617, 18446744073709551616], [-18446744073709551617, 1234567890123456789],"
+            + " [123456789012345678, -123456789012345678]]";
+        for (JsonParser parser : new JsonParser[] {Json.createParser(new StringReader(json)),
+                Utf8JsonParser.FACTORY.createParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))}) {
+            final CoordinateBuffer buffer = new CoordinateBuffer();
+            try (JsonParser p = parser) {
+                p.next();
+                buffer.read(p, 2);
+            }
+            assertEquals(3, buffer.size());
+            assertEquals(18446744073709551617d, buffer.lon(0), 0);
+            assertEquals(18446744073709551616d, buffer.lat(0), 0);
+            assertEquals(-18446744073709551617d, buffer.lon(1), 0);
+            assertEquals(1234567890123456789L, buffer.lat(1), 0);
+            assertEquals(123456789012345678L, buffer.lon(2), 0);
+            assertEquals(-123456789012345678L, buffer.lat(2), 0);
+        }
+    }
+
+    @Test
+    public void testIntersects() {
+        final CoordinateBuffer buffer = new CoordinateBuffer();
+        try (JsonParser parser = Json.createParser(new StringReader("[[170, 10], [179, 12]]"))) {
+            parser.next();
+            buffer.read(parser, 2);
+        }
+        assertTrue(buffer.intersects(new Bounds(11, 175, 11.5, 176)));
+        assertTrue(buffer.intersects(new Bounds(0, 160, 10, 170)));
+        assertFalse(buffer.intersects(new Bounds(12.5, 170, 13, 179)));
+        assertFalse(buffer.intersects(new Bounds(10, 160, 12, 169.9)));
+        // crossing the 180th meridian
+        assertTrue(buffer.intersects(new Bounds(10, 178, 12, -178)));
+        assertFalse(buffer.intersects(new Bounds(10, 179.5, 12, -178)));
+        buffer.clear();
+        assertFalse(buffer.intersects(new Bounds(-90, -180, 90, 180)));
+    }
+
+    /**
+     * Compare the bytes allocated per vertex by the former decoding ({@code JsonArray} tree mapped to a list of
+     * {@link LatLon}) with the bytes allocated by {@link CoordinateBuffer#read(JsonParser, int)}.
+     */
+    @Test
+    public void testAllocationPerVertex() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        final int vertices = 50_000;
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < vertices; i++) {
+            json.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT, "[%.7f, %.7f]", i * 1e-4, 45 + i * 1e-5));
+        }
+        final String line = json.append(']').toString();
+        final CoordinateBuffer buffer = new CoordinateBuffer();
+
+        long tree = 0;
+        long streamed = 0;
+        for (int run = 0; run < 5; run++) {
+            final long id = Thread.currentThread().getId();
+            try (JsonParser parser = Json.createParser(new StringReader(line))) {
+                parser.next();
+                final long before = threads.getThreadAllocatedBytes(id);
+                final JsonArray array = parser.getArray();
+                final List<LatLon> latlons = array.stream().map(coordinate -> new LatLon(
+                    coordinate.asJsonArray().getJsonNumber(1).doubleValue(),
+                    coordinate.asJsonArray().getJsonNumber(0).doubleValue()
+                )).collect(Collectors.toList());
+                tree = threads.getThreadAllocatedBytes(id) - before;
+                assertEquals(vertices, latlons.size());
+            }
+            try (JsonParser parser = Json.createParser(new StringReader(line))) {
+                parser.next();
+                final long before = threads.getThreadAllocatedBytes(id);
+                buffer.read(parser, 2);
+                streamed = threads.getThreadAllocatedBytes(id) - before;
+                assertEquals(vertices, buffer.size());
+            }
+        }
+        assertTrue("JsonArray tree " + tree / vertices + " bytes, CoordinateBuffer " + streamed / vertices
+            + " bytes per vertex", streamed < tree);
+    }
+}
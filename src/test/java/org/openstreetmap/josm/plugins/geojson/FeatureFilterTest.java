@@ -0,0 +1,93 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.Test;
+
+public class FeatureFilterTest {
+
+    private static final JsonObject PROPERTIES = Json.createReader(new StringReader(
+        "{\"status\": \"active\", \"lanes\": 2, \"width\": \"3.5\", \"oneway\": true, \"note\": null, \"ref\": [1],"
+            + " \"name\": \"Main \\\"Street\\\"\"}")).readObject();
+
+    @Test
+    public void testEquality() {
+        assertTrue(accepts("status == active"));
+        assertTrue(accepts("status == \"active\""));
+        assertFalse(accepts("status == inactive"));
+        assertTrue(accepts("status != inactive"));
+        assertTrue(accepts("lanes == 2.0"));
+        assertFalse(accepts("lanes == \"2.0\""));
+        assertTrue(accepts("lanes == \"2\""));
+        assertTrue(accepts("width == 3.50"));
+        assertTrue(accepts("oneway == true"));
+        assertTrue(accepts("name == \"Main \\\"Street\\\"\""));
+        // missing, null and structured properties
+        assertFalse(accepts("missing == x"));
+        assertTrue(accepts("missing != x"));
+        assertFalse(accepts("note == null"));
+        assertTrue(accepts("note != null"));
+        assertTrue(accepts("ref != 1"));
+    }
+
+    @Test
+    public void testRange() {
+        assertTrue(accepts("lanes >= 2"));
+        assertTrue(accepts("lanes > 1.5 && lanes < 3 && lanes <= 2"));
+        assertFalse(accepts("lanes > 2"));
+        assertTrue(accepts("width < 4"));
+        assertFalse(accepts("status > 0"));
+        assertFalse(accepts("missing < 0"));
+    }
+
+    @Test
+    public void testGeometryType() {
+        final FeatureFilter filter = FeatureFilter.parse("$geometry == Polygon");
+        assertTrue(filter.accepts(PROPERTIES, "Polygon"));
+        assertFalse(filter.accepts(PROPERTIES, "Point"));
+        assertFalse(filter.accepts(PROPERTIES, null));
+        assertTrue(FeatureFilter.parse("$geometry != Point").accepts(PROPERTIES, null));
+        assertFalse(filter.hasPropertyClauses());
+    }
+
+    @Test
+    public void testProjection() {
+        assertNull(FeatureFilter.create(" ", Collections.emptyList(), Collections.emptyList()));
+        final FeatureFilter filter = FeatureFilter.create("lanes > 1", Arrays.asList("status", "name"), Arrays.asList("name"));
+        assertTrue(filter.keepsProperty("status"));
+        assertFalse(filter.keepsProperty("name"));
+        assertFalse(filter.keepsProperty("lanes"));
+        assertTrue(filter.testsProperty("lanes"));
+        assertFalse(filter.testsProperty("status"));
+        assertTrue(FeatureFilter.create("", Collections.emptyList(), Arrays.asList("name")).keepsProperty("lanes"));
+        assertEquals("\"lanes\" > 1 include=[name, status] exclude=[name]", filter.toString());
+    }
+
+    @Test
+    public void testMalformed() {
+        for (String expression : Arrays.asList("status", "status ==", "== active", "status = active", "status == \"active",
+            "lanes > two", "$geometry < Point", "a == b c == d", "a == b &&")) {
+            try {
+                FeatureFilter.parse(expression);
+                fail(expression);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(expression));
+            }
+        }
+    }
+
+    private static boolean accepts(final String expression) {
+        return FeatureFilter.parse(expression).accepts(PROPERTIES, "LineString");
+    }
+}
@@ -0,0 +1,124 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.json.Json;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class FeatureFingerprintsTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    private static final String POINT = "{\"type\": \"Feature\", \"id\": %s, \"properties\": {\"name\": \"%s\"},"
+        + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [%s, 1]}}";
+    private static final String HOLED = "{\"type\": \"Feature\", \"properties\": {\"name\": \"%s\"}, \"geometry\": {"
+        + "\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [4, 0], [4, 4], [0, 4], [0, 0]], [[1, 1], [2, 1], [2, 2], [1, 1]]]}}";
+    private static final String LINE = "{\"type\": \"Feature\", \"properties\": {\"name\": \"line\"}, \"geometry\": {"
+        + "\"type\": \"LineString\", \"coordinates\": [[%1$s, 10], [%1$s, 5]]}}";
+
+    @Test
+    public void testHash() {
+        assertEquals(hash("{\"a\": 1, \"b\": [1, 2]}"), hash("{\"b\": [1, 2], \"a\": 1}"));
+        assertNotEquals(hash("{\"a\": 1, \"b\": [1, 2]}"), hash("{\"a\": 1, \"b\": [2, 1]}"));
+        assertNotEquals(hash("{\"a\": 1, \"b\": 2}"), hash("{\"a\": 2, \"b\": 1}"));
+        assertNotEquals(hash("{\"a\": \"1\"}"), hash("{\"a\": 1}"));
+        assertNotEquals(hash("{\"a\": 1.5}"), hash("{\"a\": 1.25}"));
+        assertNotEquals(hash("[true]"), hash("[false]"));
+        assertNotEquals(hash("[null]"), hash("[]"));
+    }
+
+    @Test
+    public void testReload() throws IllegalDataException {
+        final String before = collection(String.format(POINT, 1, "a", 1), String.format(POINT, "\"x\"", "b", 2),
+            String.format(HOLED, "h"), String.format(LINE, 5), String.format(LINE, 5), String.format(POINT, 3, "c", 3));
+        // a changed property, a removed feature, a moved and a new feature, and of the features without id, a changed
+        // line (which is removed and added) and a removed copy
+        final String after = collection(String.format(POINT, 3, "c", 3), String.format(POINT, 1, "a2", 1),
+            String.format(HOLED, "h"), String.format(LINE, 6), String.format(LINE, 5), String.format(POINT, 4, "d", 4));
+        for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.UTF8_PARSER, GeoJsonReader.Options.PARALLEL},
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final GeoJsonReader reader = new GeoJsonReader(options);
+            reader.setFingerprints(new FeatureFingerprints("", null));
+            final DataSet ds = reader.doParseDataSet(GeojsonTest.stream(before), null);
+            final FeatureFingerprints previous = reader.getFingerprints();
+            final Node unchanged = getNode(ds, "c");
+
+            final GeoJsonReader reload = new GeoJsonReader(options);
+            final FeatureFingerprints fingerprints = new FeatureFingerprints("", previous);
+            reload.setFingerprints(fingerprints);
+            final DataSet changes = reload.doParseDataSet(GeojsonTest.stream(after), null);
+            // only the changed point, the changed line and the new point are converted
+            assertEquals(1 + 3 + 1, changes.allPrimitives().size());
+            assertEquals(3, fingerprints.getUnchangedFeatureCount());
+
+            fingerprints.update(ds, changes);
+            assertTrue(changes.isEmpty());
+            assertEquals(GeojsonTest.describe(new GeoJsonReader(options).doParseDataSet(GeojsonTest.stream(after), null)),
+                GeojsonTest.describe(ds));
+            assertSame(unchanged, getNode(ds, "c"));
+            assertEquals("2 added, 1 changed, 2 removed and 3 unchanged features", fingerprints.toString());
+
+            // an unchanged file converts nothing
+            final GeoJsonReader again = new GeoJsonReader(options);
+            again.setFingerprints(new FeatureFingerprints("", fingerprints));
+            assertTrue(again.doParseDataSet(GeojsonTest.stream(after), null).isEmpty());
+        }
+    }
+
+    @Test
+    public void testSequence() throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader(GeoJsonReader.Options.SEQUENCE);
+        reader.setFingerprints(new FeatureFingerprints("", null));
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream(String.format(POINT, 1, "a", 1) + '\n'
+            + String.format(HOLED, "h")), null);
+
+        final GeoJsonReader reload = new GeoJsonReader(GeoJsonReader.Options.SEQUENCE);
+        final FeatureFingerprints fingerprints = new FeatureFingerprints("", reader.getFingerprints());
+        reload.setFingerprints(fingerprints);
+        final DataSet changes = reload.doParseDataSet(GeojsonTest.stream(String.format(POINT, 1, "a", 1) + '\n'
+            + String.format(HOLED, "h2")), null);
+        assertEquals(1, fingerprints.getUnchangedFeatureCount());
+        fingerprints.update(ds, changes);
+        assertEquals(1 + 1 + 2 + 7, ds.allPrimitives().size());
+        assertEquals("h2", ds.getRelations().iterator().next().get("name"));
+    }
+
+    @Test
+    public void testTopology() throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setFingerprints(new FeatureFingerprints("", null));
+        reader.doParseDataSet(GeojsonTest.stream("{\"type\": \"Topology\", \"arcs\": [[[0, 0], [1, 1]]],"
+            + " \"objects\": {\"a\": {\"type\": \"LineString\", \"arcs\": [0]}}}"), null);
+        assertNull(reader.getFingerprints());
+    }
+
+    private static long hash(final String json) {
+        return FeatureFingerprints.hash(Json.createReader(new StringReader(json)).readValue());
+    }
+
+    private static String collection(final String... features) {
+        return "{\"type\": \"FeatureCollection\", \"features\": [" + String.join(", ", features) + "]}";
+    }
+
+    private static Node getNode(final DataSet ds, final String name) {
+        final Collection<Node> nodes = ds.getPrimitives(primitive -> primitive instanceof Node && name.equals(primitive.get("name")));
+        assertEquals(1, nodes.size());
+        return nodes.iterator().next();
+    }
+}
@@ -0,0 +1,126 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class GeoJsonFileImporterTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        GeoJsonFileImporter.RELOAD.put(false);
+        MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class)
+            .forEach(layer -> MainApplication.getLayerManager().removeLayer(layer));
+    }
+
+    @Test
+    public void testReloadModifiedLayer() throws IOException {
+        GeoJsonFileImporter.RELOAD.put(true);
+        final File file = folder.newFile("points.geojson");
+        write(file, "a", "b");
+        new GeoJsonFileImporter().importData(file, NullProgressMonitor.INSTANCE);
+        final List<OsmDataLayer> layers = MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class);
+        assertEquals(1, layers.size());
+        final OsmDataLayer layer = layers.get(0);
+        assertFalse(layer.requiresSaveToFile());
+
+        // an edit of the user, and a change of another feature in the file
+        final Node edited = layer.getDataSet().getNodes().stream().filter(node -> node.hasTag("name", "a")).findFirst().get();
+        edited.put("note", "edited");
+        edited.setModified(true);
+        assertTrue(layer.requiresSaveToFile());
+        write(file, "a", "c");
+
+        // refused, the layer keeps the edit and the old features
+        final AtomicInteger confirmations = new AtomicInteger();
+        new ConfirmingImporter(confirmations, false).importData(file, NullProgressMonitor.INSTANCE);
+        assertEquals(1, confirmations.get());
+        assertEquals(1, MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).size());
+        assertTrue(edited.hasTag("note", "edited"));
+        assertTrue(layer.getDataSet().getNodes().stream().anyMatch(node -> node.hasTag("name", "b")));
+        assertFalse(layer.getDataSet().getNodes().stream().anyMatch(node -> node.hasTag("name", "c")));
+
+        // confirmed, the changed feature is replaced
+        new ConfirmingImporter(confirmations, true).importData(file, NullProgressMonitor.INSTANCE);
+        assertEquals(2, confirmations.get());
+        assertEquals(1, MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).size());
+        assertFalse(layer.getDataSet().getNodes().stream().anyMatch(node -> !node.isDeleted() && node.hasTag("name", "b")));
+        assertTrue(layer.getDataSet().getNodes().stream().anyMatch(node -> node.hasTag("name", "c")));
+
+        // once the edit is saved, the layer is reloaded without asking
+        assertTrue(edited.hasTag("note", "edited"));
+        edited.setModified(false);
+        layer.onPostSaveToFile();
+        write(file, "a", "d");
+        new ConfirmingImporter(confirmations, false).importData(file, NullProgressMonitor.INSTANCE);
+        assertEquals(2, confirmations.get());
+        assertTrue(layer.getDataSet().getNodes().stream().anyMatch(node -> node.hasTag("name", "d")));
+    }
+
+    @Test
+    public void testCancelFiles() throws IOException {
+        final List<File> files = new ArrayList<>();
+        for (String name : new String[] {"a.geojson", "b.geojson"}) {
+            final File file = folder.newFile(name);
+            Files.write(file.toPath(), GeojsonTest.grid(30).getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        new GeoJsonFileImporter().importData(files, GeojsonTest.monitor(true, new ArrayList<>()));
+        assertTrue(MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).isEmpty());
+
+        new GeoJsonFileImporter().importData(files, GeojsonTest.monitor(false, new ArrayList<>()));
+        assertEquals(2, MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).size());
+    }
+
+    private static void write(final File file, final String... names) throws IOException {
+        final StringBuilder json = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+        for (int i = 0; i < names.length; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"type\": \"Feature\", \"properties\": {\"name\": \"").append(names[i])
+                .append("\"}, \"geometry\": {\"type\": \"Point\", \"coordinates\": [").append(i).append(", 0]}}");
+        }
+        Files.write(file.toPath(), json.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An importer which answers the confirmation of a reload without a dialog, and counts the confirmations.
+     */
+    private static class ConfirmingImporter extends GeoJsonFileImporter {
+        private final AtomicInteger confirmations;
+        private final boolean confirm;
+
+        ConfirmingImporter(final AtomicInteger confirmations, final boolean confirm) {
+            this.confirmations = confirmations;
+            this.confirm = confirm;
+        }
+
+        @Override
+        boolean confirmReload(final OsmDataLayer layer, final File file) {
+            confirmations.incrementAndGet();
+            return confirm;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class GeoJsonIndexTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testQuery() throws IOException, IllegalDataException {
+        // a multi-byte character before the features, and a feature without geometry
+        final String grid = GeojsonTest.grid(30);
+        final String json = "{\"name\": \"Grille à l'écart\", " + grid.substring(1, grid.length() - 2)
+            + ", {\"type\": \"Feature\", \"properties\": {\"type\": \"site\"}, \"geometry\": null}]}";
+        final Path file = folder.getRoot().toPath().resolve("grid.geojson");
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+
+        try (GeoJsonIndex index = GeoJsonIndex.open(file)) {
+            assertEquals(30 * 30 * 2 + 30 + 1, index.getFeatureCount());
+            for (Bounds area : Arrays.asList(new Bounds(0.0042, 0.0052, 0.0088, 0.0098), new Bounds(0.02, 0.001, 0.0201, 0.0011),
+                    new Bounds(-1, -1, 0.0015, 0.0015), new Bounds(1, 1, 2, 2))) {
+                final GeoJsonReader expectedReader = new GeoJsonReader();
+                expectedReader.setArea(area);
+                final DataSet expected = expectedReader.doParseDataSet(GeojsonTest.stream(json), null);
+                final GeoJsonReader reader = new GeoJsonReader();
+                reader.setArea(area);
+                try (InputStream features = index.openFeatures(area)) {
+                    assertEquals(GeojsonTest.describe(expected), GeojsonTest.describe(reader.doParseDataSet(features, null)));
+                }
+                assertTrue(index.query(area).size() < index.getFeatureCount() / 4);
+            }
+            final List<long[]> offsets = index.query(new Bounds(-90, -180, 90, 180));
+            assertEquals(index.getFeatureCount(), offsets.size());
+            for (int i = 1; i < offsets.size(); i++) {
+                assertTrue(offsets.get(i)[0] > offsets.get(i - 1)[0] + offsets.get(i - 1)[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testStaleIndex() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("grid.geojson");
+        Files.write(file, GeojsonTest.grid(5).getBytes(StandardCharsets.UTF_8));
+        try (GeoJsonIndex index = GeoJsonIndex.open(file)) {
+            assertEquals(5 * 5 * 2 + 5, index.getFeatureCount());
+        }
+        final Path indexFile = GeoJsonIndex.getIndexFile(file);
+        final FileTime indexed = Files.getLastModifiedTime(indexFile);
+        try (GeoJsonIndex index = GeoJsonIndex.open(file)) {
+            assertEquals(5 * 5 * 2 + 5, index.getFeatureCount());
+        }
+        assertEquals(indexed, Files.getLastModifiedTime(indexFile));
+
+        // same size, other modification time
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10_000));
+        try (GeoJsonIndex index = GeoJsonIndex.open(file)) {
+            assertEquals(5 * 5 * 2 + 5, index.getFeatureCount());
+        }
+        // other size
+        Files.write(file, GeojsonTest.grid(6).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10_000));
+        try (GeoJsonIndex index = GeoJsonIndex.open(file)) {
+            assertEquals(6 * 6 * 2 + 6, index.getFeatureCount());
+        }
+        assertNotEquals(indexed, Files.getLastModifiedTime(indexFile));
+    }
+
+    @Test
+    public void testNoFeatureCollection() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("point.geojson");
+        Files.write(file, "{\"type\": \"Point\", \"coordinates\": [1, 2]}".getBytes(StandardCharsets.UTF_8));
+        try (GeoJsonIndex index = GeoJsonIndex.open(file)) {
+            fail("Indexed " + index.getFeatureCount() + " features");
+        } catch (IOException e) {
+            assertTrue(Files.notExists(GeoJsonIndex.getIndexFile(file)));
+        }
+    }
+}
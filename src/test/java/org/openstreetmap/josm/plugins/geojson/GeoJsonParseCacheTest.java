@@ -0,0 +1,143 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class GeoJsonParseCacheTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException, IllegalDataException {
+        // coordinates with 7 decimals and with more, a multipolygon, a relation without members and unicode tags
+        final String grid = GeojsonTest.grid(6);
+        final String json = grid.substring(0, grid.length() - 2) + ", {\"type\": \"Feature\", \"properties\": {\"name\": \"Écart ✓\"},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [-179.123456789012, -89.9999999]}}, {\"type\": \"Feature\","
+            + " \"properties\": {\"type\": \"site\"}, \"geometry\": null}]}";
+        final Path file = write("grid.geojson", json);
+        final GeoJsonParseCache cache = new GeoJsonParseCache(folder.getRoot().toPath().resolve("cache"), 1 << 20);
+        final DataSet expected = store(cache, file, GeoJsonReader.Options.DEDUPLICATE_NODES);
+
+        final String variant = GeoJsonParseCache.getVariant(new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES}, 0, null);
+        assertEquals("deduplicate-nodes", variant);
+        final DataSet actual = cache.load(file, variant);
+        assertNotNull(actual);
+        assertEquals(GeojsonTest.describe(expected), GeojsonTest.describe(actual));
+        assertEquals(expected.getNodes().size(), actual.getNodes().size());
+        assertTrue(actual.getNodes().stream().anyMatch(node -> node.getCoor().equals(new LatLon(-89.9999999, -179.123456789012))));
+        for (Node node : actual.getNodes()) {
+            assertTrue(expected.getNodes().stream().anyMatch(n -> n.lat() == node.lat() && n.lon() == node.lon()));
+        }
+        // other settings which change the result
+        assertNull(cache.load(file, ""));
+        assertNull(cache.load(file, GeoJsonParseCache.getVariant(new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES}, 2.5, null)));
+    }
+
+    @Test
+    public void testMultipolygonRelations() throws IOException, IllegalDataException {
+        final Path file = write("multipolygon.geojson", "{\"type\": \"Feature\", \"properties\": {\"a\": \"b\"}, \"geometry\": "
+            + "{\"type\": \"MultiPolygon\", \"coordinates\": [[[[0, 0], [4, 0], [4, 4], [0, 0]]], [[[5, 0], [6, 0], [6, 1], [5, 0]]]]}}");
+        final GeoJsonParseCache cache = new GeoJsonParseCache(folder.getRoot().toPath().resolve("cache"), 1 << 20);
+        final GeoJsonReader.Options[] options = {GeoJsonReader.Options.MULTIPOLYGON_RELATIONS};
+        final String variant = GeoJsonParseCache.getVariant(options, 0, null);
+        assertEquals(" multipolygon-relations", variant);
+
+        // the entry of one mode is not used by the other
+        final DataSet relations = store(cache, file, options);
+        assertNull(cache.load(file, ""));
+        final DataSet actual = cache.load(file, variant);
+        assertNotNull(actual);
+        assertEquals(GeojsonTest.describe(relations), GeojsonTest.describe(actual));
+        store(cache, file);
+        assertNull(cache.load(file, variant));
+        assertEquals(2, cache.load(file, "").getWays().size());
+    }
+
+    @Test
+    public void testStale() throws IOException, IllegalDataException {
+        final Path file = write("grid.geojson", GeojsonTest.grid(3));
+        final GeoJsonParseCache cache = new GeoJsonParseCache(folder.getRoot().toPath().resolve("cache"), 1 << 20);
+        store(cache, file);
+        assertNotNull(cache.load(file, ""));
+
+        // same size and modification time, other content
+        final FileTime lastModified = Files.getLastModifiedTime(file);
+        Files.write(file, GeojsonTest.grid(3).replace("forest", "meddow").getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, lastModified);
+        assertNull(cache.load(file, ""));
+
+        // other modification time
+        store(cache, file);
+        assertNotNull(cache.load(file, ""));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() - 10_000));
+        assertNull(cache.load(file, ""));
+    }
+
+    @Test
+    public void testEviction() throws IOException, IllegalDataException {
+        final Path[] files = new Path[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = write("grid" + i + ".geojson", GeojsonTest.grid(10));
+        }
+        final GeoJsonParseCache unlimited = new GeoJsonParseCache(folder.getRoot().toPath().resolve("size"), Long.MAX_VALUE);
+        store(unlimited, files[0]);
+        final long entrySize = Files.size(unlimited.getEntry(files[0]));
+        assertTrue(entrySize < Files.size(files[0]) / 3);
+
+        // room for two entries
+        final GeoJsonParseCache cache = new GeoJsonParseCache(folder.getRoot().toPath().resolve("cache"), entrySize * 5 / 2);
+        store(cache, files[0]);
+        Files.setLastModifiedTime(cache.getEntry(files[0]), FileTime.fromMillis(System.currentTimeMillis() - 20_000));
+        store(cache, files[1]);
+        Files.setLastModifiedTime(cache.getEntry(files[1]), FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        // a hit makes the first entry the most recently used one
+        assertNotNull(cache.load(files[0], ""));
+        store(cache, files[2]);
+        assertNotNull(cache.load(files[0], ""));
+        assertNull(cache.load(files[1], ""));
+        assertNotNull(cache.load(files[2], ""));
+
+        // an entry larger than the cache is not stored
+        final GeoJsonParseCache small = new GeoJsonParseCache(folder.getRoot().toPath().resolve("small"), entrySize / 2);
+        store(small, files[0]);
+        assertNull(small.load(files[0], ""));
+    }
+
+    private Path write(final String name, final String json) throws IOException {
+        final Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static DataSet store(final GeoJsonParseCache cache, final Path file, final GeoJsonReader.Options... options)
+            throws IOException, IllegalDataException {
+        try (InputStream in = Files.newInputStream(file)) {
+            final DataSet dataSet = GeoJsonReader.parseDataSet(in, null, options);
+            cache.store(file, Files.size(file), Files.getLastModifiedTime(file).toMillis(), GeoJsonParseCache.getVariant(options, 0, null),
+                dataSet);
+            return dataSet;
+        }
+    }
+}
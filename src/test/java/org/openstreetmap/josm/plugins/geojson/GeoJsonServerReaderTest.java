@@ -0,0 +1,134 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmTransferException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class GeoJsonServerReaderTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules().preferences();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String json = GeojsonTest.grid(10);
+    private String etag = "\"1\"";
+    /** Status codes of the responses */
+    private final List<Integer> responses = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/grid.geojson", exchange -> respond(exchange, json.getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/grid.geojson.gz", exchange -> {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+            respond(exchange, compressed.toByteArray());
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void respond(final HttpExchange exchange, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            responses.add(304);
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            responses.add(200);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    private String url(final String path) {
+        return "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + path;
+    }
+
+    private DataSet parse(final String path, final Bounds area, final GeoJsonFileImporter importer) throws OsmTransferException {
+        return new GeoJsonServerReader(url(path), area, importer).parseOsm(NullProgressMonitor.INSTANCE);
+    }
+
+    private DataSet expected(final Bounds area) throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setArea(area);
+        return reader.doParseDataSet(GeojsonTest.stream(json), null);
+    }
+
+    @Test
+    public void testStreaming() throws OsmTransferException, IllegalDataException {
+        final GeoJsonFileImporter importer = new GeoJsonFileImporter();
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson", null, importer)));
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson.gz", null, importer)));
+        final Bounds area = new Bounds(0.0042, 0.0052, 0.0088, 0.0098);
+        assertEquals(GeojsonTest.describe(expected(area)), GeojsonTest.describe(parse("/grid.geojson", area, importer)));
+    }
+
+    @Test(expected = OsmTransferException.class)
+    public void testNotFound() throws OsmTransferException {
+        parse("/missing.geojson", null, new GeoJsonFileImporter());
+    }
+
+    @Test
+    public void testConditionalRequest() throws OsmTransferException, IllegalDataException {
+        GeoJsonFileImporter.PARSE_CACHE.put(true);
+        final GeoJsonFileImporter importer = new GeoJsonFileImporter(folder.getRoot());
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson", null, importer)));
+        // not modified, from the cache
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson", null, importer)));
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson", null, importer)));
+        // area downloads are not cached
+        final Bounds area = new Bounds(0.0042, 0.0052, 0.0088, 0.0098);
+        assertEquals(GeojsonTest.describe(expected(area)), GeojsonTest.describe(parse("/grid.geojson", area, importer)));
+        // modified
+        json = GeojsonTest.grid(4);
+        etag = "\"2\"";
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson", null, importer)));
+        assertEquals(GeojsonTest.describe(expected(null)), GeojsonTest.describe(parse("/grid.geojson", null, importer)));
+        assertEquals(Arrays.asList(200, 304, 304, 200, 200, 304), responses);
+
+        // without the cache, the resource is always downloaded
+        GeoJsonFileImporter.PARSE_CACHE.put(false);
+        responses.clear();
+        parse("/grid.geojson", null, importer);
+        assertEquals(Collections.singletonList(200), responses);
+        assertNull(importer.getParseCache());
+    }
+}
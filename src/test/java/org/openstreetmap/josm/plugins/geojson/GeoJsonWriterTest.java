@@ -0,0 +1,141 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class GeoJsonWriterTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IllegalDataException {
+        for (GeoJsonReader.Options[] options : Arrays.asList(
+            new GeoJsonReader.Options[0], new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final DataSet geo = new GeoJsonReader(options).doParseDataSet(GeojsonTest.class.getResourceAsStream("geo.json"), null);
+            assertEquals(GeojsonTest.describe(geo), GeojsonTest.describe(roundTrip(geo, options)));
+
+            final DataSet grid = new GeoJsonReader(options).doParseDataSet(GeojsonTest.stream(GeojsonTest.grid(10)), null);
+            final DataSet gridRoundTrip = roundTrip(grid, options);
+            assertEquals(GeojsonTest.describe(grid), GeojsonTest.describe(gridRoundTrip));
+            assertEquals(grid.getNodes().size(), gridRoundTrip.getNodes().size());
+        }
+    }
+
+    @Test
+    public void testMultipolygonRelations() throws IllegalDataException {
+        // a MultiPolygon of a square with a hole and a square, and one of a square with a hole
+        final String json = "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"properties\": {\"a\": \"b\"},"
+            + " \"geometry\": {\"type\": \"MultiPolygon\", \"coordinates\": [[[[0, 0], [4, 0], [4, 4], [0, 4], [0, 0]],"
+            + " [[1, 1], [2, 1], [2, 2], [1, 1]]], [[[5, 0], [6, 0], [6, 1], [5, 0]]]]}},"
+            + " {\"type\": \"Feature\", \"properties\": {\"c\": \"d\"}, \"geometry\": {\"type\": \"MultiPolygon\","
+            + " \"coordinates\": [[[[7, 0], [9, 0], [9, 2], [7, 0]], [[8, 0.5], [8.5, 0.5], [8.5, 1], [8, 0.5]]]]}}]}";
+        for (GeoJsonReader.Options[] options : Arrays.asList(
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.MULTIPOLYGON_RELATIONS},
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.MULTIPOLYGON_RELATIONS, GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final DataSet ds = new GeoJsonReader(options).doParseDataSet(GeojsonTest.stream(json), null);
+            final DataSet result = roundTrip(ds, options);
+            assertEquals(GeojsonTest.describe(ds), GeojsonTest.describe(result));
+            assertEquals(2, result.getRelations().size());
+            assertTrue(result.getWays().stream().noneMatch(way -> way.hasKeys() || way.getReferrers().isEmpty()));
+        }
+    }
+
+    @Test
+    public void testPrimitives() throws IllegalDataException {
+        final DataSet ds = new DataSet();
+        final double[][] positions = {{0, 0}, {0, 10}, {10, 10}, {10, 0}, {2, 2}, {2, 4}, {4, 4}, {4, 2}};
+        final Node[] nodes = new Node[positions.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(new LatLon(positions[i][0], positions[i][1]));
+            ds.addPrimitive(nodes[i]);
+        }
+        final Node poi = new Node(new LatLon(5, 5));
+        poi.put("amenity", "bench");
+        ds.addPrimitive(poi);
+        final Way outer = new Way();
+        outer.setNodes(Arrays.asList(nodes[0], nodes[1], nodes[2], nodes[3], nodes[0]));
+        final Way inner = new Way();
+        inner.setNodes(Arrays.asList(nodes[4], nodes[5], nodes[6], nodes[7], nodes[4]));
+        final Way line = new Way();
+        line.setNodes(Arrays.asList(nodes[0], nodes[2]));
+        line.put("highway", "path");
+        ds.addPrimitive(outer);
+        ds.addPrimitive(inner);
+        ds.addPrimitive(line);
+        final Relation multipolygon = new Relation();
+        multipolygon.put("type", "multipolygon");
+        multipolygon.put("landuse", "forest");
+        multipolygon.addMember(new RelationMember("outer", outer));
+        multipolygon.addMember(new RelationMember("inner", inner));
+        ds.addPrimitive(multipolygon);
+        final Relation route = new Relation();
+        route.put("type", "route");
+        route.addMember(new RelationMember("", line));
+        ds.addPrimitive(route);
+        final Node deleted = new Node(new LatLon(1, 1));
+        ds.addPrimitive(deleted);
+        deleted.setDeleted(true);
+
+        final DataSet result = roundTrip(ds, GeoJsonReader.Options.DEDUPLICATE_NODES);
+        assertEquals(1, result.getNodes().stream().filter(node -> "bench".equals(node.get("amenity"))).count());
+        assertEquals(9, result.getNodes().size());
+        assertEquals(3, result.getWays().size());
+        assertEquals(2, result.getRelations().size());
+        final Relation polygon = result.getRelations().stream().filter(it -> it.getMembersCount() > 0).findFirst().get();
+        assertEquals("forest", polygon.get("landuse"));
+        assertEquals("multipolygon", polygon.get("type"));
+        assertEquals("outer", polygon.getMember(0).getRole());
+        assertTrue(polygon.getMember(0).getWay().isClosed());
+        assertEquals("inner", polygon.getMember(1).getRole());
+        assertTrue(result.getRelations().stream().anyMatch(it -> "route".equals(it.get("type"))));
+        assertTrue(result.getWays().stream().anyMatch(way -> "path".equals(way.get("highway")) && !way.isClosed()));
+    }
+
+    @Test
+    public void testCompressedExport() throws IOException, IllegalDataException {
+        final DataSet ds = new GeoJsonReader().doParseDataSet(GeojsonTest.class.getResourceAsStream("geo.json"), null);
+        final GeoJsonFileExporter exporter = new GeoJsonFileExporter();
+        final OsmDataLayer layer = new OsmDataLayer(ds, "geo.json", null);
+        final File file = new File(folder.getRoot(), "export.geojson.gz");
+        assertTrue(exporter.acceptFile(file, layer));
+        assertFalse(exporter.acceptFile(new File(folder.getRoot(), "export.osm"), layer));
+        exporter.exportData(file, layer);
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            assertEquals(GeojsonTest.describe(ds), GeojsonTest.describe(new GeoJsonReader().doParseDataSet(in, null)));
+        }
+    }
+
+    private static DataSet roundTrip(final DataSet ds, final GeoJsonReader.Options... options) throws IllegalDataException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GeoJsonWriter(ds).write(out, null);
+        return new GeoJsonReader(options).doParseDataSet(new ByteArrayInputStream(out.toByteArray()), null);
+    }
+}
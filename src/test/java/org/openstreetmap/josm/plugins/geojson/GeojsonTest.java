@@ -2,19 +2,44 @@ package org.openstreetmap.josm.plugins.geojson;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
 
@@ -100,6 +125,508 @@ public class GeojsonTest {
         assertNull(foundWay4.get().get("propD4"));
     }
 
+    @Test
+    public void testStreamingRootShapes() throws IllegalDataException {
+        // features before type, with extra members around the array
+        DataSet ds = new GeoJsonReader().doParseDataSet(stream(
+            "{\"bbox\": [0, 0, 2, 2], \"features\": [[1], 1, {\"type\": \"Feature\", \"properties\": {\"a\": \"b\"},"
+                + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}}], \"type\": \"FeatureCollection\","
+                + " \"crs\": {\"type\": \"name\"}}"), null);
+        assertEquals(1, ds.getNodes().size());
+        assertEquals("b", ds.getNodes().iterator().next().get("a"));
+
+        // a single feature as root object is streamed like the features of a collection
+        ds = new GeoJsonReader().doParseDataSet(stream(
+            "{\"type\": \"Feature\", \"properties\": {\"a\": \"c\"},"
+                + " \"geometry\": {\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]}}"), null);
+        assertEquals(1, ds.getWays().size());
+        assertEquals("c", ds.getWays().iterator().next().get("a"));
+        assertEquals(2, ds.getNodes().size());
+    }
+
+    @Test
+    public void testGeometryMemberOrder() throws IllegalDataException {
+        // coordinates before type, geometry before properties, nested geometry collection
+        final DataSet ds = new GeoJsonReader().doParseDataSet(stream(
+            "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"geometry\": {"
+                + "\"type\": \"GeometryCollection\", \"geometries\": [null,"
+                + " {\"coordinates\": [[1, 2], [3, 4], [5, 6], [1, 2]], \"type\": \"LineString\"},"
+                + " {\"type\": \"Polygon\", \"bbox\": [0, 0, 1, 1], \"coordinates\": [[[0, 0], [0, 1], [1, 1]], [[0.1, 0.1], [0.1, 0.2], [0.2, 0.2]]]}]},"
+                + " \"properties\": {\"a\": \"b\"}}]}"), null);
+        assertEquals(3, ds.getWays().size());
+        assertEquals(1, ds.getRelations().size());
+        assertEquals(9, ds.getNodes().size());
+        for (Way way : ds.getWays()) {
+            assertTrue(way.isClosed());
+            assertEquals(way.getReferrers().isEmpty() ? "b" : null, way.get("a"));
+        }
+        assertEquals("b", ds.getRelations().iterator().next().get("a"));
+    }
+
+    @Test
+    public void testDeduplicateNodes() throws IllegalDataException {
+        final String json = "{\"type\": \"FeatureCollection\", \"features\": ["
+            + "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [1, 0], [1, 1], [0, 1], [0, 0]]]}},"
+            + "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [[[1, 0], [2, 0], [2, 1], [1.00000001, 1], [1, 0]]]}},"
+            + "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [0, 0]}, \"properties\": {\"a\": \"b\"}}]}";
+        assertEquals(4 + 4 + 1, new GeoJsonReader().doParseDataSet(stream(json), null).getNodes().size());
+
+        final GeoJsonReader reader = new GeoJsonReader(GeoJsonReader.Options.DEDUPLICATE_NODES);
+        final DataSet ds = reader.doParseDataSet(stream(json), null);
+        assertEquals(6 + 1, ds.getNodes().size());
+        assertEquals(2, reader.getReusedNodeCount());
+        for (Way way : ds.getWays()) {
+            assertTrue(way.isClosed());
+            assertEquals(5, way.getNodesCount());
+        }
+        final Node shared = ds.getWays().iterator().next().getNode(1);
+        assertEquals(2, shared.getParentWays().size());
+    }
+
+    @Test
+    public void testParallel() throws IllegalDataException {
+        assertEquals(
+            describe(new GeoJsonReader().doParseDataSet(GeojsonTest.class.getResourceAsStream("geo.json"), null)),
+            describe(new GeoJsonReader(GeoJsonReader.Options.PARALLEL)
+                .doParseDataSet(GeojsonTest.class.getResourceAsStream("geo.json"), null)));
+
+        final String json = grid(40);
+        for (GeoJsonReader.Options[] options : Arrays.asList(
+            new GeoJsonReader.Options[0], new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final GeoJsonReader sequential = new GeoJsonReader(options);
+            final DataSet expected = sequential.doParseDataSet(stream(json), null);
+            final List<GeoJsonReader.Options> parallelOptions = new ArrayList<>(Arrays.asList(options));
+            parallelOptions.add(GeoJsonReader.Options.PARALLEL);
+            final GeoJsonReader parallel = new GeoJsonReader(parallelOptions.toArray(new GeoJsonReader.Options[0]));
+            final DataSet actual = parallel.doParseDataSet(stream(json), null);
+            assertEquals(expected.getNodes().size(), actual.getNodes().size());
+            assertEquals(describe(expected), describe(actual));
+            assertEquals(sequential.getReusedNodeCount(), parallel.getReusedNodeCount());
+            assertEquals(options.length > 0, parallel.getReusedNodeCount() > 0);
+        }
+    }
+
+    @Test
+    public void testSequence() throws IllegalDataException {
+        final String json = grid(30);
+        final List<String> features = Json.createReader(new StringReader(json)).readObject().getJsonArray("features")
+            .stream().map(JsonValue::toString).collect(Collectors.toList());
+        // malformed records, the last one after a feature was converted
+        features.add(10, "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [1,");
+        features.add(20, "not json");
+        features.add(30, "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"properties\": {},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}}, {\"type\": ]}");
+        final String lines = String.join("\n", features);
+        final String sequence = features.stream().map(it -> "\u001e" + it + "\n").collect(Collectors.joining());
+
+        for (GeoJsonReader.Options[] options : Arrays.asList(
+            new GeoJsonReader.Options[0], new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final List<String> expected = describe(new GeoJsonReader(options).doParseDataSet(stream(json), null));
+            final List<GeoJsonReader.Options> sequenceOptions = new ArrayList<>(Arrays.asList(options));
+            sequenceOptions.add(GeoJsonReader.Options.SEQUENCE);
+            for (String input : Arrays.asList(lines, sequence)) {
+                final GeoJsonReader reader = new GeoJsonReader(sequenceOptions.toArray(new GeoJsonReader.Options[0]));
+                assertEquals(expected, describe(reader.doParseDataSet(stream(input), null)));
+            }
+        }
+    }
+
+    @Test
+    public void testCancel() throws IllegalDataException {
+        final String json = grid(10);
+        for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL}, new GeoJsonReader.Options[] {GeoJsonReader.Options.SEQUENCE})) {
+            assertNull(new GeoJsonReader(options).doParseDataSet(stream(json), monitor(true, new ArrayList<>())));
+            // canceled by another thread before the import starts, as a multi-file import does
+            final GeoJsonReader reader = new GeoJsonReader(options);
+            reader.cancel();
+            assertNull(reader.doParseDataSet(stream(json), monitor(false, new ArrayList<>())));
+        }
+    }
+
+    @Test
+    public void testProgress() throws IOException, IllegalDataException {
+        final byte[] json = grid(30).getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json);
+        }
+        for (boolean gzip : new boolean[] {false, true}) {
+            // the ticks follow the bytes read from the file, not from the decompressed input
+            final byte[] file = gzip ? compressed.toByteArray() : json;
+            final List<Integer> ticks = new ArrayList<>();
+            try (ByteCountingInputStream in = new ByteCountingInputStream(new ByteArrayInputStream(file));
+                 InputStream input = gzip ? new GZIPInputStream(in) : in) {
+                final GeoJsonReader reader = new GeoJsonReader();
+                reader.setInputProgress(in::getCount, file.length);
+                assertNotNull(reader.doParseDataSet(input, monitor(false, ticks)));
+            }
+            assertTrue(ticks.toString(), ticks.size() > 2);
+            for (int i = 1; i < ticks.size(); i++) {
+                assertTrue(ticks.toString(), ticks.get(i) > ticks.get(i - 1));
+            }
+            assertTrue(ticks.toString(), ticks.get(0) > 0 && ticks.get(ticks.size() - 1) <= 1000);
+        }
+    }
+
+    /**
+     * Create a progress monitor which records the ticks set on it. It is a proxy, so it only depends on the methods
+     * the reader calls.
+     */
+    static ProgressMonitor monitor(final boolean canceled, final List<Integer> ticks) {
+        return (ProgressMonitor) Proxy.newProxyInstance(ProgressMonitor.class.getClassLoader(), new Class<?>[] {ProgressMonitor.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isCanceled":
+                        return canceled;
+                    case "getTicks":
+                        return ticks.isEmpty() ? 0 : ticks.get(ticks.size() - 1);
+                    case "setTicks":
+                        ticks.add((Integer) args[0]);
+                        return null;
+                    default:
+                        return method.getReturnType() == boolean.class ? Boolean.FALSE
+                            : method.getReturnType() == int.class ? Integer.valueOf(0) : null;
+                }
+            });
+    }
+
+    @Test
+    public void testArea() throws IllegalDataException {
+        final String json = grid(20);
+        final Bounds area = new Bounds(0.0042, 0.0052, 0.0088, 0.0098);
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setArea(area);
+        final DataSet ds = reader.doParseDataSet(stream(json), null);
+        // 5 x 5 squares (one row of 5 with a hole) and their points, and 4 lines
+        assertEquals(20 + 5 * 2 + 4, ds.getWays().size());
+        assertEquals(5, ds.getRelations().size());
+        for (OsmPrimitive primitive : ds.getPrimitives(it -> it.hasKeys() && !(it instanceof Relation))) {
+            final List<Node> nodes = primitive instanceof Way ? ((Way) primitive).getNodes() : Arrays.asList((Node) primitive);
+            final Bounds envelope = new Bounds(nodes.get(0).getCoor());
+            nodes.forEach(node -> envelope.extend(node.getCoor()));
+            assertTrue(area.intersects(envelope));
+        }
+        assertEquals(25, ds.getNodes().stream().filter(OsmPrimitive::hasKeys).count());
+
+        final GeoJsonReader parallel = new GeoJsonReader(GeoJsonReader.Options.PARALLEL);
+        parallel.setArea(area);
+        assertEquals(describe(ds), describe(parallel.doParseDataSet(stream(json), null)));
+    }
+
+    @Test
+    public void testMetrics() throws IllegalDataException {
+        final String grid = grid(10);
+        // a feature with an unknown geometry, which is logged as warning
+        final String json = grid.substring(0, grid.length() - 2)
+            + ", {\"type\": \"Feature\", \"geometry\": {\"type\": \"Circle\", \"radius\": 1}}]}";
+        final List<GeoJsonImportMetrics> imports = new ArrayList<>();
+        for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+            new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL, GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final DataSet ds = GeoJsonReader.parseDataSet(stream(json), null, imports::add, options);
+            assertEquals(describe(new GeoJsonReader(options).doParseDataSet(stream(json), null)), describe(ds));
+        }
+        assertEquals(2, imports.size());
+        for (GeoJsonImportMetrics metrics : imports) {
+            assertEquals(2 * 10 * 10 + 10 + 1, metrics.getFeatureCount());
+            final Map<String, Long> geometries = new TreeMap<>();
+            geometries.put("LineString", 10L);
+            geometries.put("Point", 100L);
+            geometries.put("Polygon", 100L);
+            assertEquals(geometries, metrics.getGeometryCounts());
+            // 5 positions per square, 3 per hole in every 7th row, 1 per point and 2 per line
+            assertEquals(100 * 5 + 20 * 3 + 100 + 10 * 2, metrics.getVertexCount());
+            assertEquals(json.getBytes(StandardCharsets.UTF_8).length, metrics.getBytesRead());
+            assertEquals(1, metrics.getWarningCount());
+            assertTrue(metrics.getPeakFeatureRate() > 0);
+            long phases = 0;
+            for (GeoJsonImportMetrics.Phase phase : GeoJsonImportMetrics.Phase.values()) {
+                assertTrue(metrics.getNanos(phase) >= 0);
+                phases += metrics.getNanos(phase);
+            }
+            assertTrue(metrics.getNanos(GeoJsonImportMetrics.Phase.INSERT) > 0);
+            assertTrue(metrics.getTotalNanos() > 0);
+            assertTrue(metrics.toString().startsWith("GeoJSON import: 211 features {LineString=10, Point=100, Polygon=100}"));
+            if (metrics == imports.get(0)) {
+                // sequentially, the phases cover the whole import
+                assertEquals(metrics.getTotalNanos(), phases);
+            }
+        }
+    }
+
+    @Test
+    public void testDiagnostics() throws IllegalDataException {
+        final StringBuilder json = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+        for (int i = 0; i < 1000; i++) {
+            json.append("{\"type\": \"Feature\", \"properties\": {\"a\": {\"b\": 1}}, \"geometry\": ")
+                .append("{\"type\": \"GeometryCollection\", \"geometries\": [null, {\"type\": \"Point\", \"coordinates\": [")
+                .append(i * 0.001).append(", 0]}]}}, ");
+        }
+        // an unknown geometry with a large member, which is abbreviated
+        json.append("{\"type\": \"Feature\", \"geometry\": {\"type\": \"Circle\", \"coordinates\": [");
+        for (int i = 0; i < 10000; i++) {
+            json.append(i == 0 ? "" : ", ").append(i);
+        }
+        json.append("]}}]}");
+
+        for (GeoJsonReader.Options[] options : Arrays.asList(
+            new GeoJsonReader.Options[0], new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL})) {
+            final GeoJsonReader reader = new GeoJsonReader(options);
+            assertEquals(1000, reader.doParseDataSet(stream(json.toString()), null).getNodes().size());
+            final GeoJsonDiagnostics diagnostics = reader.getDiagnostics();
+            assertEquals(1000, diagnostics.getCount(GeoJsonDiagnostics.Kind.NULL_GEOMETRY));
+            assertEquals(1000, diagnostics.getCount(GeoJsonDiagnostics.Kind.UNSUPPORTED_PROPERTY));
+            assertEquals(1, diagnostics.getCount(GeoJsonDiagnostics.Kind.UNKNOWN_GEOMETRY));
+            assertEquals(2001, diagnostics.getTotalCount());
+
+            final List<GeoJsonDiagnostics.Issue> examples = diagnostics.getExamples();
+            assertEquals(2 * GeoJsonDiagnostics.MAX_EXAMPLES + 1, examples.size());
+            for (GeoJsonDiagnostics.Issue issue : examples) {
+                assertTrue(issue.getDetail() == null || issue.getDetail().length() <= GeoJsonDiagnostics.MAX_DETAIL_LENGTH);
+            }
+            final GeoJsonDiagnostics.Issue unknown = examples.get(0);
+            assertEquals(GeoJsonDiagnostics.Kind.UNKNOWN_GEOMETRY, unknown.getKind());
+            assertEquals(1000, unknown.getFeatureIndex());
+            assertTrue(unknown.getDetail(), unknown.getDetail().startsWith("{\"type\":\"Circle\",\"coordinates\":[0,1,2,"));
+            assertTrue(unknown.getDetail().endsWith("…"));
+            if (options.length == 0) {
+                assertEquals(0, examples.get(1).getFeatureIndex());
+                assertEquals("a (OBJECT)", examples.get(1 + GeoJsonDiagnostics.MAX_EXAMPLES).getDetail());
+            }
+            assertTrue(diagnostics.toString(), diagnostics.toString().contains("1000 × "));
+        }
+        assertTrue(new GeoJsonReader().getDiagnostics().isEmpty());
+    }
+
+    @Test
+    public void testBatches() throws IllegalDataException {
+        final String json = grid(20);
+        final String sequence = Json.createReader(new StringReader(json)).readObject().getJsonArray("features")
+            .stream().map(JsonValue::toString).collect(Collectors.joining("\n"));
+        for (GeoJsonReader.Options[] options : Arrays.asList(
+            new GeoJsonReader.Options[0],
+            new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES},
+            new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL},
+            new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL, GeoJsonReader.Options.DEDUPLICATE_NODES},
+            new GeoJsonReader.Options[] {GeoJsonReader.Options.SEQUENCE, GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            final boolean isSequence = Arrays.asList(options).contains(GeoJsonReader.Options.SEQUENCE);
+            final List<String> expected = describe(new GeoJsonReader(options).doParseDataSet(stream(isSequence ? sequence : json), null));
+            final GeoJsonReader reader = new GeoJsonReader(options);
+            reader.setBatchSize(100);
+            // the number of primitives in the dataset whenever the reader reads more input
+            final List<Integer> sizes = new ArrayList<>();
+            final InputStream input = new FilterInputStream(stream(isSequence ? sequence : json)) {
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    sizes.add(reader.getDataSet().allPrimitives().size());
+                    return super.read(b, off, Math.min(len, 1024));
+                }
+            };
+            assertEquals(Arrays.toString(options), expected, describe(reader.doParseDataSet(input, null)));
+            if (!Arrays.asList(options).contains(GeoJsonReader.Options.PARALLEL)) {
+                // in parallel, the first batch may only be ready at the end
+                assertTrue(sizes.stream().anyMatch(size -> size > 0 && size < expected.size()));
+            }
+        }
+    }
+
+    @Test
+    public void testMergeDataSets() throws IllegalDataException {
+        // the grid split into tiles, whose polygons share the vertices along the edges of the tiles
+        final String json = grid(8);
+        final List<JsonValue> features = Json.createReader(new StringReader(json)).readObject().getJsonArray("features");
+        final DataSet expected = new GeoJsonReader(GeoJsonReader.Options.DEDUPLICATE_NODES).doParseDataSet(stream(json), null);
+        for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES, GeoJsonReader.Options.PARALLEL})) {
+            final GeoJsonReader merged = new GeoJsonReader(GeoJsonReader.Options.DEDUPLICATE_NODES);
+            for (int i = 0; i < features.size(); i += 25) {
+                final String tile = "{\"type\": \"FeatureCollection\", \"features\": ["
+                    + features.subList(i, Math.min(i + 25, features.size())).stream().map(JsonValue::toString)
+                    .collect(Collectors.joining(",")) + "]}";
+                final DataSet dataSet = new GeoJsonReader(options).doParseDataSet(stream(tile), null);
+                merged.mergeDataSet(dataSet);
+                assertTrue(dataSet.isEmpty());
+            }
+            assertEquals(expected.getNodes().size(), merged.getDataSet().getNodes().size());
+            assertEquals(describe(expected), describe(merged.getDataSet()));
+        }
+    }
+
+    @Test
+    public void testMultipolygonRelations() throws IllegalDataException {
+        // a MultiPolygon of a square with a hole and a square, and one of a single square
+        final String json = "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"properties\": {\"a\": \"b\"},"
+            + " \"geometry\": {\"type\": \"MultiPolygon\", \"coordinates\": [[[[0, 0], [4, 0], [4, 4], [0, 4], [0, 0]],"
+            + " [[1, 1], [2, 1], [2, 2], [1, 1]]], [[[5, 0], [6, 0], [6, 1], [5, 0]]]]}},"
+            + " {\"type\": \"Feature\", \"properties\": {\"c\": \"d\"}, \"geometry\": {\"type\": \"MultiPolygon\","
+            + " \"coordinates\": [[[[7, 0], [8, 0], [8, 1], [7, 0]]]]}}]}";
+
+        final DataSet parts = new GeoJsonReader().doParseDataSet(stream(json), null);
+        assertEquals(1, parts.getRelations().size());
+        assertEquals("multipolygon", parts.getRelations().iterator().next().get("type"));
+        assertEquals(1, parts.getWays().stream().filter(way -> way.hasKey("a")).count());
+
+        final DataSet ds = new GeoJsonReader(GeoJsonReader.Options.MULTIPOLYGON_RELATIONS).doParseDataSet(stream(json), null);
+        assertEquals(1, ds.getRelations().size());
+        final Relation relation = ds.getRelations().iterator().next();
+        assertEquals("b", relation.get("a"));
+        assertEquals("multipolygon", relation.get("type"));
+        assertEquals(Arrays.asList("outer", "inner", "outer"),
+            relation.getMembers().stream().map(RelationMember::getRole).collect(Collectors.toList()));
+        assertTrue(relation.getMembers().stream().allMatch(member -> member.getMember().getKeys().isEmpty()));
+        // the single polygon stays a closed way
+        assertEquals(1, ds.getWays().stream().filter(way -> way.hasKey("c") && way.isClosed()).count());
+        assertEquals(describe(ds), describe(new GeoJsonReader(GeoJsonReader.Options.MULTIPOLYGON_RELATIONS,
+            GeoJsonReader.Options.PARALLEL, GeoJsonReader.Options.UTF8_PARSER).doParseDataSet(stream(json), null)));
+    }
+
+    @Test
+    public void testFilter() throws IllegalDataException {
+        final String json = grid(20);
+        final List<JsonValue> features = Json.createReader(new StringReader(json)).readObject().getJsonArray("features");
+        for (String expression : Arrays.asList("landuse == forest && id >= 100", "$geometry == Point && name != p1_1",
+                "highway != residential && $geometry != Point")) {
+            // the matching features with only the kept property, with the geometry before and after the properties
+            final StringBuilder expectedJson = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+            final List<String> reordered = new ArrayList<>();
+            int matching = 0;
+            for (JsonValue value : features) {
+                final JsonObject feature = value.asJsonObject();
+                final JsonObject properties = feature.getJsonObject("properties");
+                reordered.add(Json.createObjectBuilder().add("type", "Feature").add("geometry", feature.get("geometry"))
+                    .add("properties", properties).build().toString());
+                if (!FeatureFilter.parse(expression).accepts(properties, feature.getJsonObject("geometry").getString("type"))) {
+                    continue;
+                }
+                final JsonObjectBuilder kept = Json.createObjectBuilder();
+                properties.forEach((key, property) -> {
+                    if (!"id".equals(key)) {
+                        kept.add(key, property);
+                    }
+                });
+                expectedJson.append(matching++ == 0 ? "" : ",").append(Json.createObjectBuilder(feature).add("properties", kept).build());
+            }
+            assertTrue(expression, matching > 0 && matching < features.size());
+            final List<String> expected = describe(new GeoJsonReader().doParseDataSet(stream(expectedJson.append("]}").toString()), null));
+
+            final String geometryFirst = "{\"type\": \"FeatureCollection\", \"features\": [" + String.join(",", reordered) + "]}";
+            final String lines = String.join("\n", reordered);
+            for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+                    new GeoJsonReader.Options[] {GeoJsonReader.Options.UTF8_PARSER},
+                    new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL, GeoJsonReader.Options.UTF8_PARSER})) {
+                for (String input : Arrays.asList(json, geometryFirst)) {
+                    final GeoJsonReader reader = new GeoJsonReader(options);
+                    reader.setFilter(FeatureFilter.create(expression, new ArrayList<>(), Arrays.asList("id")));
+                    assertEquals(expression, expected, describe(reader.doParseDataSet(stream(input), null)));
+                    assertEquals(features.size() - matching, reader.getFilteredFeatureCount());
+                }
+            }
+            // a sequence of features, which are streamed like those of a collection
+            final String propertiesFirst = features.stream().map(JsonValue::toString).collect(Collectors.joining("\n"));
+            for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[] {GeoJsonReader.Options.SEQUENCE},
+                    new GeoJsonReader.Options[] {GeoJsonReader.Options.SEQUENCE, GeoJsonReader.Options.UTF8_PARSER})) {
+                for (String input : Arrays.asList(propertiesFirst, lines)) {
+                    final GeoJsonReader reader = new GeoJsonReader(options);
+                    reader.setFilter(FeatureFilter.create(expression, new ArrayList<>(), Arrays.asList("id")));
+                    assertEquals(expression, expected, describe(reader.doParseDataSet(stream(input), null)));
+                    assertEquals(features.size() - matching, reader.getFilteredFeatureCount());
+                }
+            }
+        }
+
+        // a feature whose type is not its first member is still read
+        final GeoJsonReader typeLast = new GeoJsonReader(GeoJsonReader.Options.SEQUENCE);
+        typeLast.setFilter(FeatureFilter.parse("a == b"));
+        final DataSet typeLastResult = typeLast.doParseDataSet(stream("{\"properties\": {\"a\": \"b\"}, \"geometry\":"
+            + " {\"type\": \"Point\", \"coordinates\": [1, 2]}, \"type\": \"Feature\"}\n{\"properties\": {\"a\": \"c\"},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}, \"type\": \"Feature\"}"), null);
+        assertEquals(1, typeLastResult.getNodes().size());
+        assertEquals(1, typeLast.getFilteredFeatureCount());
+
+        // a geometry collection before the properties, which is converted once the feature is accepted
+        final String collection = "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"geometry\": {"
+            + "\"type\": \"GeometryCollection\", \"geometries\": [{\"type\": \"Point\", \"coordinates\": [1, 2]},"
+            + " {\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]}]}, \"properties\": {\"a\": \"b\"}}]}";
+        for (String expression : Arrays.asList("a == b", "a == c", "$geometry == GeometryCollection", "$geometry == Point")) {
+            final GeoJsonReader reader = new GeoJsonReader(GeoJsonReader.Options.UTF8_PARSER);
+            reader.setFilter(FeatureFilter.parse(expression));
+            final DataSet ds = reader.doParseDataSet(stream(collection), null);
+            final boolean accepted = !expression.endsWith("c") && !expression.endsWith("Point");
+            assertEquals(expression, accepted ? 4 : 0, ds.allPrimitives().size());
+            assertEquals(expression, accepted ? 0 : 1, reader.getFilteredFeatureCount());
+        }
+    }
+
+    @Test
+    public void testFilterMalformedRecord() throws IllegalDataException {
+        // the geometry of the first record is deferred until its properties are read, which are malformed
+        final String lines = "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"geometry\":"
+            + " {\"type\": \"Point\", \"coordinates\": [1, 2]}, \"properties\": {\"a\": ]}]}\n"
+            + "{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Feature\", \"properties\": {\"a\": \"b\", \"type\": \"site\"}}]}";
+        final GeoJsonReader reader = new GeoJsonReader(GeoJsonReader.Options.SEQUENCE);
+        reader.setFilter(FeatureFilter.parse("a == b"));
+        final DataSet ds = reader.doParseDataSet(stream(lines), null);
+        assertEquals(1, reader.getDiagnostics().getCount(GeoJsonDiagnostics.Kind.MALFORMED_RECORD));
+        assertEquals(1, ds.getRelations().size());
+        assertTrue(ds.getNodes().isEmpty());
+    }
+
+    /**
+     * Create a FeatureCollection with a grid of adjacent squares, some with a hole, lines along the rows and points
+     * at the centers.
+     */
+    static String grid(final int size) {
+        final StringBuilder json = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                final double x0 = x * 0.001;
+                final double y0 = y * 0.001;
+                final double x1 = x0 + 0.001;
+                final double y1 = y0 + 0.001;
+                json.append(x + y == 0 ? "" : ",").append("{\"type\": \"Feature\", \"properties\": {\"id\": ").append(x * size + y)
+                    .append(", \"landuse\": \"").append((x + y) % 3 == 0 ? "forest" : "meadow").append("\"}, \"geometry\": {")
+                    .append("\"type\": \"Polygon\", \"coordinates\": [[[").append(x0).append(',').append(y0).append("], [")
+                    .append(x1).append(',').append(y0).append("], [").append(x1).append(',').append(y1).append("], [")
+                    .append(x0).append(',').append(y1).append("], [").append(x0).append(',').append(y0).append("]]");
+                if (y % 7 == 0) {
+                    json.append(", [[").append(x0 + 0.0002).append(',').append(y0 + 0.0002).append("], [")
+                        .append(x0 + 0.0004).append(',').append(y0 + 0.0002).append("], [")
+                        .append(x0 + 0.0004).append(',').append(y0 + 0.0004).append("]]");
+                }
+                json.append("]}}, {\"type\": \"Feature\", \"properties\": {\"name\": \"p").append(x).append('_').append(y)
+                    .append("\"}, \"geometry\": {\"type\": \"Point\", \"coordinates\": [").append(x0 + 0.0005).append(',')
+                    .append(y0 + 0.0005).append("]}}");
+            }
+            json.append(", {\"type\": \"Feature\", \"properties\": {\"highway\": \"residential\"}, \"geometry\": {")
+                .append("\"type\": \"LineString\", \"coordinates\": [[").append(x * 0.001).append(", 0], [")
+                .append(x * 0.001).append(',').append(size * 0.001).append("]]}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Describe the primitives of a dataset independently of their ids and order.
+     */
+    static List<String> describe(final DataSet ds) {
+        return ds.allPrimitives().stream().map(GeojsonTest::describe).sorted().collect(Collectors.toList());
+    }
+
+    private static String describe(final OsmPrimitive primitive) {
+        final StringBuilder sb = new StringBuilder(primitive.getClass().getSimpleName()).append(new TreeMap<>(primitive.getKeys()));
+        if (primitive instanceof Node) {
+            sb.append(((Node) primitive).getCoor());
+        } else if (primitive instanceof Way) {
+            ((Way) primitive).getNodes().forEach(node -> sb.append(node.getCoor()));
+        } else if (primitive instanceof Relation) {
+            ((Relation) primitive).getMembers().forEach(member -> sb.append(member.getRole()).append('=').append(describe(member.getMember())));
+        }
+        return sb.toString();
+    }
+
+    static InputStream stream(final String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
     private static boolean areEqualNodes(final OsmPrimitive p1, final OsmPrimitive p2) {
         return (p1 instanceof Node)
             && (p2 instanceof Node)
@@ -0,0 +1,69 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JsonSequenceInputStreamTest {
+
+    @Test
+    public void testNewlineDelimited() throws IOException {
+        assertEquals(Arrays.asList("{\"a\": 1}", "{\"b\": 2}\r", "[3]"),
+            records("\n  {\"a\": 1}\n\n{\"b\": 2}\r\n\t \n[3]"));
+    }
+
+    @Test
+    public void testTextSequence() throws IOException {
+        assertEquals(Arrays.asList("{\"a\":\n 1}\n", "{\"b\": 2}\n", "[3]"),
+            records("\u001e{\"a\":\n 1}\n\u001e\n\u001e{\"b\": 2}\n\u001e[3]"));
+    }
+
+    @Test
+    public void testSkipRecord() throws IOException {
+        try (JsonSequenceInputStream records = new JsonSequenceInputStream(GeojsonTest.stream("abc\ndef\n"))) {
+            assertTrue(records.nextRecord());
+            assertEquals('a', records.read());
+            assertTrue(records.nextRecord());
+            assertEquals(2, records.getRecordNumber());
+            assertEquals('d', records.read());
+            assertFalse(records.nextRecord());
+        }
+    }
+
+    @Test
+    public void testLargeRecord() throws IOException {
+        final String large = String.join("", Collections.nCopies(100_000, "0123456789"));
+        assertEquals(Arrays.asList(large, "x", large), records(large + '\n' + "x\n" + large));
+    }
+
+    private static List<String> records(final String sequence) throws IOException {
+        final List<String> result = new ArrayList<>();
+        try (JsonSequenceInputStream records = new JsonSequenceInputStream(GeojsonTest.stream(sequence))) {
+            while (records.nextRecord()) {
+                result.add(readAll(records));
+            }
+        }
+        return result;
+    }
+
+    private static String readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
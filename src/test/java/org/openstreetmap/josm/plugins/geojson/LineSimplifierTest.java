@@ -0,0 +1,205 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class LineSimplifierTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    /** About 0.1 m in degrees of latitude */
+    private static final double NOISE = 0.000001;
+
+    @Test
+    public void testLine() throws IllegalDataException {
+        // a straight line along a meridian with centimetre noise, and a corner
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i <= 1000; i++) {
+            line.append(i == 0 ? "" : ", ").append('[').append(10 + (i % 2) * NOISE).append(", ").append(i * 0.00001).append(']');
+        }
+        line.append(", [10.01, 0.01]");
+        final String json = "{\"type\": \"Feature\", \"properties\": {\"natural\": \"coastline\"}, \"geometry\": "
+            + "{\"type\": \"LineString\", \"coordinates\": [" + line + "]}}";
+
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setSimplification(1);
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream(json), null);
+        final Way way = ds.getWays().iterator().next();
+        assertEquals(3, way.getNodesCount());
+        assertEquals(1002 - 3, reader.getRemovedVertexCount());
+        assertEquals(10, way.firstNode().lon(), 0);
+        assertEquals(0.01, way.getNode(1).lat(), 1e-12);
+        assertEquals(10.01, way.lastNode().lon(), 0);
+
+        // below the noise, nothing is removed
+        final GeoJsonReader exact = new GeoJsonReader();
+        exact.setSimplification(0.01);
+        assertEquals(1002, exact.doParseDataSet(GeojsonTest.stream(json), null).getWays().iterator().next().getNodesCount());
+        assertEquals(0, exact.getRemovedVertexCount());
+    }
+
+    @Test
+    public void testLatitudeScale() throws IllegalDataException {
+        // a meridian from the equator to 60° with a bump of 150 m at the equator and of 70 m at 60°, in degrees of longitude
+        final double metresPerDegree = 6_378_137 * Math.PI / 180;
+        final String json = "{\"type\": \"LineString\", \"coordinates\": [[10, 0], [" + (10 + 150 / metresPerDegree) + ", 0.05],"
+            + " [10, 0.1], [10, 59.9], [" + (10 + 70 / metresPerDegree / Math.cos(Math.toRadians(59.95))) + ", 59.95], [10, 60]]}";
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setSimplification(100);
+        final Way way = reader.doParseDataSet(GeojsonTest.stream(json), null).getWays().iterator().next();
+        assertEquals(4, way.getNodesCount());
+        assertEquals(0.05, way.getNode(1).lat(), 1e-12);
+        assertEquals(0.1, way.getNode(2).lat(), 1e-12);
+        assertEquals(60, way.lastNode().lat(), 0);
+    }
+
+    @Test
+    public void testRing() throws IllegalDataException {
+        // a small ring, all vertices within the tolerance of each other
+        final String json = "{\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [0.00001, 0], [0.00002, 0.000001], [0.00001, 0.00001],"
+            + " [0, 0.00001], [0, 0]]]}";
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setSimplification(100);
+        final Way way = reader.doParseDataSet(GeojsonTest.stream(json), null).getWays().iterator().next();
+        assertTrue(way.isClosed());
+        assertTrue(way.getNodesCount() >= 4);
+    }
+
+    @Test
+    public void testNoSelfIntersection() {
+        // a ring with a narrow inlet, whose sides would cross when simplified with the tolerance of the inlet width
+        final double[][] ring = {{0, 0}, {0.01, 0}, {0.01, 0.0049}, {0.001, 0.00495}, {0.0005, 0.005}, {0.001, 0.00505},
+            {0.01, 0.0051}, {0.01, 0.01}, {0, 0.01}};
+        final CoordinateBuffer coordinates = new CoordinateBuffer();
+        final JsonArrayBuilder positions = Json.createArrayBuilder();
+        for (double[] position : ring) {
+            positions.add(Json.createArrayBuilder().add(position[0]).add(position[1]));
+        }
+        coordinates.read(positions.build(), 2);
+        final int[] kept = new LineSimplifier(500, false).simplify(coordinates, 0, coordinates.size(), true);
+        assertTrue(kept.length >= 3);
+        final double[] x = new double[ring.length];
+        final double[] y = new double[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            x[i] = ring[i][0];
+            y[i] = ring[i][1];
+        }
+        assertFalse(LineSimplifier.intersectsItself(x, y, kept));
+
+        assertTrue(LineSimplifier.intersectsItself(new double[] {0, 1, 0, 1}, new double[] {0, 1, 1, 0}, new int[] {0, 1, 2, 3}));
+        assertFalse(LineSimplifier.intersectsItself(new double[] {0, 1, 1, 0}, new double[] {0, 0, 1, 1}, new int[] {0, 1, 2, 3}));
+    }
+
+    @Test
+    public void testSharedBorders() throws IllegalDataException {
+        final String json = densifiedGrid(4, 20);
+        final GeoJsonReader reader = new GeoJsonReader(GeoJsonReader.Options.DEDUPLICATE_NODES);
+        reader.setSimplification(2);
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream(json), null);
+        assertTrue(reader.getRemovedVertexCount() > ds.getNodes().size());
+
+        // every node on the border of a cell is a node of all cells with this border
+        for (Way way : ds.getWays()) {
+            assertTrue(way.isClosed());
+            for (Node node : way.getNodes()) {
+                for (Way other : ds.getWays()) {
+                    if (other != way && onBorder(other, node)) {
+                        assertTrue(node + " missing in " + other, new HashSet<>(other.getNodes()).contains(node));
+                    }
+                }
+            }
+        }
+
+        // without shared nodes, all borders are simplified on their own
+        final GeoJsonReader unshared = new GeoJsonReader();
+        unshared.setSimplification(2);
+        final Set<Integer> sizes = new HashSet<>();
+        unshared.doParseDataSet(GeojsonTest.stream(json), null).getWays().forEach(way -> sizes.add(way.getNodesCount()));
+        assertEquals(1, sizes.size());
+    }
+
+    /**
+     * A grid of square polygons of 0.001°, whose sides have a number of vertices with noise. The vertices of a side only
+     * depend on the side, so adjacent polygons have the same vertices along their common side.
+     */
+    private static String densifiedGrid(final int size, final int verticesPerSide) {
+        final StringBuilder json = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                final List<double[]> ring = new ArrayList<>();
+                side(ring, x, y, x + 1, y, verticesPerSide, false);
+                side(ring, x + 1, y, x + 1, y + 1, verticesPerSide, false);
+                side(ring, x, y + 1, x + 1, y + 1, verticesPerSide, true);
+                side(ring, x, y, x, y + 1, verticesPerSide, true);
+                ring.add(ring.get(0));
+                json.append(x + y == 0 ? "" : ", ").append("{\"type\": \"Feature\", \"properties\": {\"id\": ").append(x * size + y)
+                    .append("}, \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [[");
+                for (int i = 0; i < ring.size(); i++) {
+                    json.append(i == 0 ? "" : ", ").append('[').append(ring.get(i)[0]).append(", ").append(ring.get(i)[1]).append(']');
+                }
+                json.append("]]}}");
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Add the vertices of a side from (x0, y0) to (x1, y1) in cells, without the last one, or from (x1, y1) to (x0, y0)
+     * without the first one if reversed.
+     */
+    private static void side(final List<double[]> ring, final int x0, final int y0, final int x1, final int y1,
+            final int vertices, final boolean reversed) {
+        final List<double[]> side = new ArrayList<>();
+        for (int i = 0; i <= vertices; i++) {
+            // noise of about 0.1 m, depending only on the side and the vertex
+            final double noise = i == 0 || i == vertices ? 0 : ((x0 * 31 + y0 * 17 + x1 * 7 + y1 * 3 + i) % 3 - 1) * NOISE;
+            final double t = (double) i / vertices;
+            side.add(new double[] {(x0 + (x1 - x0) * t) * 0.001 + (x0 == x1 ? noise : 0),
+                (y0 + (y1 - y0) * t) * 0.001 + (y0 == y1 ? noise : 0)});
+        }
+        if (reversed) {
+            for (int i = side.size() - 1; i > 0; i--) {
+                ring.add(side.get(i));
+            }
+        } else {
+            ring.addAll(side.subList(0, side.size() - 1));
+        }
+    }
+
+    /**
+     * Check if a node lies on a side of the cell of a way, within the noise.
+     */
+    private static boolean onBorder(final Way cell, final Node node) {
+        double minLon = Double.MAX_VALUE;
+        double minLat = Double.MAX_VALUE;
+        for (Node n : cell.getNodes()) {
+            minLon = Math.min(minLon, n.lon());
+            minLat = Math.min(minLat, n.lat());
+        }
+        final double x0 = Math.round(minLon / 0.001) * 0.001;
+        final double y0 = Math.round(minLat / 0.001) * 0.001;
+        final double e = 3 * NOISE;
+        final boolean inX = node.lon() > x0 - e && node.lon() < x0 + 0.001 + e;
+        final boolean inY = node.lat() > y0 - e && node.lat() < y0 + 0.001 + e;
+        return inX && inY && (Math.abs(node.lon() - x0) < e || Math.abs(node.lon() - x0 - 0.001) < e
+            || Math.abs(node.lat() - y0) < e || Math.abs(node.lat() - y0 - 0.001) < e);
+    }
+}
@@ -0,0 +1,95 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class MappedFileInputStreamTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWindows() throws IOException {
+        final byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        final Path file = folder.newFile("data.bin").toPath();
+        Files.write(file, data);
+        for (int windowSize : new int[] {1, 7, 999, 1000, 4096}) {
+            for (int readSize : new int[] {1, 3, 64, 5000}) {
+                try (MappedFileInputStream in = new MappedFileInputStream(file, windowSize)) {
+                    assertEquals(1000, in.getSize());
+                    assertArrayEquals(windowSize + "/" + readSize, data, readAll(in, readSize));
+                    assertEquals(1000, in.getPosition());
+                    assertEquals(-1, in.read());
+                }
+            }
+            try (MappedFileInputStream in = new MappedFileInputStream(file, windowSize)) {
+                assertEquals(data[0] & 0xFF, in.read());
+                assertEquals(500, in.skip(500));
+                assertEquals(data[501] & 0xFF, in.read());
+                in.mark(0);
+                assertEquals(10, in.skip(10));
+                assertEquals(data[512] & 0xFF, in.read());
+                in.reset();
+                assertEquals(502, in.getPosition());
+                assertEquals(data[502] & 0xFF, in.read());
+                assertEquals(497, in.available());
+                assertEquals(497, in.skip(10_000));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        try (MappedFileInputStream in = new MappedFileInputStream(folder.newFile("empty.geojson").toPath())) {
+            assertEquals(-1, in.read(new byte[10], 0, 10));
+            assertEquals(0, in.getPosition());
+        }
+    }
+
+    @Test
+    public void testParse() throws IOException, IllegalDataException {
+        final String json = GeojsonTest.grid(10);
+        final Path file = folder.newFile("grid.geojson").toPath();
+        Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        final DataSet expected = new GeoJsonReader().doParseDataSet(GeojsonTest.stream(json), null);
+        for (GeoJsonReader.Options[] options : new GeoJsonReader.Options[][] {{}, {GeoJsonReader.Options.UTF8_PARSER}}) {
+            // windows which end in the middle of tokens
+            try (MappedFileInputStream in = new MappedFileInputStream(file, 1009)) {
+                final GeoJsonReader reader = new GeoJsonReader(options);
+                reader.setInputProgress(in::getPosition, in.getSize());
+                assertEquals(GeojsonTest.describe(expected), GeojsonTest.describe(reader.doParseDataSet(in, null)));
+            }
+        }
+    }
+
+    private static byte[] readAll(final InputStream in, final int readSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[readSize];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
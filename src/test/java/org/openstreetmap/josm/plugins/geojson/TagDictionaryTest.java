@@ -0,0 +1,63 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class TagDictionaryTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    @Test
+    public void testSharing() {
+        final TagDictionary dictionary = new TagDictionary();
+        final String key = dictionary.key(new String("highway"));
+        assertSame(key, dictionary.key(new String("highway")));
+        final String value = dictionary.value(key, new String("residential"));
+        assertSame(value, dictionary.value(key, new String("residential")));
+        assertEquals(0.5, dictionary.getKeyHitRate(), 0);
+        assertEquals(0.5, dictionary.getValueHitRate(), 0);
+        assertTrue(dictionary.getSavedBytes() > 0);
+
+        final String longValue = new String(new char[TagDictionary.MAX_VALUE_LENGTH + 1]);
+        assertNotSame(dictionary.value(key, longValue), dictionary.value(key, new String(longValue)));
+    }
+
+    @Test
+    public void testValuesPerKeyLimit() {
+        final TagDictionary dictionary = new TagDictionary();
+        final String key = dictionary.key("ref");
+        for (int i = 0; i < TagDictionary.MAX_VALUES_PER_KEY; i++) {
+            dictionary.value(key, Integer.toString(i));
+        }
+        final String value = Integer.toString(TagDictionary.MAX_VALUES_PER_KEY);
+        assertNotSame(dictionary.value(key, value), dictionary.value(key, new String(value)));
+        assertSame(dictionary.value(key, "0"), dictionary.value(key, new String("0")));
+    }
+
+    @Test
+    public void testReader() throws IllegalDataException {
+        for (GeoJsonReader.Options[] options : new GeoJsonReader.Options[][] {
+            {GeoJsonReader.Options.INTERN_TAGS}, {GeoJsonReader.Options.INTERN_TAGS, GeoJsonReader.Options.PARALLEL}}) {
+            final GeoJsonReader reader = new GeoJsonReader(options);
+            final DataSet ds = reader.doParseDataSet(GeojsonTest.stream(GeojsonTest.grid(20)), null);
+            assertEquals(GeojsonTest.describe(new GeoJsonReader().doParseDataSet(GeojsonTest.stream(GeojsonTest.grid(20)), null)),
+                GeojsonTest.describe(ds));
+            final Iterator<Node> points = ds.getNodes().stream().filter(Node::hasKeys).iterator();
+            final String key = points.next().keySet().iterator().next();
+            assertSame(key, points.next().keySet().iterator().next());
+            assertTrue(reader.getTagDictionary().getValueHitRate() > 0.25);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+public class TopoJsonReaderTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    /** Quantized arcs: the edge shared by the squares A and B, the rest of A and B, a lone square C and a line D */
+    private static final int[][][] ARCS = {
+        {{2, 0}, {2, 4}},
+        {{2, 4}, {0, 4}, {0, 0}, {2, 0}},
+        {{2, 0}, {4, 0}, {4, 4}, {2, 4}},
+        {{8, 8}, {10, 8}, {10, 10}, {8, 8}},
+        {{0, 12}, {2, 14}, {4, 12}},
+    };
+
+    private static final String OBJECTS = "\"objects\": {\"areas\": {\"type\": \"GeometryCollection\", \"geometries\": ["
+        + "{\"type\": \"Polygon\", \"arcs\": [[0, 1]], \"properties\": {\"name\": \"A\"}},"
+        + " {\"type\": \"Polygon\", \"arcs\": [[2, -1]], \"properties\": {\"name\": \"B\"}},"
+        + " {\"type\": \"MultiPolygon\", \"arcs\": [[[3]]], \"properties\": {\"name\": \"C\"}}]},"
+        + " \"line\": {\"type\": \"LineString\", \"arcs\": [4], \"properties\": {\"name\": \"D\"}},"
+        + " \"point\": {\"type\": \"Point\", \"coordinates\": [6, 6], \"properties\": {\"name\": \"E\"}}}";
+
+    @Test
+    public void testTopology() throws IllegalDataException {
+        final DataSet ds = new GeoJsonReader().doParseDataSet(GeojsonTest.stream(topology(false, true)), null);
+        // the corners of A and B, C, D and E
+        assertEquals(6 + 3 + 3 + 1, ds.getNodes().size());
+        // the three arcs of A and B, C and D
+        assertEquals(3 + 1 + 1, ds.getWays().size());
+        assertEquals(2, ds.getRelations().size());
+
+        final Relation a = getRelation(ds, "A");
+        final Relation b = getRelation(ds, "B");
+        assertEquals("multipolygon", a.get("type"));
+        assertEquals(Arrays.asList("outer", "outer"), a.getMembers().stream().map(RelationMember::getRole).collect(Collectors.toList()));
+        assertSame(a.getMember(0).getMember(), b.getMember(1).getMember());
+        final Way shared = a.getMember(0).getWay();
+        assertTrue(shared.getKeys().isEmpty());
+        assertEquals(new LatLon(20, 11), shared.firstNode().getCoor());
+        assertEquals(new LatLon(21, 11), shared.lastNode().getCoor());
+        assertSame(shared.lastNode(), a.getMember(1).getWay().firstNode());
+        assertSame(shared.firstNode(), b.getMember(0).getWay().firstNode());
+
+        final Way c = getWay(ds, "C");
+        assertTrue(c.isClosed());
+        assertEquals(4, c.getNodesCount());
+        assertEquals(3, getWay(ds, "D").getNodesCount());
+        assertEquals(new LatLon(21.5, 13), ds.getNodes().stream().filter(node -> "E".equals(node.get("name"))).findFirst()
+            .orElseThrow(AssertionError::new).getCoor());
+    }
+
+    @Test
+    public void testVariants() throws IllegalDataException {
+        final List<String> expected = GeojsonTest.describe(new GeoJsonReader().doParseDataSet(GeojsonTest.stream(topology(false, true)), null));
+        for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.UTF8_PARSER})) {
+            for (boolean quantized : new boolean[] {false, true}) {
+                for (boolean typeFirst : new boolean[] {false, true}) {
+                    final String json = topology(quantized, typeFirst);
+                    assertEquals(json, expected, GeojsonTest.describe(new GeoJsonReader(options).doParseDataSet(GeojsonTest.stream(json), null)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidArcs() throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader();
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream("{\"type\": \"Topology\", \"arcs\": [[[0, 0], [1, 1]]],"
+            + " \"objects\": {\"a\": {\"type\": \"LineString\", \"arcs\": [1]}, \"b\": {\"type\": \"Polygon\", \"arcs\": [[0.5]]},"
+            + " \"c\": {\"type\": \"LineString\", \"arcs\": [-1]}}}"), null);
+        assertEquals(2, reader.getDiagnostics().getCount(GeoJsonDiagnostics.Kind.INVALID_ARC));
+        assertEquals(1, ds.getWays().size());
+    }
+
+    @Test
+    public void testInvalidRing() throws IllegalDataException {
+        // a valid outer ring and an inner ring with an unknown arc: no way of the outer ring is left behind
+        final GeoJsonReader reader = new GeoJsonReader();
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream("{\"type\": \"Topology\", \"arcs\": [[[0, 0], [1, 0], [1, 1], [0, 0]]],"
+            + " \"objects\": {\"a\": {\"type\": \"Polygon\", \"arcs\": [[0], [5]]}}}"), null);
+        assertEquals(1, reader.getDiagnostics().getCount(GeoJsonDiagnostics.Kind.INVALID_ARC));
+        assertTrue(ds.getWays().isEmpty());
+        assertTrue(ds.getNodes().isEmpty());
+    }
+
+    @Test
+    public void testShortArcs() throws IllegalDataException {
+        // arcs without positions, with an invalid position only, and with one position
+        final GeoJsonReader reader = new GeoJsonReader();
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream("{\"type\": \"Topology\","
+            + " \"arcs\": [[[1, 1], [2, 2]], [], [[\"x\", 1]], [[3, 3]]], \"objects\": {"
+            + "\"a\": {\"type\": \"LineString\", \"arcs\": [1]}, \"b\": {\"type\": \"LineString\", \"arcs\": [-3]},"
+            + " \"c\": {\"type\": \"LineString\", \"arcs\": [0, 3]}, \"d\": {\"type\": \"LineString\", \"arcs\": [0]}}}"), null);
+        assertEquals(3, reader.getDiagnostics().getCount(GeoJsonDiagnostics.Kind.INVALID_ARC));
+        assertEquals(1, ds.getWays().size());
+        assertEquals(2, ds.getNodes().size());
+        assertEquals(new LatLon(1, 1), ds.getWays().iterator().next().firstNode().getCoor());
+    }
+
+    @Test
+    public void testArea() throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setArea(new Bounds(-0.5, -0.5, 0.5, 0.5));
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream("{\"type\": \"Topology\","
+            + " \"arcs\": [[[0, 0], [1, 0], [1, 1], [0, 0]], [[10, 10], [11, 10], [11, 11], [10, 10]], [[20, 20], [21, 21]]],"
+            + " \"objects\": {\"a\": {\"type\": \"Polygon\", \"arcs\": [[0]], \"properties\": {\"name\": \"a\"}},"
+            + " \"b\": {\"type\": \"Polygon\", \"arcs\": [[1]], \"properties\": {\"name\": \"b\"}},"
+            + " \"c\": {\"type\": \"MultiLineString\", \"arcs\": [[2], [-3]], \"properties\": {\"name\": \"c\"}},"
+            + " \"d\": {\"type\": \"Point\", \"coordinates\": [30, 30], \"properties\": {\"name\": \"d\"}},"
+            + " \"e\": {\"type\": \"MultiPoint\", \"coordinates\": [[0, 0], [40, 40]], \"properties\": {\"name\": \"e\"}}}}"), null);
+        // the geometries whose envelope intersects the area, with all their positions
+        assertEquals(1, ds.getWays().size());
+        assertEquals("a", ds.getWays().iterator().next().get("name"));
+        assertEquals(2, ds.getNodes().stream().filter(node -> "e".equals(node.get("name"))).count());
+        assertEquals(3 + 2, ds.getNodes().size());
+    }
+
+    @Test
+    public void testRepeatedEnd() throws IllegalDataException {
+        final DataSet ds = new GeoJsonReader().doParseDataSet(GeojsonTest.stream("{\"type\": \"Topology\","
+            + " \"arcs\": [[[0, 0], [0, 0], [1, 1], [2, 2], [2, 2]]], \"objects\": {\"a\": {\"type\": \"LineString\", \"arcs\": [0]}}}"), null);
+        assertEquals(3, ds.getNodes().size());
+        assertEquals(3, ds.getWays().iterator().next().getNodesCount());
+    }
+
+    @Test
+    public void testExport() throws IllegalDataException {
+        final DataSet ds = new GeoJsonReader().doParseDataSet(GeojsonTest.stream(topology(false, true)), null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GeoJsonWriter(ds).write(out, null);
+        final DataSet result = new GeoJsonReader().doParseDataSet(new ByteArrayInputStream(out.toByteArray()), null);
+
+        // the areas become closed ways over the nodes of their arcs, the shared arc is not written on its own
+        assertEquals(0, result.getRelations().size());
+        assertEquals(4, result.getWays().size());
+        assertTrue(result.getWays().stream().allMatch(way -> way.hasKey("name")));
+        for (String name : new String[] {"A", "B"}) {
+            final Way area = getWay(result, name);
+            assertTrue(area.isClosed());
+            assertEquals(5, area.getNodesCount());
+            assertEquals(getRelation(ds, name).getMembers().stream().flatMap(member -> member.getWay().getNodes().stream())
+                .map(Node::getCoor).collect(Collectors.toSet()), area.getNodes().stream().map(Node::getCoor).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    public void testFilter() throws IllegalDataException {
+        final GeoJsonReader reader = new GeoJsonReader();
+        reader.setFilter(FeatureFilter.parse("$geometry == Polygon"));
+        final DataSet ds = reader.doParseDataSet(GeojsonTest.stream(topology(true, true)), null);
+        assertEquals(3, reader.getFilteredFeatureCount());
+        assertEquals(2, ds.getRelations().size());
+        assertNotNull(getRelation(ds, "B"));
+        assertEquals(3, ds.getWays().size());
+    }
+
+    private static Relation getRelation(final DataSet ds, final String name) {
+        return ds.getRelations().stream().filter(relation -> name.equals(relation.get("name"))).findFirst()
+            .orElseThrow(AssertionError::new);
+    }
+
+    private static Way getWay(final DataSet ds, final String name) {
+        return ds.getWays().stream().filter(way -> name.equals(way.get("name"))).findFirst().orElseThrow(AssertionError::new);
+    }
+
+    /**
+     * Write the test topology, with a transform of (0.5, 0.25) and (10, 20).
+     *
+     * @param quantized if the arcs are quantized and delta-encoded, otherwise they are absolute positions
+     * @param typeFirst if the {@code type} member is first, so the arcs are streamed
+     */
+    private static String topology(final boolean quantized, final boolean typeFirst) {
+        final StringBuilder json = new StringBuilder("{").append(typeFirst ? "\"type\": \"Topology\", " : "");
+        if (quantized) {
+            json.append("\"transform\": {\"scale\": [0.5, 0.25], \"translate\": [10, 20]}, ");
+        }
+        json.append("\"arcs\": [");
+        for (int arc = 0; arc < ARCS.length; arc++) {
+            json.append(arc == 0 ? "[" : ", [");
+            for (int i = 0; i < ARCS[arc].length; i++) {
+                final int[] position = ARCS[arc][i];
+                final int[] previous = i == 0 ? new int[2] : ARCS[arc][i - 1];
+                json.append(i == 0 ? "[" : ", [");
+                if (quantized) {
+                    json.append(position[0] - previous[0]).append(", ").append(position[1] - previous[1]);
+                } else {
+                    json.append(position[0] * 0.5 + 10).append(", ").append(position[1] * 0.25 + 20);
+                }
+                json.append(']');
+            }
+            json.append(']');
+        }
+        String objects = OBJECTS;
+        if (!quantized) {
+            objects = objects.replace("[6, 6]", "[13, 21.5]");
+        }
+        return json.append("], ").append(objects).append(typeFirst ? "}" : ", \"type\": \"Topology\"}").toString();
+    }
+}
@@ -0,0 +1,304 @@
+package org.openstreetmap.josm.plugins.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+/**
+ * Conformance of {@link Utf8JsonParser} with the javax.json parser, which is the reference.
+ */
+public class Utf8JsonParserTest {
+
+    @Rule
+    public JOSMTestRules rules = new JOSMTestRules();
+
+    private static final JsonParserFactory REFERENCE = Json.createParserFactory(null);
+
+    private static final List<String> DOCUMENTS = Arrays.asList(
+        "{}",
+        "[]",
+        " \t\r\n[ 1 , 2 ]\n",
+        "{\"a\": {\"b\": [true, false, null, {}, []]}, \"c\": \"d\"}",
+        "[0, -0, 1, -1, 12, 123456789012345678, 1234567890123456789, 12345678901234567890123, -9223372036854775808]",
+        "[0.0, -0.0, 1.0, 1.5, -1.25e-3, 1e2, 1E+2, 1e-2, 0.1, 0.30000000000000004, 1e400, 1e-400, 123456789.123456789]",
+        "[2147483648, -2147483649, 1.9e10, 4.5, -4.5]",
+        "[\"\", \"a\", \"äöü\", \"日本\", \"😀\", \"a\\\"b\\\\c\\/d\\be\\ff\\ng\\rh\\ti\", \"\\u0041\\u00e4\\u65e5\\ud83d\\ude00\"]",
+        "{\"type\": \"type\", \"type\": \"duplicate\", \"\\u0074ype\": \"escaped\"}",
+        "\"string\"",
+        "42",
+        "-1.5e3",
+        "true",
+        "null",
+        "{\"type\": \"Feature\", \"properties\": {\"name\": \"Grüße \\\"x\\\"\", \"n\": 1}, \"geometry\": {\"type\": \"Point\", "
+            + "\"coordinates\": [8.5, 47.25]}}",
+        GeojsonTest.grid(3));
+
+    private static final List<String> MALFORMED = Arrays.asList(
+        "", " ", "[", "]", "{", "[1,]", "[,1]", "[1 2]", "{\"a\" 1}", "{\"a\": 1,}", "{1: 2}", "{\"a\": }", "[01]", "[1.]",
+        "[.5]", "[-]", "[1e]", "[1e+]", "[+1]", "[tru]", "[nul]", "[True]", "[\"a]", "[\"\\x\"]", "[\"\\u12\"]",
+        "[\"\\u12g4\"]", "[\"a\nb\"]", "{} x", "[] []", "{\"a\": 1}}", "[1]]", "'a'");
+
+    @Test
+    public void testEvents() {
+        for (String json : DOCUMENTS) {
+            final List<String> expected = trace(REFERENCE.createParser(GeojsonTest.stream(json)), -1);
+            assertEquals(json, expected, trace(Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(json)), -1));
+            assertEquals(json, expected, trace(Utf8JsonParser.FACTORY.createParser(new OneByteInputStream(json)), -1));
+            assertEquals(json, expected,
+                trace(Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(json), StandardCharsets.UTF_8), -1));
+        }
+    }
+
+    @Test
+    public void testLargeDocument() {
+        // larger than the buffer of the parser
+        final String json = GeojsonTest.grid(40);
+        assertTrue(json.length() > 1 << 17);
+        assertEquals(trace(REFERENCE.createParser(GeojsonTest.stream(json)), -1),
+            trace(Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(json)), -1));
+    }
+
+    @Test
+    public void testEncodings() {
+        final String json = "{\"name\": \"Grüße\", \"n\": [1, 2.5]}";
+        final List<String> expected = trace(REFERENCE.createParser(GeojsonTest.stream(json)), -1);
+        final ByteArrayOutputStream bom = new ByteArrayOutputStream();
+        bom.write(0xEF);
+        bom.write(0xBB);
+        bom.write(0xBF);
+        final byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        bom.write(utf8, 0, utf8.length);
+        assertEquals(expected, trace(Utf8JsonParser.FACTORY.createParser(new ByteArrayInputStream(bom.toByteArray())), -1));
+        for (String charset : Arrays.asList("UTF-16BE", "UTF-16LE", "UTF-16", "UTF-32BE", "UTF-32LE")) {
+            final byte[] bytes = json.getBytes(Charset.forName(charset));
+            assertEquals(charset, expected, trace(Utf8JsonParser.FACTORY.createParser(new ByteArrayInputStream(bytes)), -1));
+        }
+        assertEquals(expected, trace(Utf8JsonParser.FACTORY.createParser(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_16LE)), StandardCharsets.UTF_16LE), -1));
+    }
+
+    @Test
+    public void testMalformed() {
+        for (String json : MALFORMED) {
+            assertTrue(json, fails(() -> REFERENCE.createParser(GeojsonTest.stream(json))));
+            assertTrue(json, fails(() -> Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(json))));
+            assertTrue(json, fails(() -> Utf8JsonParser.FACTORY.createParser(new OneByteInputStream(json))));
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        final String json = "{\"a\": [1, [2, \"]\", {\"b\": \"}\\\"]\"}], 3], \"c\": {\"d\": [4], \"e\": \"\\\\\"}, \"f\": 5}";
+        final int events = trace(REFERENCE.createParser(GeojsonTest.stream(json)), -1).size();
+        for (int skipAt = 0; skipAt < events; skipAt++) {
+            final List<String> expected = trace(REFERENCE.createParser(GeojsonTest.stream(json)), skipAt);
+            assertEquals("skip at " + skipAt, expected, trace(Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(json)), skipAt));
+            assertEquals("skip at " + skipAt, expected, trace(Utf8JsonParser.FACTORY.createParser(new OneByteInputStream(json)), skipAt));
+        }
+    }
+
+    @Test
+    public void testValues() {
+        for (String json : DOCUMENTS) {
+            try (JsonParser reference = REFERENCE.createParser(GeojsonTest.stream(json));
+                 JsonParser parser = Utf8JsonParser.FACTORY.createParser(new OneByteInputStream(json))) {
+                reference.next();
+                parser.next();
+                assertEquals(json, reference.getValue(), parser.getValue());
+                assertEquals(json, reference.hasNext(), parser.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testDoubles() {
+        final Random random = new Random(42);
+        final List<String> numbers = new ArrayList<>(Arrays.asList("0.0", "-0.0", "0e5", "1e22", "1e23", "9007199254740993.0",
+            "4.9e-324", "2.4e-324", "1.7976931348623157e308", "1.8e308", "123456789012345678901234567890.5",
+            "0.000000000000000000000000000001", "3.141592653589793238462643383279", "1.00000000000000000000001"));
+        for (int i = 0; i < 10_000; i++) {
+            numbers.add(Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20)));
+            numbers.add(String.format(Locale.ROOT, "%.7f", (random.nextDouble() - 0.5) * 360));
+            numbers.add(random.nextInt(1000) + "." + Math.abs(random.nextLong()) + "e" + (random.nextInt(60) - 30));
+        }
+        for (String number : numbers) {
+            try (JsonParser parser = Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(number))) {
+                assertEquals(Event.VALUE_NUMBER, parser.next());
+                final double expected = new BigDecimal(number).doubleValue();
+                assertEquals(number, Double.doubleToLongBits(expected), Double.doubleToLongBits(((Utf8JsonParser) parser).getDouble()));
+            }
+        }
+    }
+
+    @Test
+    public void testDataSets() throws IllegalDataException {
+        final List<String> documents = new ArrayList<>(Arrays.asList(GeojsonTest.grid(20),
+            "{\"type\": \"Feature\", \"properties\": {\"name\": \"\\u00c4 \\\"b\\\"\", \"nested\": {\"a\": [1]}, \"n\": 1.50},"
+                + " \"geometry\": {\"type\": \"GeometryCollection\", \"geometries\": [{\"type\": \"Point\", \"coordinates\": "
+                + "[1e-1, -2.5E1, 100]}, {\"type\": \"Unknown\"}, {\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]}]}}"));
+        for (GeoJsonReader.Options[] options : Arrays.asList(new GeoJsonReader.Options[0],
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.DEDUPLICATE_NODES},
+                new GeoJsonReader.Options[] {GeoJsonReader.Options.PARALLEL, GeoJsonReader.Options.DEDUPLICATE_NODES})) {
+            assertEquals(GeojsonTest.describe(parse(GeojsonTest.class.getResourceAsStream("geo.json"), options)),
+                GeojsonTest.describe(parse(GeojsonTest.class.getResourceAsStream("geo.json"), with(options))));
+            for (String json : documents) {
+                assertEquals(GeojsonTest.describe(parse(GeojsonTest.stream(json), options)),
+                    GeojsonTest.describe(parse(new OneByteInputStream(json), with(options))));
+            }
+        }
+
+        final String sequence = "{\"type\": \"Point\", \"coordinates\": [1.5, 2.5]}\n{\"type\": \"Point\", \"coordinates\": [1, \n"
+            + "{\"type\": \"Feature\", \"properties\": {\"a\": \"ü\"}, \"geometry\": {\"type\": \"Point\", \"coordinates\": [3, 4]}}\n";
+        final GeoJsonReader.Options[] options = {GeoJsonReader.Options.SEQUENCE};
+        final DataSet expected = parse(GeojsonTest.stream(sequence), options);
+        assertEquals(2, expected.getNodes().size());
+        assertEquals(GeojsonTest.describe(expected), GeojsonTest.describe(parse(new OneByteInputStream(sequence), with(options))));
+    }
+
+    private static DataSet parse(final InputStream in, final GeoJsonReader.Options... options) throws IllegalDataException {
+        return new GeoJsonReader(options).doParseDataSet(in, null);
+    }
+
+    private static GeoJsonReader.Options[] with(final GeoJsonReader.Options... options) {
+        final GeoJsonReader.Options[] result = Arrays.copyOf(options, options.length + 1);
+        result[options.length] = GeoJsonReader.Options.UTF8_PARSER;
+        return result;
+    }
+
+    /**
+     * Describe the events of a parser with their values.
+     *
+     * @param skipAt the index of the event after which {@code skipArray()} and {@code skipObject()} are called, or -1
+     */
+    private static List<String> trace(final JsonParser parser, final int skipAt) {
+        final List<String> events = new ArrayList<>();
+        try (JsonParser p = parser) {
+            while (p.hasNext()) {
+                final Event event = p.next();
+                final StringBuilder description = new StringBuilder(event.name());
+                if (event == Event.KEY_NAME || event == Event.VALUE_STRING) {
+                    description.append(' ').append(p.getString());
+                } else if (event == Event.VALUE_NUMBER) {
+                    description.append(' ').append(p.getString()).append(' ').append(p.isIntegralNumber()).append(' ')
+                        .append(p.getInt()).append(' ').append(p.getLong()).append(' ').append(p.getBigDecimal());
+                }
+                events.add(description.toString());
+                if (events.size() - 1 == skipAt) {
+                    p.skipArray();
+                    p.skipObject();
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return if creating the parser or reading all events fails with a {@link JsonException}
+     */
+    private static boolean fails(final Supplier<JsonParser> parser) {
+        try (JsonParser p = parser.get()) {
+            while (p.hasNext()) {
+                p.next();
+            }
+        } catch (JsonException e) {
+            return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void testLocation() {
+        try (JsonParser parser = Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream("[1, \"ab\"]"))) {
+            parser.next();
+            parser.next();
+            assertEquals(2, parser.getLocation().getStreamOffset());
+            parser.next();
+            assertEquals(8, parser.getLocation().getStreamOffset());
+            parser.next();
+            assertFalse(parser.hasNext());
+        }
+        try (JsonParser parser = Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream("[1, x]"))) {
+            parser.next();
+            parser.next();
+            parser.next();
+            fail();
+        } catch (JsonParsingException e) {
+            assertEquals(4, e.getLocation().getStreamOffset());
+        }
+    }
+
+    @Test
+    public void testLazyStrings() {
+        // strings larger than the buffer of the parser, which are decoded after hasNext() or not at all
+        final StringBuilder value = new StringBuilder();
+        while (value.length() < 1 << 17) {
+            value.append("abc\\n\\u00e4ö\\\"");
+        }
+        final String json = "[\"" + value + "\", \"" + value + "x\", \"" + value + "\"]";
+        final List<String> expected = new ArrayList<>();
+        try (JsonParser reference = REFERENCE.createParser(GeojsonTest.stream(json))) {
+            while (reference.hasNext()) {
+                if (reference.next() == Event.VALUE_STRING) {
+                    expected.add(reference.getString());
+                }
+            }
+        }
+        for (JsonParser parser : Arrays.asList(Utf8JsonParser.FACTORY.createParser(GeojsonTest.stream(json)),
+            Utf8JsonParser.FACTORY.createParser(new OneByteInputStream(json)))) {
+            try (JsonParser p = parser) {
+                assertEquals(Event.START_ARRAY, p.next());
+                assertEquals(Event.VALUE_STRING, p.next());
+                assertEquals(Event.VALUE_STRING, p.next());
+                assertTrue(p.hasNext());
+                assertEquals(expected.get(1), p.getString());
+                assertEquals(expected.get(1), p.getString());
+                assertEquals(Event.VALUE_STRING, p.next());
+                assertEquals(Json.createValue(expected.get(2)), p.getValue());
+                assertEquals(Event.END_ARRAY, p.next());
+            }
+        }
+    }
+
+    /**
+     * Input stream which returns at most one byte per read, so every token is split across reads.
+     */
+    private static final class OneByteInputStream extends FilterInputStream {
+        OneByteInputStream(final String json) {
+            super(GeojsonTest.stream(json));
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+}